@@ -1,21 +1,30 @@
 package io.github.code2spec;
 
+import io.github.code2spec.export.ExportConfig;
+import io.github.code2spec.llm.LlmBackendConfig;
 import io.github.code2spec.llm.LlmConfig;
 import picocli.CommandLine;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 
 @CommandLine.Command(
         name = "code2spec",
         mixinStandardHelpOptions = true,
         version = "Code2Spec 0.1.0",
-        description = "将 Java 代码仓库转换为 REST API 说明文档（含 LLM 增强的业务语义与错误码说明）"
+        description = "将 Java 代码仓库转换为 REST API 说明文档（含 LLM 增强的业务语义与错误码说明）",
+        subcommands = {QueryCommand.class}
 )
 public class Code2SpecCommand implements Runnable {
 
-    @CommandLine.Parameters(index = "0", description = "项目目录（含 Java 源码和/或 OpenAPI/Swagger YAML 文件）")
+    // Optional for picocli so that subcommands can run; required when generating
+    @CommandLine.Parameters(index = "0", arity = "0..1", description = "项目目录（含 Java 源码和/或 OpenAPI/Swagger YAML 文件）")
     private Path sourceDir;
 
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
     @CommandLine.Option(names = {"-o", "--output"}, description = "输出目录", defaultValue = "./output")
     private Path outputDir;
 
@@ -40,7 +49,7 @@ public class Code2SpecCommand implements Runnable {
     @CommandLine.Option(names = {"--llm-delay-ms"}, description = "每次 LLM 请求前等待毫秒数，避免 429 限流（如 Groq 建议 2000）", defaultValue = "2000")
     private int llmDelayMs = 2000;
 
-    @CommandLine.Option(names = {"--llm-retry-wait-ms"}, description = "遇到 429 限流时等待毫秒数后重试", defaultValue = "60000")
+    @CommandLine.Option(names = {"--llm-retry-wait-ms"}, description = "遇到 429 限流时等待毫秒数后重试（响应带 Retry-After 时以其为准）", defaultValue = "60000")
     private int llmRetryWaitMs = 60000;
 
     @CommandLine.Option(names = {"--llm-minimal"}, description = "精简模式：仅传接口方法体（约800字），不传调用链，减少 token 与耗时")
@@ -55,14 +64,106 @@ public class Code2SpecCommand implements Runnable {
     @CommandLine.Option(names = {"--llm-call-chain-max-chars"}, description = "调用链总最大字符数", defaultValue = "6000")
     private int llmCallChainMaxChars = 6000;
 
+    @CommandLine.Option(names = {"--llm-error-code-batch-size"}, description = "同一异常处理类下的错误码合并为一次 LLM 请求的最大个数（1=逐个请求）", defaultValue = "8")
+    private int llmErrorCodeBatchSize = 8;
+
+    @CommandLine.Option(names = {"--llm-stream"}, description = "流式（SSE）请求：逐块接收输出，空闲超时随每个数据块重置，收到完整 JSON 即提前结束")
+    private boolean llmStream;
+
+    @CommandLine.Option(names = {"--llm-concurrency"}, description = "同时进行中的 LLM 请求数上限（异步发送，不占用线程）", defaultValue = "1")
+    private int llmConcurrency = 1;
+
+    @CommandLine.Option(names = {"--llm-hedge-percent"}, description = "对冲请求比例上限（0-100，0=关闭）：超过近期 p90 耗时仍未返回的请求再发一份（优先发往其他后端），取先返回者并取消另一个", defaultValue = "0")
+    private int llmHedgePercent;
+
+    @CommandLine.Option(names = {"--llm-dedup"}, description = "近似重复端点去重：结构相同、仅实体名不同的端点（如生成的 CRUD 控制器）只调用一次 LLM，结果按实体名替换后复用")
+    private boolean llmDedup;
+
+    @CommandLine.Option(names = {"--llm-prompt-cache-layout"}, description = "面向服务端提示词缓存的 prompt 布局：被调用方法代码在前、接口自身信息在后，调用相同方法的端点相邻发送")
+    private boolean llmPromptCacheLayout;
+
+    @CommandLine.Option(names = {"--llm-deadline"}, description = "LLM 增强截止时间（秒，从启动算起，0=不限）：到时不再发出新请求，剩余项保持未增强；同时按优先级调度", defaultValue = "0")
+    private long llmDeadline;
+
+    @CommandLine.Option(names = {"--llm-token-budget"}, description = "LLM token 预算（prompt+completion，0=不限）：用完后不再发出新请求；同时按优先级调度", defaultValue = "0")
+    private long llmTokenBudget;
+
+    @CommandLine.Option(names = {"--llm-response-format"}, description = "请求的 response_format：none（默认）、json_object 或 json_schema；后端不支持时自动改为普通请求", defaultValue = "none")
+    private String llmResponseFormat = "none";
+
+    @CommandLine.Option(names = {"--llm-gzip"}, description = "gzip 压缩 1 KB 以上的请求体（调用链 prompt 以代码为主，约压缩到 1/4）；后端返回 415/400 时自动对该后端改为不压缩")
+    private boolean llmGzip;
+
+    @CommandLine.Option(names = {"--llm-circuit-breaker"}, description = "熔断阈值：LLM 连续失败该次数后暂停调用，剩余项立即仅使用规则提取，冷却后发一个探测请求尝试恢复（0=关闭）", defaultValue = "5")
+    private int llmCircuitBreaker = 5;
+
+    @CommandLine.Option(names = {"--formats"}, split = ",", description = "要生成的输出格式，逗号分隔（内置 openapi、markdown、rag、spec，及通过 SpecExporter SPI 注册的格式；默认除 spec 外全部）")
+    private List<String> formats = new ArrayList<>();
+
+    @CommandLine.Option(names = {"--rag-format"}, description = "RAG 输出格式：files（每个文档一个 JSON 文件）或 packed（单个 NDJSON 文件 + 偏移索引，可按 id 随机读取）", defaultValue = "files")
+    private String ragFormat;
+
+    @CommandLine.Option(names = {"--rag-gzip"}, description = "packed 模式下 gzip 压缩 RAG 数据文件（逐行压缩，仍可按 id 随机读取）")
+    private boolean ragGzip;
+
+    @CommandLine.Option(names = {"--shard-by"}, description = "将 Markdown 与 OpenAPI 输出按分片拆成多个文件并生成索引：controller（控制器类）、tag（标签）或 prefix[:N]（URI 前 N 段，默认 2）；只重写内容变化的分片")
+    private String shardBy;
+
+    @CommandLine.Option(names = {"--compress"}, description = "压缩输出：gzip（openapi.json.gz、RAG 文档 .json.gz 或 packed 数据文件、spec.smile.gz）")
+    private String compress;
+
+    @CommandLine.Option(names = {"--from-spec"}, description = "从 --formats spec 生成的二进制快照（spec.smile[.gz]）直接导出，跳过源码解析与 LLM 增强，此时无需项目目录")
+    private Path fromSpec;
+
+    @CommandLine.Option(names = {"--full-export"}, description = "完整重新生成所有输出，不复用上次导出中输入未变的 Markdown/OpenAPI 章节与 RAG 文档")
+    private boolean fullExport;
+
+    @CommandLine.Option(names = {"--dry-run"}, description = "仅预估：完整解析并构建所有 prompt，在本地估算 token，不调用 LLM、不生成文档，输出请求数、token、预计耗时与最大的 20 个 prompt")
+    private boolean dryRun;
+
+    @CommandLine.Option(names = {"--llm-price"}, description = "每百万 token 价格，格式: 输入,输出（如 0.15,0.60），用于 --dry-run 估算费用")
+    private String llmPrice;
+
+    @CommandLine.Option(names = {"--resume"}, description = "从输出目录中的断点日志（.llm-journal.jsonl）恢复，仅对缺失的端点/错误码调用 LLM")
+    private boolean resume;
+
+    @CommandLine.Option(names = {"--llm-backend"}, description = "LLM 后端池，可重复指定，格式: url=...,key=...|key-env=变量名,model=...,weight=1,rpm=0,concurrency=0；"
+            + "按权重与在途请求数分配请求，持续 429/5xx 的后端会暂时移出并稍后探测")
+    private List<String> llmBackends = new ArrayList<>();
+
     @Override
     public void run() {
+        if (sourceDir == null && fromSpec == null) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "缺少参数: 项目目录");
+        }
         LlmConfig llmConfig = new LlmConfig();
         llmConfig.setEnabled(!noLlm);
         llmConfig.setVerbose(verbose);
         llmConfig.setProxy(proxy);
         llmConfig.setLlmDelayMs(llmDelayMs);
         llmConfig.setLlmRetryWaitMs(llmRetryWaitMs);
+        llmConfig.setErrorCodeBatchSize(llmErrorCodeBatchSize);
+        llmConfig.setStream(llmStream);
+        llmConfig.setConcurrency(llmConcurrency);
+        llmConfig.setHedgePercent(llmHedgePercent);
+        llmConfig.setDedup(llmDedup);
+        llmConfig.setPromptCacheLayout(llmPromptCacheLayout);
+        llmConfig.setDeadlineSeconds(llmDeadline);
+        llmConfig.setResponseFormat(llmResponseFormat);
+        llmConfig.setTokenBudget(llmTokenBudget);
+        llmConfig.setResume(resume);
+        llmConfig.setDryRun(dryRun);
+        llmConfig.setGzipRequests(llmGzip);
+        llmConfig.setCircuitBreakerThreshold(llmCircuitBreaker);
+        if (llmPrice != null && !llmPrice.isBlank()) {
+            String[] prices = llmPrice.split(",");
+            try {
+                llmConfig.setInputPricePerMillion(Double.parseDouble(prices[0].trim()));
+                llmConfig.setOutputPricePerMillion(prices.length > 1 ? Double.parseDouble(prices[1].trim()) : 0);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("--llm-price 格式应为 输入,输出: " + llmPrice);
+            }
+        }
         if (llmMinimal) {
             llmConfig.setCallChainDepth(0);
             llmConfig.setMethodBodyMaxChars(800);
@@ -72,7 +173,16 @@ public class Code2SpecCommand implements Runnable {
             llmConfig.setMethodBodyMaxChars(llmMethodBodyMaxChars);
             llmConfig.setCallChainMaxChars(llmCallChainMaxChars);
         }
-        if (!noLlm && llmApiKey != null && !llmApiKey.isBlank()) {
+        if (!noLlm && !llmBackends.isEmpty()) {
+            List<LlmBackendConfig> backends = new ArrayList<>();
+            for (String spec : llmBackends) {
+                backends.add(LlmBackendConfig.parse(spec, llmModel));
+            }
+            llmConfig.setBackends(backends);
+            llmConfig.setApiBaseUrl(backends.get(0).getApiBaseUrl());
+            llmConfig.setApiKey(backends.get(0).getApiKey());
+            llmConfig.setModel(backends.get(0).getModel());
+        } else if (!noLlm && llmApiKey != null && !llmApiKey.isBlank()) {
             llmConfig.setApiKey(llmApiKey);
             llmConfig.setApiBaseUrl(llmApiBase);
             llmConfig.setModel(llmModel);
@@ -83,16 +193,63 @@ public class Code2SpecCommand implements Runnable {
                 llmConfig.setApiKey(envKey);
                 llmConfig.setApiBaseUrl(llmApiBase);
                 llmConfig.setModel(llmModel);
+            } else if (dryRun) {
+                // Estimating needs no API access; the model still keys the resume journal
+                llmConfig.setApiBaseUrl(llmApiBase);
+                llmConfig.setModel(llmModel);
             } else {
                 System.out.println("提示: 未配置 LLM API Key，将仅使用规则提取。可通过 --llm-api-key 或环境变量 GROQ_API_KEY / OPENAI_API_KEY 配置。");
                 llmConfig.setEnabled(false);
             }
         }
 
+        ExportConfig exportConfig = new ExportConfig();
+        if (!"files".equals(ragFormat) && !"packed".equals(ragFormat)) {
+            throw new IllegalArgumentException("--rag-format 应为 files 或 packed: " + ragFormat);
+        }
+        exportConfig.setRagPacked("packed".equals(ragFormat));
+        exportConfig.setRagGzip(ragGzip);
+        exportConfig.setFormats(formats);
+        if (shardBy != null) applyShardBy(exportConfig, shardBy);
+        if (compress != null) {
+            if (!"gzip".equals(compress)) {
+                throw new IllegalArgumentException("--compress 目前仅支持 gzip: " + compress);
+            }
+            exportConfig.setCompression(ExportConfig.Compression.GZIP);
+        }
+        exportConfig.setIncremental(!fullExport);
+
         try {
-            new Pipeline(sourceDir.toAbsolutePath(), outputDir.toAbsolutePath(), llmConfig).run();
+            if (fromSpec != null) {
+                new Pipeline(null, outputDir.toAbsolutePath(), llmConfig, exportConfig).runFromSpec(fromSpec.toAbsolutePath());
+                return;
+            }
+            new Pipeline(sourceDir.toAbsolutePath(), outputDir.toAbsolutePath(), llmConfig, exportConfig).run();
         } catch (Exception e) {
             throw new RuntimeException("执行失败: " + e.getMessage(), e);
         }
     }
+
+    private static void applyShardBy(ExportConfig config, String value) {
+        String[] parts = value.split(":", 2);
+        ExportConfig.ShardBy shardBy = switch (parts[0]) {
+            case "controller" -> ExportConfig.ShardBy.CONTROLLER;
+            case "tag" -> ExportConfig.ShardBy.TAG;
+            case "prefix" -> ExportConfig.ShardBy.PREFIX;
+            default -> throw new IllegalArgumentException("--shard-by 应为 controller、tag 或 prefix[:N]: " + value);
+        };
+        if (parts.length > 1) {
+            int segments;
+            try {
+                segments = shardBy == ExportConfig.ShardBy.PREFIX ? Integer.parseInt(parts[1]) : 0;
+            } catch (NumberFormatException e) {
+                segments = 0;
+            }
+            if (segments < 1) {
+                throw new IllegalArgumentException("--shard-by 应为 controller、tag 或 prefix[:N]: " + value);
+            }
+            config.setShardPrefixSegments(segments);
+        }
+        config.setShardBy(shardBy);
+    }
 }
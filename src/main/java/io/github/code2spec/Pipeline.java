@@ -1,30 +1,47 @@
 package io.github.code2spec;
 
 import io.github.code2spec.core.model.SpecResult;
-import io.github.code2spec.export.MarkdownExporter;
-import io.github.code2spec.export.OpenApiExporter;
-import io.github.code2spec.export.RagKnowledgeExporter;
+import io.github.code2spec.export.ExportConfig;
+import io.github.code2spec.export.ExportContext;
+import io.github.code2spec.export.ExportStage;
+import io.github.code2spec.export.SmileSpecExporter;
+import io.github.code2spec.llm.DryRunLlmEnhancer;
+import io.github.code2spec.llm.JournalingLlmEnhancer;
 import io.github.code2spec.llm.LlmConfig;
 import io.github.code2spec.llm.LlmEnhancer;
+import io.github.code2spec.llm.LlmJournal;
+import io.github.code2spec.llm.NearDuplicateDetector;
 import io.github.code2spec.llm.NoOpLlmEnhancer;
 import io.github.code2spec.llm.OpenAiLlmEnhancer;
 import io.github.code2spec.parser.JavaRestParser;
 import io.github.code2spec.parser.OpenApiFileParser;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Main pipeline: parse Java + OpenAPI → merge → enhance → export.
  */
 public class Pipeline {
+    /** Checkpoint journal of completed LLM enhancements, kept in the output directory */
+    static final String LLM_JOURNAL_FILE = ".llm-journal.jsonl";
+
     private final Path sourceRoot;
     private final Path outputDir;
     private final LlmConfig llmConfig;
+    private final ExportConfig exportConfig;
 
     public Pipeline(Path sourceRoot, Path outputDir, LlmConfig llmConfig) {
+        this(sourceRoot, outputDir, llmConfig, new ExportConfig());
+    }
+
+    public Pipeline(Path sourceRoot, Path outputDir, LlmConfig llmConfig, ExportConfig exportConfig) {
         this.sourceRoot = sourceRoot;
         this.outputDir = outputDir;
         this.llmConfig = llmConfig;
+        this.exportConfig = exportConfig;
     }
 
     public void run() throws Exception {
@@ -33,36 +50,117 @@ public class Pipeline {
             System.out.println("[-v] 详细模式已启用，将打印 LLM 调用详情（URI、输入、输出、耗时、token）");
         }
         ProgressReporter progress = new ProgressReporter(verbose);
+        if (llmConfig != null && llmConfig.isDryRun()) {
+            dryRun(progress);
+            return;
+        }
+        outputDir.toFile().mkdirs();
+        LlmJournal journal = null;
         LlmEnhancer enhancer = createEnhancer(progress);
+        if (enhancer.isEnabled()) {
+            journal = LlmJournal.open(outputDir.resolve(LLM_JOURNAL_FILE), llmConfig.isResume());
+            if (llmConfig.isResume()) {
+                System.out.println("[--resume] 断点日志中已有 " + journal.size() + " 项结果");
+            }
+            enhancer = new JournalingLlmEnhancer(enhancer, journal, llmConfig, progress);
+        }
+        try {
+            parseAndExport(progress, enhancer);
+        } finally {
+            if (journal != null) journal.close();
+        }
+    }
+
+    /**
+     * Parses Java sources and builds every prompt without calling the LLM or writing documents,
+     * then prints the projection. With --resume, items already in the journal are not counted.
+     */
+    private void dryRun(ProgressReporter progress) throws Exception {
+        DryRunLlmEnhancer dryRun = new DryRunLlmEnhancer(llmConfig);
+        LlmEnhancer enhancer = dryRun;
+        LlmJournal journal = null;
+        Path journalFile = outputDir.resolve(LLM_JOURNAL_FILE);
+        if (llmConfig.isResume() && Files.exists(journalFile)) {
+            // Opened for appending, nothing is written: the dry-run enhancer produces no results
+            journal = LlmJournal.open(journalFile, true);
+            enhancer = new JournalingLlmEnhancer(dryRun, journal, llmConfig, progress);
+        }
+        progress.addSummarySection("LLM 预估（--dry-run，未调用 LLM）", dryRun::summaryLines);
+        try {
+            createJavaParser(progress, enhancer).parseAsync(sourceRoot).join();
+        } finally {
+            if (journal != null) journal.close();
+        }
+        System.out.println("[--dry-run] 仅预估，未调用 LLM，未生成文档");
+        System.out.println();
+        progress.printSummary();
+    }
+
+    private JavaRestParser createJavaParser(ProgressReporter progress, LlmEnhancer enhancer) {
         int callChainDepth = llmConfig != null ? llmConfig.getCallChainDepth() : 2;
         int callChainMaxChars = llmConfig != null ? llmConfig.getCallChainMaxChars() : 6000;
         JavaRestParser javaParser = new JavaRestParser(enhancer, progress, callChainDepth, callChainMaxChars);
+        if (llmConfig != null && llmConfig.isDedup()) {
+            javaParser.setNearDuplicateThreshold(NearDuplicateDetector.DEFAULT_THRESHOLD);
+        }
+        if (llmConfig != null && llmConfig.isPromptCacheLayout()) {
+            javaParser.setPromptCacheLayout(true);
+        }
+        if (llmConfig != null && (llmConfig.getDeadlineSeconds() > 0 || llmConfig.getTokenBudget() > 0)) {
+            javaParser.setPriorityScheduling(true);
+        }
+        return javaParser;
+    }
+
+    private void parseAndExport(ProgressReporter progress, LlmEnhancer enhancer) throws Exception {
+        JavaRestParser javaParser = createJavaParser(progress, enhancer);
         OpenApiFileParser openApiParser = new OpenApiFileParser(progress);
 
-        SpecResult javaResult = javaParser.parse(sourceRoot);
+        // LLM enhancement runs in the background while OpenAPI files are parsed;
+        // merge and export start as soon as the last enhancement future completes
+        CompletableFuture<SpecResult> javaResult = javaParser.parseAsync(sourceRoot);
         SpecResult openApiResult = openApiParser.parse(sourceRoot);
 
-        progress.onMergeAndExport();
-
-        SpecResult result = new SpecMerger().merge(javaResult, openApiResult);
+        SpecResult result = javaResult
+                .thenApply(enhanced -> {
+                    progress.onMergeAndExport();
+                    return new SpecMerger().merge(enhanced, openApiResult);
+                })
+                .join();
+        export(progress, result);
+    }
 
+    /**
+     * Exports a snapshot written with {@code --formats spec} instead of parsing sources; no LLM
+     * calls are made. {@code sourceRoot} is not used.
+     */
+    public void runFromSpec(Path specFile) throws Exception {
+        ProgressReporter progress = new ProgressReporter(llmConfig != null && llmConfig.isVerbose());
         outputDir.toFile().mkdirs();
+        long start = System.nanoTime();
+        SpecResult result = SmileSpecExporter.read(specFile);
+        System.out.println("[--from-spec] 已加载 " + specFile + ": " + result.getEndpoints().size() + " 个接口、"
+                + result.getErrorCodes().size() + " 个错误码（" + (System.nanoTime() - start) / 1_000_000 + " ms）");
+        export(progress, result);
+    }
 
-        new OpenApiExporter().exportToFile(result, outputDir.resolve("openapi.json"));
-        new MarkdownExporter().export(result, outputDir.resolve("api-docs.md"));
-        new RagKnowledgeExporter().export(result, outputDir.resolve("rag"));
+    private void export(ProgressReporter progress, SpecResult result) throws Exception {
+        // Exporters run in parallel on a frozen snapshot of the merged result
+        ExportStage exportStage = new ExportStage(ExportStage.discover(exportConfig));
+        List<ExportStage.Result> exported = exportStage.run(new ExportContext(result), exportConfig, outputDir);
 
         System.out.println("Generated:");
-        System.out.println("  - " + outputDir.resolve("openapi.json"));
-        System.out.println("  - " + outputDir.resolve("api-docs.md"));
-        System.out.println("  - " + outputDir.resolve("rag") + "/");
+        for (ExportStage.Result r : exported) {
+            System.out.println("  - " + r.output());
+            progress.onExported(r.name(), r.durationMs());
+        }
         System.out.println();
 
         progress.printSummary();
     }
 
     private LlmEnhancer createEnhancer(ProgressReporter progress) {
-        if (llmConfig != null && llmConfig.isEnabled() && llmConfig.getApiKey() != null && !llmConfig.getApiKey().isBlank()) {
+        if (llmConfig != null && llmConfig.isEnabled() && llmConfig.hasApiAccess()) {
             return new OpenAiLlmEnhancer(llmConfig, progress);
         }
         return new NoOpLlmEnhancer();
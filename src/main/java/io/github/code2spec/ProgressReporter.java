@@ -1,5 +1,11 @@
 package io.github.code2spec;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
 /**
  * Reports progress during parsing and LLM enhancement.
  * Null-safe: all methods no-op when reporter is null.
@@ -8,8 +14,18 @@ public class ProgressReporter {
     private final long startTime = System.currentTimeMillis();
     private long promptTokens;
     private long completionTokens;
+    private long cachedTokens;
     private int llmRequestCount;
+    private int llmReplayedCount;
+    private int nearDuplicateSaved;
+    private int llmParseFailures;
+    private int llmParseRetries;
+    private int llmJsonRepaired;
+    private int llmEndpointsDone;
+    private int llmErrorCodesDone;
     private final boolean verbose;
+    private final Map<String, Supplier<List<String>>> summarySections = new LinkedHashMap<>();
+    private final Map<String, Long> exportTimings = new LinkedHashMap<>();
 
     public ProgressReporter() {
         this(false);
@@ -22,6 +38,10 @@ public class ProgressReporter {
     /**
      * 在 -v 模式下打印某步骤耗时。
      */
+    public boolean isVerbose() {
+        return verbose;
+    }
+
     public void verboseTiming(String step, long ms) {
         if (verbose) {
             System.out.println("        [耗时] " + step + ": " + ms + " ms");
@@ -54,7 +74,11 @@ public class ProgressReporter {
         System.out.println("[3/4] 合并结果并导出");
     }
 
-    public void onLlmEndpointStart(int current, int total, String uri) {
+    /**
+     * 一个端点（或近似端点组）的 LLM 增强已完成。请求是异步发送的，因此在完成时计数，而不是在提交时。
+     */
+    public synchronized void onLlmEndpointDone(int total, String uri) {
+        int current = ++llmEndpointsDone;
         if (total > 0) {
             System.out.println("      LLM 增强端点: " + current + "/" + total + " " + uri);
         } else {
@@ -62,7 +86,17 @@ public class ProgressReporter {
         }
     }
 
-    public void onLlmErrorCodeStart(int current, int total, String code) {
+    /**
+     * 打印近似重复端点聚类结果：endpoints 个端点归为 clusters 组，每组只调用一次 LLM。
+     */
+    public void onNearDuplicates(int endpoints, int clusters) {
+        nearDuplicateSaved = endpoints - clusters;
+        System.out.println("      [近似去重] " + endpoints + " 个端点归为 " + clusters + " 组，省去 " + nearDuplicateSaved + " 次 LLM 调用");
+    }
+
+    /** 一个错误码的 LLM 增强已完成（批量请求完成时逐个报告） */
+    public synchronized void onLlmErrorCodeDone(int total, String code) {
+        int current = ++llmErrorCodesDone;
         if (total > 0) {
             System.out.println("      LLM 增强错误码: " + current + "/" + total + " " + code);
         } else {
@@ -70,7 +104,31 @@ public class ProgressReporter {
         }
     }
 
-    public void addTokens(int prompt, int completion) {
+    /**
+     * 记录一次从断点日志恢复的结果（未调用 LLM）。
+     */
+    public synchronized void onLlmReplayed(String type, String target) {
+        llmReplayedCount++;
+        System.out.println("      [断点恢复] " + type + " " + target);
+    }
+
+    /**
+     * 记录一次 LLM 输出无法解析为 JSON；retrying 表示将收紧 max_tokens 重试一次。
+     */
+    public synchronized void onLlmParseFailure(String type, String target, boolean retrying) {
+        llmParseFailures++;
+        if (retrying) llmParseRetries++;
+        System.err.println("      [LLM 输出解析失败] " + type + " " + target + (retrying ? "，重试一次" : "，放弃"));
+    }
+
+    /**
+     * 记录一次被截断、经修复后解析的 JSON 输出。
+     */
+    public synchronized void onLlmJsonRepaired() {
+        llmJsonRepaired++;
+    }
+
+    public synchronized void addTokens(int prompt, int completion) {
         this.promptTokens += prompt;
         this.completionTokens += completion;
         this.llmRequestCount++;
@@ -80,11 +138,20 @@ public class ProgressReporter {
      * 记录并打印每次 LLM 调用统计（调用序号、目标、token 消耗）。
      */
     public synchronized void reportLlmCall(String type, String target, int promptTokens, int completionTokens) {
+        reportLlmCall(type, target, promptTokens, completionTokens, 0);
+    }
+
+    /**
+     * 同上，cachedTokens 为命中服务端提示词缓存的 prompt token 数（大于 0 时打印）。
+     */
+    public synchronized void reportLlmCall(String type, String target, int promptTokens, int completionTokens, int cachedTokens) {
         this.promptTokens += promptTokens;
         this.completionTokens += completionTokens;
+        this.cachedTokens += cachedTokens;
         this.llmRequestCount++;
         System.out.println("      [LLM 调用 " + llmRequestCount + "] " + type + " " + target
-                + "  prompt=" + promptTokens + " completion=" + completionTokens + " total=" + (promptTokens + completionTokens));
+                + "  prompt=" + promptTokens + (cachedTokens > 0 ? " (cached=" + cachedTokens + ")" : "")
+                + " completion=" + completionTokens + " total=" + (promptTokens + completionTokens));
     }
 
     private static final int VERBOSE_INPUT_MAX = 1200;
@@ -94,6 +161,14 @@ public class ProgressReporter {
      * -v 模式下打印 LLM 调用详情：URI、输入、输出、耗时、token 消耗。
      */
     public void verboseLlmDetail(String uri, String input, String output, long durationMs, int promptTokens, int completionTokens) {
+        verboseLlmDetail(uri, input, output, durationMs, promptTokens, completionTokens, -1);
+    }
+
+    /**
+     * 同上，流式模式下额外打印首 token 耗时（timeToFirstTokenMs &lt; 0 表示非流式，不打印）。
+     */
+    public synchronized void verboseLlmDetail(String uri, String input, String output, long durationMs, int promptTokens, int completionTokens,
+                                              long timeToFirstTokenMs) {
         if (!verbose) return;
         System.out.println("        [LLM 调用详情]");
         System.out.println("        URI: " + uri);
@@ -102,6 +177,9 @@ public class ProgressReporter {
         String out = output != null ? output : "";
         System.out.println("        输出: " + truncateForLog(out, VERBOSE_OUTPUT_MAX) + (out.length() > VERBOSE_OUTPUT_MAX ? " ... (共 " + out.length() + " 字)" : ""));
         System.out.println("        耗时: " + durationMs + " ms");
+        if (timeToFirstTokenMs >= 0) {
+            System.out.println("        首 token: " + timeToFirstTokenMs + " ms");
+        }
         System.out.println("        Token: prompt=" + promptTokens + " completion=" + completionTokens + " total=" + (promptTokens + completionTokens));
     }
 
@@ -114,7 +192,7 @@ public class ProgressReporter {
     /**
      * 打印 LLM 调用失败信息（无论是否 -v 都会显示）。
      */
-    public void reportLlmFailure(String type, String target, String uri, String input, long durationMs, Exception e) {
+    public synchronized void reportLlmFailure(String type, String target, String uri, String input, long durationMs, Exception e) {
         System.err.println("      [LLM 调用失败] " + type + " " + target);
         System.err.println("        URI: " + (uri != null ? uri : ""));
         String in = input != null ? input : "";
@@ -126,10 +204,23 @@ public class ProgressReporter {
         }
     }
 
+    public synchronized void onExported(String exporter, long durationMs) {
+        exportTimings.put(exporter, durationMs);
+    }
+
+    /**
+     * 注册一段在统计末尾打印的附加信息（如各 LLM 后端的请求/耗时/token 表），打印时才取值。
+     */
+    public synchronized void addSummarySection(String title, Supplier<List<String>> lines) {
+        summarySections.put(title, lines);
+    }
+
     public long getPromptTokens() { return promptTokens; }
     public long getCompletionTokens() { return completionTokens; }
+    public long getCachedTokens() { return cachedTokens; }
     public long getTotalTokens() { return promptTokens + completionTokens; }
     public int getLlmRequestCount() { return llmRequestCount; }
+    public int getLlmReplayedCount() { return llmReplayedCount; }
 
     public long elapsedMs() {
         return System.currentTimeMillis() - startTime;
@@ -144,6 +235,35 @@ public class ProgressReporter {
         if (llmRequestCount > 0) {
             System.out.println("LLM 请求: " + llmRequestCount + " 次");
             System.out.println("Token 消耗: prompt=" + promptTokens + ", completion=" + completionTokens + ", total=" + getTotalTokens());
+            if (cachedTokens > 0) {
+                System.out.println(String.format("提示词缓存命中: %d prompt tokens（%.1f%%）", cachedTokens,
+                        promptTokens > 0 ? cachedTokens * 100.0 / promptTokens : 0.0));
+            }
+        }
+        if (llmParseFailures > 0 || llmJsonRepaired > 0) {
+            System.out.println("JSON 解析: 失败 " + llmParseFailures + " 次（重试 " + llmParseRetries + " 次），修复截断输出 " + llmJsonRepaired + " 次");
+        }
+        if (nearDuplicateSaved > 0) {
+            System.out.println("近似去重: " + nearDuplicateSaved + " 个端点复用同组代表端点的结果");
+        }
+        if (llmReplayedCount > 0) {
+            System.out.println("断点恢复: " + llmReplayedCount + " 项（复用断点日志，未调用 LLM）");
+        }
+        List<Map.Entry<String, Supplier<List<String>>>> sections;
+        synchronized (this) {
+            sections = new ArrayList<>(summarySections.entrySet());
+            if (!exportTimings.isEmpty()) {
+                List<String> timings = new ArrayList<>();
+                exportTimings.forEach((name, ms) -> timings.add(name + " " + formatDuration(ms)));
+                System.out.println("导出（并行）: " + String.join("，", timings));
+            }
+        }
+        for (Map.Entry<String, Supplier<List<String>>> section : sections) {
+            List<String> lines = section.getValue().get();
+            if (lines == null || lines.isEmpty()) continue;
+            System.out.println();
+            System.out.println("--- " + section.getKey() + " ---");
+            lines.forEach(System.out::println);
         }
     }
 
@@ -0,0 +1,63 @@
+package io.github.code2spec;
+
+import io.github.code2spec.export.RagDocuments;
+import io.github.code2spec.search.SearchIndex;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * {@code code2spec query}: top-k BM25 lookup in the search index of a previous export.
+ */
+@CommandLine.Command(
+        name = "query",
+        mixinStandardHelpOptions = true,
+        description = "在已生成的 RAG 知识对象中检索接口与错误码（本地 BM25 索引，无需向量数据库）"
+)
+public class QueryCommand implements Runnable {
+
+    @CommandLine.Parameters(arity = "1..*", description = "检索词（支持中文与 camelCase 标识符，如 查询订单、getOrderById）")
+    private List<String> terms;
+
+    @CommandLine.Option(names = {"-o", "--output"}, description = "code2spec 的输出目录（读取其中的 rag/）", defaultValue = "./output")
+    private Path outputDir;
+
+    @CommandLine.Option(names = {"-k", "--top"}, description = "返回结果数", defaultValue = "10")
+    private int top;
+
+    @CommandLine.Option(names = {"--doc"}, description = "同时打印命中文档的 JSON 内容")
+    private boolean showDoc;
+
+    @Override
+    public void run() {
+        Path ragDir = outputDir.toAbsolutePath().resolve("rag");
+        Path indexFile = ragDir.resolve(SearchIndex.FILE_NAME);
+        if (!Files.isRegularFile(indexFile)) {
+            throw new IllegalArgumentException("未找到检索索引 " + indexFile + "，请先运行 code2spec 生成文档");
+        }
+        try (RagDocuments docs = showDoc ? RagDocuments.open(ragDir) : null) {
+            long start = System.nanoTime();
+            SearchIndex index = SearchIndex.open(indexFile);
+            List<SearchIndex.Hit> hits = index.search(String.join(" ", terms), top);
+            double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+
+            if (hits.isEmpty()) {
+                System.out.println("无匹配结果");
+            }
+            for (int i = 0; i < hits.size(); i++) {
+                SearchIndex.Hit hit = hits.get(i);
+                System.out.printf("%2d. [%.3f] %s  %s%n", i + 1, hit.score(), hit.id(), hit.title());
+                if (showDoc) {
+                    String doc = docs.read(hit.id());
+                    System.out.println(doc != null ? doc.indent(4) : "    （未找到文档）");
+                }
+            }
+            System.out.printf("（共 %d 个文档，检索耗时 %.2f ms）%n", index.size(), elapsedMs);
+        } catch (IOException e) {
+            throw new RuntimeException("检索失败: " + e.getMessage(), e);
+        }
+    }
+}
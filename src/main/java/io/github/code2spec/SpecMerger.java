@@ -44,6 +44,9 @@ public class SpecMerger {
         if (fromOpenApi.getDescription() != null && !fromOpenApi.getDescription().isBlank()) {
             target.setDescription(fromOpenApi.getDescription());
         }
+        if (!fromOpenApi.getTags().isEmpty()) {
+            target.setTags(fromOpenApi.getTags());
+        }
         if (fromOpenApi.getParameters() != null && !fromOpenApi.getParameters().isEmpty()) {
             target.setParameters(fromOpenApi.getParameters());
         }
@@ -1,5 +1,7 @@
 package io.github.code2spec.core.model;
 
+import java.util.Map;
+
 /**
  * LLM-enhanced business semantic description for an endpoint.
  */
@@ -8,6 +10,7 @@ public class BusinessSemantic {
     private String scenario;           // 业务场景
     private String implementationNotes; // 实现要点
     private String cautions;           // 注意事项
+    private Map<String, String> entityNames; // 近似重复端点模板：实体名 -> 中文名，不导出
 
     public String getFunction() { return function; }
     public void setFunction(String function) { this.function = function; }
@@ -20,4 +23,7 @@ public class BusinessSemantic {
 
     public String getCautions() { return cautions; }
     public void setCautions(String cautions) { this.cautions = cautions; }
+
+    public Map<String, String> getEntityNames() { return entityNames; }
+    public void setEntityNames(Map<String, String> entityNames) { this.entityNames = entityNames; }
 }
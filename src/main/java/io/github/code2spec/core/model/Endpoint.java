@@ -12,6 +12,9 @@ public class Endpoint {
     private String operationId;
     private String summary;
     private String description;
+    /** Fully qualified name of the declaring controller/resource class; null for OpenAPI-only endpoints */
+    private String sourceClass;
+    private List<String> tags = new ArrayList<>();
 
     /** LLM-enhanced business semantic description */
     private BusinessSemantic businessSemantic;
@@ -38,6 +41,12 @@ public class Endpoint {
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
 
+    public String getSourceClass() { return sourceClass; }
+    public void setSourceClass(String sourceClass) { this.sourceClass = sourceClass; }
+
+    public List<String> getTags() { return tags; }
+    public void setTags(List<String> tags) { this.tags = tags; }
+
     public BusinessSemantic getBusinessSemantic() { return businessSemantic; }
     public void setBusinessSemantic(BusinessSemantic businessSemantic) { this.businessSemantic = businessSemantic; }
 
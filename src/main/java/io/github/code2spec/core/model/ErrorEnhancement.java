@@ -0,0 +1,32 @@
+package io.github.code2spec.core.model;
+
+/**
+ * LLM-generated enhancement for an error code, applied onto {@link ErrorCode} once available.
+ */
+public class ErrorEnhancement {
+    private String rootCause;
+    private String handlingSuggestion;
+    private String prevention;
+
+    public ErrorEnhancement() {}
+    public ErrorEnhancement(String rootCause, String handlingSuggestion, String prevention) {
+        this.rootCause = rootCause;
+        this.handlingSuggestion = handlingSuggestion;
+        this.prevention = prevention;
+    }
+
+    public String getRootCause() { return rootCause; }
+    public void setRootCause(String rootCause) { this.rootCause = rootCause; }
+
+    public String getHandlingSuggestion() { return handlingSuggestion; }
+    public void setHandlingSuggestion(String handlingSuggestion) { this.handlingSuggestion = handlingSuggestion; }
+
+    public String getPrevention() { return prevention; }
+    public void setPrevention(String prevention) { this.prevention = prevention; }
+
+    public void applyTo(ErrorCode errorCode) {
+        errorCode.setRootCause(rootCause);
+        errorCode.setHandlingSuggestion(handlingSuggestion);
+        errorCode.setPrevention(prevention);
+    }
+}
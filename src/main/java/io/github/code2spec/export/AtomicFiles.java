@@ -0,0 +1,93 @@
+package io.github.code2spec.export;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Writes output files via a temp file in the same directory and an atomic rename, so readers
+ * never see a half-written file, and leaves files whose content is unchanged untouched.
+ */
+public final class AtomicFiles {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private AtomicFiles() {
+    }
+
+    /**
+     * Writes {@code content} unless the existing file has the same SHA-256.
+     *
+     * @return whether the file was written
+     */
+    public static boolean writeIfChanged(Path file, byte[] content, String sha256) throws IOException {
+        if (Files.isRegularFile(file) && Files.size(file) == content.length
+                && sha256.equals(sha256(Files.readAllBytes(file)))) {
+            return false;
+        }
+        write(file, content);
+        return true;
+    }
+
+    /** Streams content to a file, e.g. for output too large to build in memory */
+    public interface Content {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    public static void write(Path file, byte[] content) throws IOException {
+        write(file, out -> out.write(content));
+    }
+
+    public static void write(Path file, Content content) throws IOException {
+        write(file, content, () -> true);
+    }
+
+    /**
+     * Streams content to a temp file and moves it into place only if {@code replace} (asked once
+     * the content is written, e.g. after comparing a digest) returns true.
+     *
+     * @return whether the file was replaced
+     */
+    public static boolean write(Path file, Content content, BooleanSupplier replace) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        // Not createTempFile: its owner-only permissions would carry over to the output file
+        Path tmp = dir.resolve("." + file.getFileName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(
+                    Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), BUFFER_SIZE)) {
+                content.writeTo(out);
+            }
+            if (!replace.getAsBoolean()) return false;
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return true;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    public static String sha256(byte[] content) {
+        return HexFormat.of().formatHex(sha256Digest().digest(content));
+    }
+
+    static MessageDigest sha256Digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package io.github.code2spec.export;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Configuration for document export.
+ */
+public class ExportConfig {
+    /** How Markdown and OpenAPI output is split into one file per shard */
+    public enum ShardBy { CONTROLLER, PREFIX, TAG }
+
+    /** Compression of openapi.json, the RAG documents and the binary spec */
+    public enum Compression { GZIP }
+
+    public static final int DEFAULT_SHARD_PREFIX_SEGMENTS = 2;
+
+    private boolean ragPacked;
+    private boolean ragGzip;
+    private List<String> formats = new ArrayList<>();
+    private ShardBy shardBy;
+    private int shardPrefixSegments = DEFAULT_SHARD_PREFIX_SEGMENTS;
+    private Compression compression;
+    private boolean incremental = true;
+
+    /** Names of the exporters to run ({@link SpecExporter#name()}); empty for all */
+    public List<String> getFormats() { return formats; }
+    public void setFormats(List<String> formats) { this.formats = formats; }
+
+    /** Write RAG documents as one NDJSON file plus an offset index instead of one file per document */
+    public boolean isRagPacked() { return ragPacked; }
+    public void setRagPacked(boolean ragPacked) { this.ragPacked = ragPacked; }
+
+    /** Gzip the packed RAG data file */
+    public boolean isRagGzip() { return ragGzip; }
+    public void setRagGzip(boolean ragGzip) { this.ragGzip = ragGzip; }
+
+    /** Shard Markdown and OpenAPI output; null for single files */
+    public ShardBy getShardBy() { return shardBy; }
+    public void setShardBy(ShardBy shardBy) { this.shardBy = shardBy; }
+
+    public boolean isSharded() { return shardBy != null; }
+
+    /** URI segments forming the shard name with {@link ShardBy#PREFIX} */
+    public int getShardPrefixSegments() { return shardPrefixSegments; }
+    public void setShardPrefixSegments(int shardPrefixSegments) { this.shardPrefixSegments = shardPrefixSegments; }
+
+    /** Compress openapi.json, the RAG documents and the binary spec; null for plain files */
+    public Compression getCompression() { return compression; }
+    public void setCompression(Compression compression) { this.compression = compression; }
+
+    public boolean isGzip() { return compression == Compression.GZIP; }
+
+    /** Reuse unchanged sections and documents of the previous export instead of rendering them again */
+    public boolean isIncremental() { return incremental; }
+    public void setIncremental(boolean incremental) { this.incremental = incremental; }
+}
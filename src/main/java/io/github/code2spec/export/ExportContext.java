@@ -0,0 +1,198 @@
+package io.github.code2spec.export;
+
+import io.github.code2spec.core.model.Endpoint;
+import io.github.code2spec.core.model.ErrorCode;
+import io.github.code2spec.core.model.ErrorCodeRef;
+import io.github.code2spec.core.model.SpecResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Snapshot of the merged {@link SpecResult} shared by the exporters of one run, plus lookups
+ * built once from it.
+ *
+ * <p>Every error code is rendered once per output format (Markdown reference lines, RAG JSON
+ * maps, OpenAPI response descriptions) and the fragments are reused by each endpoint that refers
+ * to it, instead of scanning and re-rendering the error code list per endpoint.
+ *
+ * <p>Fingerprints (SHA-256 over every field) of the endpoints and error codes are computed once,
+ * on first use, and let exporters tell which parts of their previous output are still current.
+ *
+ * <p>The context copies the endpoint and error code lists into unmodifiable lists; the model
+ * objects in them are the caller's. {@link ExportStage} hands every exporter an
+ * {@link #isolatedCopy()} over a deep copy of those objects, so that changes one exporter makes
+ * to them are not visible to the others; fingerprints are still computed once, on the caller's
+ * objects.
+ */
+public class ExportContext {
+    private final SpecResult result;
+    private final Map<String, ErrorCode> errorCodes = new LinkedHashMap<>();
+    private final Map<String, String> markdownRefs = new LinkedHashMap<>();
+    private final String markdownAllRefs;
+    private final Map<String, Map<String, Object>> ragDocs = new LinkedHashMap<>();
+    private final List<Map<String, Object>> ragAllDocs;
+    private final Map<String, String> openApiErrorDescriptions = new LinkedHashMap<>();
+    /** Context whose objects the fingerprints are computed on: this one, or the one copied from */
+    private final ExportContext origin;
+    /** Position of each endpoint and error code in the lists, to look up their fingerprints */
+    private final Map<Endpoint, Integer> endpointIndex = new IdentityHashMap<>();
+    private final Map<ErrorCode, Integer> errorCodeIndex = new IdentityHashMap<>();
+    private Fingerprints fingerprints;
+
+    private record Fingerprints(List<String> endpoints, List<String> errorCodes,
+                                Map<String, String> byCode, String allEndpoints, String allErrorCodes) {
+    }
+
+    public ExportContext(SpecResult result) {
+        this(copyLists(result), null);
+    }
+
+    private ExportContext(SpecResult result, ExportContext origin) {
+        this.result = result;
+        this.origin = origin != null ? origin : this;
+        List<Endpoint> endpoints = result.getEndpoints();
+        for (int i = 0; i < endpoints.size(); i++) endpointIndex.put(endpoints.get(i), i);
+        List<ErrorCode> codes = result.getErrorCodes();
+        for (int i = 0; i < codes.size(); i++) errorCodeIndex.put(codes.get(i), i);
+        StringBuilder allRefs = new StringBuilder();
+        List<Map<String, Object>> allDocs = new ArrayList<>();
+        for (ErrorCode ec : this.result.getErrorCodes()) {
+            // First definition wins for lookups by code; lists keep every entry
+            errorCodes.putIfAbsent(ec.getCode(), ec);
+            String ref = markdownRefs.computeIfAbsent(ec.getCode(), c -> MarkdownExporter.renderErrorCodeRef(ec));
+            allRefs.append(ref);
+            Map<String, Object> doc = RagKnowledgeExporter.toErrorCodeDoc(ec);
+            ragDocs.putIfAbsent(ec.getCode(), doc);
+            allDocs.add(doc);
+            // Later codes with the same status replace earlier ones, as in OpenAPI responses
+            openApiErrorDescriptions.put(String.valueOf(ec.getHttpStatus()), OpenApiExporter.buildErrorDescription(ec));
+        }
+        this.markdownAllRefs = allRefs.toString();
+        this.ragAllDocs = Collections.unmodifiableList(allDocs);
+    }
+
+    /** Fixes the set of endpoints and error codes; the objects in the lists stay shared */
+    private static SpecResult copyLists(SpecResult result) {
+        SpecResult snapshot = new SpecResult();
+        snapshot.setBasePath(result.getBasePath());
+        snapshot.setEndpoints(List.copyOf(result.getEndpoints()));
+        snapshot.setErrorCodes(List.copyOf(result.getErrorCodes()));
+        return snapshot;
+    }
+
+    /**
+     * A context over a deep copy of the model, for one exporter: what it changes in the copy stays
+     * there. Fingerprints are shared with this context and describe the model as it was copied.
+     */
+    public ExportContext isolatedCopy() {
+        return new ExportContext(copyLists(SmileSpecExporter.copy(result)), origin);
+    }
+
+    public SpecResult getResult() {
+        return result;
+    }
+
+    /** The first error code defined with this code, or null */
+    public ErrorCode findErrorCode(String code) {
+        return errorCodes.get(code);
+    }
+
+    /** Markdown reference line(s) for a code; an unknown code is listed by name */
+    String markdownErrorCodeRef(String code) {
+        String ref = markdownRefs.get(code);
+        return ref != null ? ref : "- " + code + "\n";
+    }
+
+    /** Reference lines for every error code, for endpoints without their own references */
+    String markdownAllErrorCodeRefs() {
+        return markdownAllRefs;
+    }
+
+    /** RAG JSON map for a code, or null when unknown */
+    Map<String, Object> ragErrorCodeDoc(String code) {
+        return ragDocs.get(code);
+    }
+
+    List<Map<String, Object>> ragAllErrorCodeDocs() {
+        return ragAllDocs;
+    }
+
+    /** OpenAPI error response description per HTTP status */
+    Map<String, String> openApiErrorDescriptions() {
+        return openApiErrorDescriptions;
+    }
+
+    /** Fingerprint of every field of the endpoint */
+    public String fingerprint(Endpoint ep) {
+        Integer i = endpointIndex.get(ep);
+        return i != null ? fingerprints().endpoints().get(i) : null;
+    }
+
+    /** Fingerprint of every field of the error code */
+    public String fingerprint(ErrorCode ec) {
+        Integer i = errorCodeIndex.get(ec);
+        return i != null ? fingerprints().errorCodes().get(i) : null;
+    }
+
+    /**
+     * Fingerprint of an endpoint together with the error codes rendered under it: its own
+     * references, or every error code when it has none.
+     */
+    public String inputFingerprint(Endpoint ep) {
+        Fingerprints f = fingerprints();
+        StringBuilder input = new StringBuilder(fingerprint(ep));
+        if (ep.getErrorCodes().isEmpty()) {
+            input.append('|').append(f.allErrorCodes());
+        } else {
+            for (ErrorCodeRef ref : ep.getErrorCodes()) {
+                input.append('|').append(f.byCode().getOrDefault(ref.getCode(), ref.getCode()));
+            }
+        }
+        return AtomicFiles.sha256(input.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Fingerprint of all endpoints, in order */
+    public String endpointsFingerprint() {
+        return fingerprints().allEndpoints();
+    }
+
+    /** Fingerprint of all error codes, in order */
+    public String errorCodesFingerprint() {
+        return fingerprints().allErrorCodes();
+    }
+
+    private Fingerprints fingerprints() {
+        return origin.computeFingerprints();
+    }
+
+    private synchronized Fingerprints computeFingerprints() {
+        if (fingerprints == null) {
+            List<Endpoint> endpoints = result.getEndpoints();
+            List<ErrorCode> codes = result.getErrorCodes();
+            List<String> endpointHashes = List.of(IntStream.range(0, endpoints.size()).parallel()
+                    .mapToObj(i -> AtomicFiles.sha256(SmileSpecExporter.encode(endpoints.get(i))))
+                    .toArray(String[]::new));
+            List<String> errorCodeHashes = new ArrayList<>();
+            Map<String, String> byCode = new LinkedHashMap<>();
+            for (ErrorCode ec : codes) {
+                String hash = AtomicFiles.sha256(SmileSpecExporter.encode(ec));
+                errorCodeHashes.add(hash);
+                byCode.putIfAbsent(ec.getCode(), hash);
+            }
+            fingerprints = new Fingerprints(endpointHashes, errorCodeHashes, byCode,
+                    combine(endpointHashes), combine(errorCodeHashes));
+        }
+        return fingerprints;
+    }
+
+    private static String combine(List<String> hashes) {
+        return AtomicFiles.sha256(String.join(",", hashes).getBytes(StandardCharsets.UTF_8));
+    }
+}
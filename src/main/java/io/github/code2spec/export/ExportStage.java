@@ -0,0 +1,112 @@
+package io.github.code2spec.export;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Runs the exporters in parallel on one {@link ExportContext}, each on its own thread. With more
+ * than one exporter, each gets an {@link ExportContext#isolatedCopy()}, so that none of them sees
+ * changes another makes to the model.
+ *
+ * <p>A dedicated pool is used rather than the common pool, which exporters themselves may use
+ * for parallel streams.
+ */
+public class ExportStage {
+    private final List<SpecExporter> exporters;
+
+    /**
+     * @param durationMs wall time of this exporter alone
+     */
+    public record Result(String name, String output, long durationMs) {
+    }
+
+    public ExportStage(List<SpecExporter> exporters) {
+        this.exporters = exporters;
+    }
+
+    /**
+     * Exporters registered through {@link ServiceLoader}, in registration order, restricted to
+     * {@link ExportConfig#getFormats()} when that is set and else to those enabled by default.
+     */
+    public static List<SpecExporter> discover(ExportConfig config) {
+        Map<String, SpecExporter> byName = new LinkedHashMap<>();
+        for (SpecExporter exporter : ServiceLoader.load(SpecExporter.class)) {
+            if (byName.putIfAbsent(exporter.name(), exporter) != null) {
+                throw new IllegalStateException("导出格式重名: " + exporter.name());
+            }
+        }
+        if (config.getFormats().isEmpty()) {
+            return byName.values().stream().filter(SpecExporter::enabledByDefault).collect(Collectors.toList());
+        }
+        for (String format : config.getFormats()) {
+            if (!byName.containsKey(format)) {
+                throw new IllegalArgumentException("未知的导出格式: " + format + "，可选: " + String.join(", ", byName.keySet()));
+            }
+        }
+        List<SpecExporter> selected = new ArrayList<>();
+        byName.forEach((name, exporter) -> {
+            if (config.getFormats().contains(name)) selected.add(exporter);
+        });
+        return selected;
+    }
+
+    public List<SpecExporter> getExporters() {
+        return exporters;
+    }
+
+    /**
+     * Runs every exporter and waits for all of them; results are in exporter order. If any
+     * failed, the first failure is thrown once the others have finished.
+     */
+    public List<Result> run(ExportContext ctx, ExportConfig config, Path outputDir) throws IOException {
+        if (exporters.isEmpty()) return List.of();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(exporters.size(), r -> {
+            Thread t = new Thread(r, "code2spec-export-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        boolean isolate = exporters.size() > 1;
+        try {
+            List<CompletableFuture<Result>> futures = new ArrayList<>();
+            for (SpecExporter exporter : exporters) {
+                futures.add(CompletableFuture.supplyAsync(() -> {
+                    long start = System.currentTimeMillis();
+                    try {
+                        String output = exporter.write(isolate ? ctx.isolatedCopy() : ctx, config, outputDir);
+                        return new Result(exporter.name(), output, System.currentTimeMillis() - start);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }, executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).exceptionally(e -> null).join();
+            List<Result> results = new ArrayList<>();
+            for (CompletableFuture<Result> future : futures) {
+                try {
+                    results.add(future.join());
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof UncheckedIOException io) throw io.getCause();
+                    if (cause instanceof RuntimeException re) throw re;
+                    throw e;
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -2,136 +2,248 @@ package io.github.code2spec.export;
 
 import io.github.code2spec.core.model.*;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.stream.Collectors;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Exports spec to human-readable Markdown.
+ *
+ * <p>Sections are written straight to a buffered writer as they are produced, so memory use
+ * does not grow with the size of the document.
  */
-public class MarkdownExporter {
+public class MarkdownExporter implements SpecExporter {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    static final String FILE_NAME = "api-docs.md";
+    /** Shard directory next to {@value #FILE_NAME}, which then becomes the index */
+    static final String SHARD_DIR = "api-docs";
+    static final String ERROR_CODES_FILE = "_error-codes.md";
+    /** Renderer version in the section sidecar; bump when the rendering of a section changes */
+    private static final String RENDERER = "markdown/1";
+
+    @Override
+    public String name() {
+        return "markdown";
+    }
+
+    @Override
+    public String write(ExportContext ctx, ExportConfig config, Path outputDir) throws IOException {
+        if (config.isSharded()) return exportSharded(ctx, config, outputDir);
+        ShardedOutput.remove(outputDir.resolve(SHARD_DIR), ".md");
+        Path file = outputDir.resolve(FILE_NAME);
+        SectionSplicer splicer = SectionSplicer.open(file, false, RENDERER, config.isIncremental());
+        splicer.write(raw -> {
+            Writer out = new OutputStreamWriter(raw, StandardCharsets.UTF_8);
+            export(ctx, out, splicer);
+            out.flush();
+        });
+        return file + splicer.summary();
+    }
+
+    /**
+     * Writes one document per shard plus the error codes into {@value #SHARD_DIR}/ and an index
+     * linking them as {@value #FILE_NAME}; unchanged files are left untouched.
+     *
+     * @return summary of the shards written
+     */
+    public String exportSharded(ExportContext ctx, ExportConfig config, Path outputDir) throws IOException {
+        Map<String, List<Endpoint>> groups = ShardedOutput.group(ctx.getResult().getEndpoints(), config);
+        Path dir = outputDir.resolve(SHARD_DIR);
+        List<ShardedOutput.Shard> shards = ShardedOutput.write(dir, ".md", groups,
+                (name, endpoints, out) -> writeShard(ctx, name, endpoints, out));
+        ShardedOutput.writeFile(dir.resolve(ERROR_CODES_FILE), out -> writeErrorCodes(ctx, out));
+        ShardedOutput.writeFile(outputDir.resolve(FILE_NAME), out -> writeIndex(ctx, config, groups, out));
+        SectionSplicer.deleteSidecar(outputDir.resolve(FILE_NAME));
+        return ShardedOutput.summary(dir, shards);
+    }
 
     public void export(SpecResult result, Path outputFile) throws IOException {
-        StringBuilder md = new StringBuilder();
-        md.append("# REST API 文档\n\n");
-        md.append("> 由 Code2Spec 自动生成，含 LLM 增强的业务语义与错误码说明\n\n");
+        export(new ExportContext(result), outputFile);
+    }
+
+    public void export(ExportContext ctx, Path outputFile) throws IOException {
+        Files.createDirectories(outputFile.getParent());
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(outputFile), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            export(ctx, out);
+        }
+    }
+
+    /**
+     * Writes the document to {@code out}; the caller owns (and closes) the writer.
+     */
+    public void export(ExportContext ctx, Writer out) throws IOException {
+        export(ctx, out, null);
+    }
+
+    /**
+     * With a splicer, each endpoint and error code is a section that is copied from the previous
+     * document when its fingerprint is unchanged.
+     */
+    private void export(ExportContext ctx, Writer out, SectionSplicer splicer) throws IOException {
+        SpecResult result = ctx.getResult();
+        out.write("# REST API 文档\n\n");
+        out.write("> 由 Code2Spec 自动生成，含 LLM 增强的业务语义与错误码说明\n\n");
 
-        md.append("## 接口列表\n\n");
+        out.write("## 接口列表\n\n");
         for (Endpoint ep : result.getEndpoints()) {
-            md.append(exportEndpoint(ep, result.getErrorCodes()));
+            if (splicer == null) {
+                writeEndpoint(out, ep, ctx);
+            } else {
+                splicer.section(out, "endpoint:" + ep.getHttpMethod() + " " + ep.getUri(), ctx.inputFingerprint(ep),
+                        () -> writeEndpoint(out, ep, ctx));
+            }
         }
 
-        md.append("## 错误码说明\n\n");
+        out.write("## 错误码说明\n\n");
         for (ErrorCode ec : result.getErrorCodes()) {
-            md.append(exportErrorCode(ec));
+            if (splicer == null) {
+                writeErrorCode(out, ec);
+            } else {
+                splicer.section(out, "error:" + ec.getCode(), ctx.fingerprint(ec), () -> writeErrorCode(out, ec));
+            }
         }
+    }
 
-        Files.createDirectories(outputFile.getParent());
-        Files.writeString(outputFile, md.toString());
+    private void writeIndex(ExportContext ctx, ExportConfig config, Map<String, List<Endpoint>> groups, Writer out)
+            throws IOException {
+        out.write("# REST API 文档\n\n");
+        out.append("> 由 Code2Spec 自动生成，按").append(shardLabel(config.getShardBy())).append("分片，共 ")
+                .append(String.valueOf(groups.size())).append(" 个分片、")
+                .append(String.valueOf(ctx.getResult().getEndpoints().size())).append(" 个接口\n\n");
+        out.write("## 分片索引\n\n");
+        for (Map.Entry<String, List<Endpoint>> group : groups.entrySet()) {
+            out.append("- [").append(group.getKey()).append("](").append(SHARD_DIR).append('/')
+                    .append(group.getKey()).append(".md)（").append(String.valueOf(group.getValue().size()))
+                    .append(" 个接口）\n");
+            for (Endpoint ep : group.getValue()) {
+                out.append("  - `").append(ep.getHttpMethod()).append(' ').append(ep.getUri()).append('`');
+                if (ep.getSummary() != null && !ep.getSummary().isBlank()) out.append(' ').append(ep.getSummary());
+                out.append('\n');
+            }
+        }
+        out.append("\n## 错误码说明\n\n");
+        out.append("共 ").append(String.valueOf(ctx.getResult().getErrorCodes().size())).append(" 个，见 [")
+                .append(ERROR_CODES_FILE).append("](").append(SHARD_DIR).append('/').append(ERROR_CODES_FILE).append(")\n");
+    }
+
+    private void writeShard(ExportContext ctx, String shard, List<Endpoint> endpoints, Writer out) throws IOException {
+        out.append("# ").append(shard).append(" 接口文档\n\n");
+        out.append("> 由 Code2Spec 自动生成，[返回索引](../").append(FILE_NAME).append(")，错误码详见 [错误码说明](")
+                .append(ERROR_CODES_FILE).append(")\n\n");
+        out.write("## 接口列表\n\n");
+        for (Endpoint ep : endpoints) {
+            writeEndpoint(out, ep, ctx);
+        }
+    }
+
+    private void writeErrorCodes(ExportContext ctx, Writer out) throws IOException {
+        out.append("# 错误码说明\n\n");
+        out.append("> 由 Code2Spec 自动生成，[返回索引](../").append(FILE_NAME).append(")\n\n");
+        for (ErrorCode ec : ctx.getResult().getErrorCodes()) {
+            writeErrorCode(out, ec);
+        }
+    }
+
+    private static String shardLabel(ExportConfig.ShardBy shardBy) {
+        return switch (shardBy) {
+            case CONTROLLER -> "控制器类";
+            case PREFIX -> " URI 前缀";
+            case TAG -> "标签";
+        };
     }
 
-    private String exportEndpoint(Endpoint ep, java.util.List<ErrorCode> allErrorCodes) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("### ").append(ep.getHttpMethod()).append(" ").append(ep.getUri()).append("\n\n");
-        sb.append("- **操作ID**: ").append(ep.getOperationId()).append("\n");
-        sb.append("- **摘要**: ").append(ep.getSummary()).append("\n\n");
+    private void writeEndpoint(Writer out, Endpoint ep, ExportContext ctx) throws IOException {
+        out.append("### ").append(ep.getHttpMethod()).append(" ").append(ep.getUri()).append("\n\n");
+        out.append("- **操作ID**: ").append(ep.getOperationId()).append("\n");
+        out.append("- **摘要**: ").append(ep.getSummary()).append("\n\n");
 
         if (ep.getBusinessSemantic() != null) {
             BusinessSemantic bs = ep.getBusinessSemantic();
-            sb.append("#### 业务语义\n\n");
+            out.append("#### 业务语义\n\n");
             if (bs.getFunction() != null && !bs.getFunction().isBlank()) {
-                sb.append("- **功能概述**: ").append(bs.getFunction()).append("\n");
+                out.append("- **功能概述**: ").append(bs.getFunction()).append("\n");
             }
-            sb.append("- **业务场景**: ").append(nonBlankOrPlaceholder(bs.getScenario())).append("\n");
+            out.append("- **业务场景**: ").append(nonBlankOrPlaceholder(bs.getScenario())).append("\n");
             if (bs.getImplementationNotes() != null && !bs.getImplementationNotes().isBlank()) {
-                sb.append("- **实现要点**: ").append(bs.getImplementationNotes()).append("\n");
+                out.append("- **实现要点**: ").append(bs.getImplementationNotes()).append("\n");
             }
-            sb.append("- **注意事项**: ").append(nonBlankOrPlaceholder(bs.getCautions())).append("\n");
-            sb.append("\n");
+            out.append("- **注意事项**: ").append(nonBlankOrPlaceholder(bs.getCautions())).append("\n");
+            out.append("\n");
         } else {
-            sb.append("#### 业务语义\n\n");
-            sb.append("- **业务场景**: （启用 LLM 增强后可补充）\n");
-            sb.append("- **注意事项**: （启用 LLM 增强后可补充）\n\n");
+            out.append("#### 业务语义\n\n");
+            out.append("- **业务场景**: （启用 LLM 增强后可补充）\n");
+            out.append("- **注意事项**: （启用 LLM 增强后可补充）\n\n");
         }
 
         if (ep.getDescription() != null && !ep.getDescription().isBlank()) {
-            sb.append("#### 描述\n\n").append(ep.getDescription()).append("\n\n");
+            out.append("#### 描述\n\n").append(ep.getDescription()).append("\n\n");
         }
 
         if (!ep.getParameters().isEmpty()) {
-            sb.append("#### 参数\n\n");
-            sb.append("| 名称 | 位置 | 类型 | 必填 | 约束 | 说明 |\n");
-            sb.append("|-----|------|-----|-----|-----|-----|\n");
+            out.append("#### 参数\n\n");
+            out.append("| 名称 | 位置 | 类型 | 必填 | 约束 | 说明 |\n");
+            out.append("|-----|------|-----|-----|-----|-----|\n");
             for (Parameter p : ep.getParameters()) {
-                String constraints = formatParameterConstraints(p);
-                sb.append("| ").append(p.getName()).append(" | ").append(p.getIn()).append(" | ")
+                out.append("| ").append(p.getName()).append(" | ").append(p.getIn()).append(" | ")
                         .append(nullToEmpty(p.getType())).append(" | ").append(p.isRequired() ? "是" : "否").append(" | ")
-                        .append(constraints).append(" | ")
+                        .append(formatParameterConstraints(p)).append(" | ")
                         .append(nullToEmpty(p.getDescription())).append(" |\n");
             }
-            sb.append("\n");
+            out.append("\n");
         }
 
-        sb.append("#### 请求体定义\n\n");
-        if (ep.getRequestBodySchema() != null && !ep.getRequestBodySchema().getFields().isEmpty()) {
-            sb.append("**类型**: `").append(ep.getRequestBodySchema().getSchemaName()).append("`\n\n");
-            sb.append("| 字段 | 类型 | 必填 | 约束 | 说明 |\n");
-            sb.append("|-----|-----|-----|-----|-----|\n");
-            for (SchemaField f : ep.getRequestBodySchema().getFields()) {
-                String constraints = formatFieldConstraints(f);
-                sb.append("| ").append(f.getName()).append(" | ").append(nullToEmpty(f.getType())).append(" | ")
-                        .append(f.isRequired() ? "是" : "否").append(" | ").append(constraints).append(" | ")
-                        .append(nullToEmpty(f.getDescription())).append(" |\n");
+        out.append("#### 请求体定义\n\n");
+        writeBody(out, ep.getRequestBodySchema(), ep.getRequestBodyType(), "无请求体");
+
+        out.append("#### 响应体定义\n\n");
+        writeBody(out, ep.getResponseBodySchema(), ep.getResponseType(), "无响应体");
+
+        if (!ep.getErrorCodes().isEmpty() || !ctx.getResult().getErrorCodes().isEmpty()) {
+            out.append("#### 相关错误码\n\n");
+            if (ep.getErrorCodes().isEmpty()) {
+                out.append(ctx.markdownAllErrorCodeRefs());
+            } else {
+                for (ErrorCodeRef ref : ep.getErrorCodes()) out.append(ctx.markdownErrorCodeRef(ref.getCode()));
             }
-            sb.append("\n");
-        } else if (ep.getRequestBodyType() != null) {
-            sb.append("**类型**: `").append(ep.getRequestBodyType()).append("`\n\n");
-            sb.append("（无字段定义，可从 OpenAPI 文件或启用 LLM 增强补充）\n\n");
-        } else {
-            sb.append("无请求体\n\n");
+            out.append("\n");
         }
+        out.append("---\n\n");
+    }
 
-        sb.append("#### 响应体定义\n\n");
-        if (ep.getResponseBodySchema() != null && !ep.getResponseBodySchema().getFields().isEmpty()) {
-            sb.append("**类型**: `").append(ep.getResponseBodySchema().getSchemaName()).append("`\n\n");
-            sb.append("| 字段 | 类型 | 必填 | 约束 | 说明 |\n");
-            sb.append("|-----|-----|-----|-----|-----|\n");
-            for (SchemaField f : ep.getResponseBodySchema().getFields()) {
-                String constraints = formatFieldConstraints(f);
-                sb.append("| ").append(f.getName()).append(" | ").append(nullToEmpty(f.getType())).append(" | ")
-                        .append(f.isRequired() ? "是" : "否").append(" | ").append(constraints).append(" | ")
+    private void writeBody(Writer out, SchemaDefinition schema, String type, String none) throws IOException {
+        if (schema != null && !schema.getFields().isEmpty()) {
+            out.append("**类型**: `").append(schema.getSchemaName()).append("`\n\n");
+            out.append("| 字段 | 类型 | 必填 | 约束 | 说明 |\n");
+            out.append("|-----|-----|-----|-----|-----|\n");
+            for (SchemaField f : schema.getFields()) {
+                out.append("| ").append(f.getName()).append(" | ").append(nullToEmpty(f.getType())).append(" | ")
+                        .append(f.isRequired() ? "是" : "否").append(" | ").append(formatFieldConstraints(f)).append(" | ")
                         .append(nullToEmpty(f.getDescription())).append(" |\n");
             }
-            sb.append("\n");
-        } else if (ep.getResponseType() != null) {
-            sb.append("**类型**: `").append(ep.getResponseType()).append("`\n\n");
-            sb.append("（无字段定义，可从 OpenAPI 文件或启用 LLM 增强补充）\n\n");
+            out.append("\n");
+        } else if (type != null) {
+            out.append("**类型**: `").append(type).append("`\n\n");
+            out.append("（无字段定义，可从 OpenAPI 文件或启用 LLM 增强补充）\n\n");
         } else {
-            sb.append("无响应体\n\n");
+            out.append(none).append("\n\n");
         }
+    }
 
-        if (!ep.getErrorCodes().isEmpty() || !allErrorCodes.isEmpty()) {
-            sb.append("#### 相关错误码\n\n");
-            var codes = ep.getErrorCodes().isEmpty()
-                    ? allErrorCodes.stream().map(ec -> new ErrorCodeRef(ec.getCode(), ec.getMessage())).collect(Collectors.toList())
-                    : ep.getErrorCodes();
-            for (ErrorCodeRef ref : codes) {
-                allErrorCodes.stream().filter(ec -> ec.getCode().equals(ref.getCode())).findFirst()
-                        .ifPresentOrElse(ec -> {
-                            sb.append("- **").append(ec.getCode()).append("** (HTTP ").append(ec.getHttpStatus()).append("): ")
-                                    .append(ec.getMessage()).append("\n");
-                            sb.append("  - **根因**: ").append(nonBlankOrPlaceholder(ec.getRootCause())).append("\n");
-                            sb.append("  - **处理建议**: ").append(nonBlankOrPlaceholder(ec.getHandlingSuggestion())).append("\n");
-                        }, () -> sb.append("- ").append(ref.getCode()).append("\n"));
-            }
-            sb.append("\n");
-        }
-        sb.append("---\n\n");
-        return sb.toString();
+    /** Reference to an error code under an endpoint; rendered once per code by {@link ExportContext} */
+    static String renderErrorCodeRef(ErrorCode ec) {
+        return "- **" + ec.getCode() + "** (HTTP " + ec.getHttpStatus() + "): " + ec.getMessage() + "\n"
+                + "  - **根因**: " + nonBlankOrPlaceholder(ec.getRootCause()) + "\n"
+                + "  - **处理建议**: " + nonBlankOrPlaceholder(ec.getHandlingSuggestion()) + "\n";
     }
 
-    private String nonBlankOrPlaceholder(String s) {
+    private static String nonBlankOrPlaceholder(String s) {
         return (s != null && !s.isBlank()) ? s : "（启用 LLM 增强后可补充）";
     }
 
@@ -161,20 +273,18 @@ public class MarkdownExporter {
         return c.toString().trim().isEmpty() ? "-" : c.toString().trim();
     }
 
-    private String exportErrorCode(ErrorCode ec) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("### ").append(ec.getCode()).append("\n\n");
-        sb.append("- **HTTP 状态**: ").append(ec.getHttpStatus()).append("\n");
-        sb.append("- **异常类型**: ").append(nullToEmpty(ec.getExceptionType())).append("\n");
-        sb.append("- **消息**: ").append(nullToEmpty(ec.getMessage())).append("\n\n");
-        sb.append("**根因描述**: ").append(nonBlankOrPlaceholder(ec.getRootCause())).append("\n\n");
-        sb.append("**处理建议**: ").append(nonBlankOrPlaceholder(ec.getHandlingSuggestion())).append("\n\n");
+    private void writeErrorCode(Writer out, ErrorCode ec) throws IOException {
+        out.append("### ").append(ec.getCode()).append("\n\n");
+        out.append("- **HTTP 状态**: ").append(String.valueOf(ec.getHttpStatus())).append("\n");
+        out.append("- **异常类型**: ").append(nullToEmpty(ec.getExceptionType())).append("\n");
+        out.append("- **消息**: ").append(nullToEmpty(ec.getMessage())).append("\n\n");
+        out.append("**根因描述**: ").append(nonBlankOrPlaceholder(ec.getRootCause())).append("\n\n");
+        out.append("**处理建议**: ").append(nonBlankOrPlaceholder(ec.getHandlingSuggestion())).append("\n\n");
         if (ec.getPrevention() != null && !ec.getPrevention().isBlank()) {
-            sb.append("**预防建议**: ").append(ec.getPrevention()).append("\n\n");
+            out.append("**预防建议**: ").append(ec.getPrevention()).append("\n\n");
         } else {
-            sb.append("**预防建议**: （启用 LLM 增强后可补充）\n\n");
+            out.append("**预防建议**: （启用 LLM 增强后可补充）\n\n");
         }
-        sb.append("---\n\n");
-        return sb.toString();
+        out.append("---\n\n");
     }
 }
@@ -1,93 +1,398 @@
 package io.github.code2spec.export;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import io.github.code2spec.core.model.*;
 import io.swagger.v3.core.util.Json;
 import io.swagger.v3.oas.models.OpenAPI;
-import io.swagger.v3.oas.models.Paths;
 
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import io.swagger.v3.oas.models.Operation;
-import io.swagger.v3.oas.models.PathItem;
-import io.swagger.v3.oas.models.info.Info;
-import io.swagger.v3.oas.models.media.Content;
-import io.swagger.v3.oas.models.media.MediaType;
-import io.swagger.v3.oas.models.media.Schema;
-import io.swagger.v3.oas.models.responses.ApiResponse;
-import io.swagger.v3.oas.models.responses.ApiResponses;
-
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Exports spec to OpenAPI 3.x.
+ *
+ * <p>The document is streamed with a Jackson {@link JsonGenerator} while iterating the endpoints,
+ * without building the swagger-core object graph. Request and response bodies with field
+ * definitions go to {@code components/schemas} (one per distinct definition) and error responses
+ * to {@code components/responses} (one per HTTP status); operations refer to them with {@code $ref}.
  */
-public class OpenApiExporter {
+public class OpenApiExporter implements SpecExporter {
+    private static final String JSON_MEDIA_TYPE = "application/json";
+    /** Operation order within a path item, as swagger-core serializes it */
+    private static final List<String> METHOD_ORDER = List.of("get", "put", "post", "delete", "options", "head", "patch", "trace");
+    private static final Set<String> OPENAPI_TYPES = Set.of("string", "integer", "number", "boolean", "array", "object");
+    static final String FILE_NAME = "openapi.json";
+    static final String GZIP_FILE_NAME = FILE_NAME + ".gz";
+    /** Renderer version in the section sidecar; bump when the rendering of a path item changes */
+    private static final String RENDERER = "openapi/1";
+    /** Shard directory used instead of {@value #FILE_NAME} when sharding */
+    static final String SHARD_DIR = "openapi";
+    static final String SHARD_INDEX_FILE = "_index.json";
+    private static final JsonFactory JSON_FACTORY = new JsonFactory().disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    @Override
+    public String name() {
+        return "openapi";
+    }
+
+    @Override
+    public String write(ExportContext ctx, ExportConfig config, Path outputDir) throws IOException {
+        if (config.isSharded()) return exportSharded(ctx, config, outputDir);
+        ShardedOutput.remove(outputDir.resolve(SHARD_DIR), ".json");
+        Path file = outputDir.resolve(config.isGzip() ? GZIP_FILE_NAME : FILE_NAME);
+        SectionSplicer splicer = SectionSplicer.open(file, config.isGzip(), RENDERER, config.isIncremental());
+        splicer.write(raw -> {
+            Writer writer = new OutputStreamWriter(raw, StandardCharsets.UTF_8);
+            export(ctx, ctx.getResult().getEndpoints(), "REST API", writer, splicer);
+            writer.flush();
+        });
+        SectionSplicer.delete(outputDir.resolve(config.isGzip() ? FILE_NAME : GZIP_FILE_NAME));
+        return file + splicer.summary();
+    }
+
+    /**
+     * Writes one self-contained document per shard (with only the schemas it uses) into
+     * {@value #SHARD_DIR}/, plus {@value #SHARD_INDEX_FILE} listing the shards and their hashes.
+     * Replaces {@value #FILE_NAME}; shards are not compressed and unchanged ones are left untouched.
+     *
+     * @return summary of the shards written
+     */
+    public String exportSharded(ExportContext ctx, ExportConfig config, Path outputDir) throws IOException {
+        Map<String, List<Endpoint>> groups = ShardedOutput.group(ctx.getResult().getEndpoints(), config);
+        Path dir = outputDir.resolve(SHARD_DIR);
+        List<ShardedOutput.Shard> shards = ShardedOutput.write(dir, ".json", groups,
+                (name, endpoints, out) -> export(ctx, endpoints, "REST API - " + name, out, null));
+        ShardedOutput.writeFile(dir.resolve(SHARD_INDEX_FILE), out -> writeShardIndex(config, shards, out));
+        SectionSplicer.delete(outputDir.resolve(FILE_NAME));
+        SectionSplicer.delete(outputDir.resolve(GZIP_FILE_NAME));
+        return ShardedOutput.summary(dir, shards);
+    }
+
+    private void writeShardIndex(ExportConfig config, List<ShardedOutput.Shard> shards, Writer out) throws IOException {
+        JsonGenerator g = JSON_FACTORY.createGenerator(out);
+        g.useDefaultPrettyPrinter();
+        g.writeStartObject();
+        g.writeStringField("type", "openapi_shard_index");
+        g.writeStringField("shard_by", config.getShardBy().name().toLowerCase(Locale.ROOT));
+        g.writeArrayFieldStart("shards");
+        for (ShardedOutput.Shard shard : shards) {
+            g.writeStartObject();
+            g.writeStringField("name", shard.name());
+            g.writeStringField("file", shard.file());
+            g.writeNumberField("endpoints", shard.endpoints());
+            g.writeStringField("sha256", shard.sha256());
+            g.writeEndObject();
+        }
+        g.writeEndArray();
+        g.writeEndObject();
+        g.flush();
+    }
 
     public OpenAPI export(SpecResult result) {
-        OpenAPI openApi = new OpenAPI();
-        openApi.setInfo(new Info()
-                .title("REST API")
-                .description("由 Code2Spec 自动生成")
-                .version("1.0.0"));
-
-        Paths paths = new Paths();
-        for (Endpoint ep : result.getEndpoints()) {
-            String path = ep.getUri();
-            PathItem pathItem = paths.get(path);
-            if (pathItem == null) {
-                pathItem = new PathItem();
-                paths.addPathItem(path, pathItem);
-            }
-            Operation op = toOperation(ep, result.getErrorCodes());
-            setHttpMethod(pathItem, ep.getHttpMethod(), op);
+        return export(new ExportContext(result));
+    }
+
+    /**
+     * Returns the document as a swagger-core model, read back from the streamed JSON.
+     */
+    public OpenAPI export(ExportContext ctx) {
+        StringWriter json = new StringWriter();
+        try {
+            export(ctx, json);
+            return Json.mapper().readValue(json.toString(), OpenAPI.class);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
         }
-        openApi.setPaths(paths);
-        return openApi;
     }
 
     public void exportToFile(SpecResult result, Path outputFile) throws IOException {
-        OpenAPI openApi = export(result);
-        Files.createDirectories(outputFile.getParent());
-        Files.writeString(outputFile, Json.pretty(openApi));
-    }
-
-    private Operation toOperation(Endpoint ep, List<ErrorCode> errorCodes) {
-        Operation op = new Operation();
-        op.setOperationId(ep.getOperationId());
-        op.setSummary(ep.getSummary());
-        op.setDescription(buildDescription(ep));
-
-        ep.getParameters().forEach(p -> {
-            io.swagger.v3.oas.models.parameters.Parameter param =
-                    new io.swagger.v3.oas.models.parameters.Parameter()
-                            .name(p.getName())
-                            .in(p.getIn())
-                            .required(p.isRequired())
-                            .schema(new Schema().type(mapType(p.getType())));
-            if (p.getDescription() != null) param.setDescription(p.getDescription());
-            op.addParametersItem(param);
+        exportToFile(new ExportContext(result), outputFile);
+    }
+
+    public void exportToFile(ExportContext ctx, Path outputFile) throws IOException {
+        AtomicFiles.write(outputFile, out -> {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            export(ctx, writer);
+            writer.flush();
         });
+    }
+
+    /**
+     * Writes the pretty-printed document to {@code out}; the caller owns (and closes) the writer.
+     */
+    public void export(ExportContext ctx, Writer out) throws IOException {
+        export(ctx, ctx.getResult().getEndpoints(), "REST API", out, null);
+    }
+
+    /**
+     * With a splicer, each path item is a section that is copied from the previous document when
+     * its operations, their schema names and the error statuses are unchanged; components are
+     * always written anew.
+     */
+    private void export(ExportContext ctx, List<Endpoint> endpoints, String title, Writer out, SectionSplicer splicer)
+            throws IOException {
+        JsonGenerator g = JSON_FACTORY.createGenerator(out);
+        g.useDefaultPrettyPrinter();
+        g.writeStartObject();
+        g.writeStringField("openapi", "3.0.1");
+        g.writeObjectFieldStart("info");
+        g.writeStringField("title", title);
+        g.writeStringField("description", "由 Code2Spec 自动生成");
+        g.writeStringField("version", "1.0.0");
+        g.writeEndObject();
+
+        // Endpoints are grouped by path (first occurrence order); per path and method the last one wins
+        Map<String, Map<String, Endpoint>> paths = new LinkedHashMap<>();
+        for (Endpoint ep : endpoints) {
+            paths.computeIfAbsent(ep.getUri(), p -> new HashMap<>()).put(methodKey(ep.getHttpMethod()), ep);
+        }
+        SchemaRegistry schemas = new SchemaRegistry();
+        Set<String> errorStatuses = ctx.openApiErrorDescriptions().keySet();
+        g.writeObjectFieldStart("paths");
+        for (Map.Entry<String, Map<String, Endpoint>> path : paths.entrySet()) {
+            g.writeFieldName(path.getKey());
+            if (splicer == null) {
+                writePathItem(g, path.getValue(), schemas, errorStatuses);
+                continue;
+            }
+            String key = splicer.uniqueKey("path:" + path.getKey());
+            String fingerprint = pathItemFingerprint(ctx, path.getValue(), schemas, errorStatuses);
+            SectionSplicer.Section previous = splicer.reusable(key, fingerprint);
+            if (previous != null) {
+                // Only the separator goes through the generator; the bytes are copied as they are
+                g.writeRawValue("");
+                splicer.copy(g, previous);
+            } else {
+                // The section starts at the '{' just written, after the separator
+                g.writeStartObject();
+                long start = splicer.position(g) - 1;
+                writePathItemOperations(g, path.getValue(), schemas, errorStatuses);
+                g.writeEndObject();
+                splicer.add(key, fingerprint, start, splicer.position(g), false);
+            }
+        }
+        g.writeEndObject();
+
+        if (!schemas.byName.isEmpty() || !errorStatuses.isEmpty()) {
+            g.writeObjectFieldStart("components");
+            if (!schemas.byName.isEmpty()) {
+                g.writeObjectFieldStart("schemas");
+                for (Map.Entry<String, SchemaDefinition> e : schemas.byName.entrySet()) {
+                    g.writeFieldName(e.getKey());
+                    writeSchemaDefinition(g, e.getValue());
+                }
+                g.writeEndObject();
+            }
+            if (!errorStatuses.isEmpty()) {
+                g.writeObjectFieldStart("responses");
+                for (Map.Entry<String, String> e : ctx.openApiErrorDescriptions().entrySet()) {
+                    g.writeObjectFieldStart(errorResponseName(e.getKey()));
+                    g.writeStringField("description", e.getValue());
+                    g.writeEndObject();
+                }
+                g.writeEndObject();
+            }
+            g.writeEndObject();
+        }
+        g.writeEndObject();
+        g.flush();
+    }
+
+    private void writePathItem(JsonGenerator g, Map<String, Endpoint> operations, SchemaRegistry schemas,
+                               Set<String> errorStatuses) throws IOException {
+        g.writeStartObject();
+        writePathItemOperations(g, operations, schemas, errorStatuses);
+        g.writeEndObject();
+    }
+
+    private void writePathItemOperations(JsonGenerator g, Map<String, Endpoint> operations, SchemaRegistry schemas,
+                                         Set<String> errorStatuses) throws IOException {
+        for (String method : METHOD_ORDER) {
+            Endpoint ep = operations.get(method);
+            if (ep != null) writeOperation(g, method, ep, schemas, errorStatuses);
+        }
+    }
+
+    /**
+     * Covers everything a path item is rendered from. Registers the body schemas in the same
+     * order as {@link #writeOperation}, so that names stay assigned as in a full render.
+     */
+    private static String pathItemFingerprint(ExportContext ctx, Map<String, Endpoint> operations, SchemaRegistry schemas,
+                                              Set<String> errorStatuses) {
+        StringBuilder input = new StringBuilder(String.join(",", errorStatuses));
+        for (String method : METHOD_ORDER) {
+            Endpoint ep = operations.get(method);
+            if (ep == null) continue;
+            input.append('|').append(method).append(':').append(ctx.fingerprint(ep));
+            if (ep.getRequestBodyType() != null && hasFields(ep.getRequestBodySchema())) {
+                input.append(':').append(schemas.register(ep.getRequestBodySchema()));
+            }
+            if (hasFields(ep.getResponseBodySchema())) {
+                input.append(':').append(schemas.register(ep.getResponseBodySchema()));
+            }
+        }
+        return AtomicFiles.sha256(input.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static boolean hasFields(SchemaDefinition schema) {
+        return schema != null && !schema.getFields().isEmpty();
+    }
+
+    private void writeOperation(JsonGenerator g, String method, Endpoint ep, SchemaRegistry schemas,
+                                Set<String> errorStatuses) throws IOException {
+        g.writeObjectFieldStart(method);
+        if (!ep.getTags().isEmpty()) {
+            g.writeArrayFieldStart("tags");
+            for (String tag : ep.getTags()) g.writeString(tag);
+            g.writeEndArray();
+        }
+        if (ep.getSummary() != null) g.writeStringField("summary", ep.getSummary());
+        String description = buildDescription(ep);
+        if (!description.isEmpty()) g.writeStringField("description", description);
+        if (ep.getOperationId() != null) g.writeStringField("operationId", ep.getOperationId());
+
+        if (!ep.getParameters().isEmpty()) {
+            g.writeArrayFieldStart("parameters");
+            for (io.github.code2spec.core.model.Parameter p : ep.getParameters()) {
+                g.writeStartObject();
+                g.writeStringField("name", p.getName());
+                g.writeStringField("in", p.getIn());
+                if (p.getDescription() != null) g.writeStringField("description", p.getDescription());
+                g.writeBooleanField("required", p.isRequired());
+                g.writeObjectFieldStart("schema");
+                g.writeStringField("type", mapType(p.getType()));
+                g.writeEndObject();
+                g.writeEndObject();
+            }
+            g.writeEndArray();
+        }
 
         if (ep.getRequestBodyType() != null) {
-            op.setRequestBody(new io.swagger.v3.oas.models.parameters.RequestBody()
-                    .content(new Content().addMediaType("application/json",
-                            new MediaType().schema(new Schema().type("object").description(ep.getRequestBodyType())))));
+            g.writeObjectFieldStart("requestBody");
+            writeJsonContent(g, ep.getRequestBodySchema(), ep.getRequestBodyType(), schemas);
+            g.writeEndObject();
         }
 
-        ApiResponses responses = new ApiResponses();
-        responses.addApiResponse("200", new ApiResponse()
-                .description("成功")
-                .content(new Content().addMediaType("application/json",
-                        new MediaType().schema(new Schema().type("object").description(ep.getResponseType())))));
-        for (ErrorCode ec : errorCodes) {
-            responses.addApiResponse(String.valueOf(ec.getHttpStatus()),
-                    new ApiResponse().description(buildErrorDescription(ec)));
+        g.writeObjectFieldStart("responses");
+        g.writeObjectFieldStart("200");
+        g.writeStringField("description", "成功");
+        writeJsonContent(g, ep.getResponseBodySchema(), ep.getResponseType(), schemas);
+        g.writeEndObject();
+        for (String status : errorStatuses) {
+            g.writeObjectFieldStart(status);
+            g.writeStringField("$ref", "#/components/responses/" + errorResponseName(status));
+            g.writeEndObject();
         }
-        op.setResponses(responses);
-        return op;
+        g.writeEndObject();
+        g.writeEndObject();
+    }
+
+    /** Body content: a reference when the body has field definitions, else an object described by its type */
+    private void writeJsonContent(JsonGenerator g, SchemaDefinition schema, String type,
+                                  SchemaRegistry schemas) throws IOException {
+        g.writeObjectFieldStart("content");
+        g.writeObjectFieldStart(JSON_MEDIA_TYPE);
+        g.writeObjectFieldStart("schema");
+        if (hasFields(schema)) {
+            g.writeStringField("$ref", "#/components/schemas/" + schemas.register(schema));
+        } else {
+            g.writeStringField("type", "object");
+            if (type != null) g.writeStringField("description", type);
+        }
+        g.writeEndObject();
+        g.writeEndObject();
+        g.writeEndObject();
+    }
+
+    private void writeSchemaDefinition(JsonGenerator g, SchemaDefinition def) throws IOException {
+        g.writeStartObject();
+        g.writeStringField("type", "object");
+        List<String> required = new ArrayList<>();
+        for (SchemaField f : def.getFields()) {
+            if (f.isRequired()) required.add(f.getName());
+        }
+        if (!required.isEmpty()) {
+            g.writeArrayFieldStart("required");
+            for (String name : required) g.writeString(name);
+            g.writeEndArray();
+        }
+        g.writeObjectFieldStart("properties");
+        for (SchemaField f : def.getFields()) {
+            g.writeObjectFieldStart(f.getName());
+            String type = fieldType(f.getType());
+            g.writeStringField("type", type);
+            if ("array".equals(type)) {
+                g.writeObjectFieldStart("items");
+                g.writeEndObject();
+            }
+            String description = f.getDescription();
+            if (description == null && "object".equals(type) && f.getType() != null && !"object".equals(f.getType())) {
+                // Keep the class name of nested objects that have no schema of their own
+                description = f.getType();
+            }
+            if (description != null) g.writeStringField("description", description);
+            if (f.getFormat() != null) g.writeStringField("format", f.getFormat());
+            if (f.getMinimum() != null) g.writeNumberField("minimum", f.getMinimum());
+            if (f.getMaximum() != null) g.writeNumberField("maximum", f.getMaximum());
+            if (f.getMinLength() != null) g.writeNumberField("minLength", f.getMinLength());
+            if (f.getMaxLength() != null) g.writeNumberField("maxLength", f.getMaxLength());
+            if (f.getPattern() != null) g.writeStringField("pattern", f.getPattern());
+            if (f.getExample() != null) g.writeStringField("example", f.getExample());
+            g.writeEndObject();
+        }
+        g.writeEndObject();
+        g.writeEndObject();
+    }
+
+    /**
+     * Component names for body schemas: one per distinct definition; a different definition with a
+     * name already taken gets a numeric suffix.
+     */
+    private static class SchemaRegistry {
+        final Map<String, SchemaDefinition> byName = new LinkedHashMap<>();
+        private final Map<String, String> nameByFingerprint = new HashMap<>();
+
+        String register(SchemaDefinition def) {
+            String fingerprint = fingerprint(def);
+            String name = nameByFingerprint.get(fingerprint);
+            if (name != null) return name;
+            String base = def.getSchemaName() != null ? def.getSchemaName().replaceAll("[^A-Za-z0-9._-]", "_") : "Body";
+            name = base;
+            for (int n = 2; byName.containsKey(name); n++) name = base + "_" + n;
+            byName.put(name, def);
+            nameByFingerprint.put(fingerprint, name);
+            return name;
+        }
+
+        private static String fingerprint(SchemaDefinition def) {
+            StringBuilder sb = new StringBuilder(String.valueOf(def.getSchemaName()));
+            for (SchemaField f : def.getFields()) {
+                sb.append('\u0000').append(f.getName()).append('\u0001').append(f.getType())
+                        .append('\u0001').append(f.isRequired()).append('\u0001').append(f.getDescription())
+                        .append('\u0001').append(f.getFormat()).append('\u0001').append(f.getMinimum())
+                        .append('\u0001').append(f.getMaximum()).append('\u0001').append(f.getMinLength())
+                        .append('\u0001').append(f.getMaxLength()).append('\u0001').append(f.getPattern())
+                        .append('\u0001').append(f.getExample());
+            }
+            return sb.toString();
+        }
+    }
+
+    private static String errorResponseName(String status) {
+        return "Error" + status;
     }
 
     private String buildDescription(Endpoint ep) {
@@ -103,7 +408,8 @@ public class OpenApiExporter {
         return sb.toString().trim();
     }
 
-    private String buildErrorDescription(ErrorCode ec) {
+    /** Error response description; built once per code by {@link ExportContext} */
+    static String buildErrorDescription(ErrorCode ec) {
         StringBuilder sb = new StringBuilder();
         sb.append(ec.getMessage());
         if (ec.getRootCause() != null && !ec.getRootCause().isBlank()) {
@@ -115,15 +421,13 @@ public class OpenApiExporter {
         return sb.toString();
     }
 
-    private void setHttpMethod(PathItem pathItem, String method, Operation op) {
-        switch (method.toUpperCase()) {
-            case "GET" -> pathItem.setGet(op);
-            case "POST" -> pathItem.setPost(op);
-            case "PUT" -> pathItem.setPut(op);
-            case "DELETE" -> pathItem.setDelete(op);
-            case "PATCH" -> pathItem.setPatch(op);
-            default -> pathItem.setGet(op);
-        }
+    /** Unknown methods are exported as GET */
+    private static String methodKey(String method) {
+        String m = method != null ? method.toLowerCase(Locale.ROOT) : "get";
+        return switch (m) {
+            case "get", "post", "put", "delete", "patch" -> m;
+            default -> "get";
+        };
     }
 
     private String mapType(String javaType) {
@@ -135,4 +439,12 @@ public class OpenApiExporter {
             default -> "string";
         };
     }
+
+    /** Field types are OpenAPI types (from spec files) or Java type names */
+    private String fieldType(String type) {
+        if (type == null) return "string";
+        if (OPENAPI_TYPES.contains(type)) return type;
+        String mapped = mapType(type);
+        return "string".equals(mapped) && !"string".equalsIgnoreCase(type) ? "object" : mapped;
+    }
 }
@@ -0,0 +1,265 @@
+package io.github.code2spec.export;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Random access to the packed RAG output: reads single documents by id from the NDJSON data file
+ * through an offset index, with one positional read per document instead of scanning or
+ * decompressing the whole file.
+ *
+ * <p>Index layout (big-endian): magic {@code "C2SR"}, version, flags (1 = gzip), entry count, data
+ * file length, trailer length and the SHA-256 of the records; then one 20-byte entry per document,
+ * sorted by the UTF-8 bytes of its id (data offset as long, record length, id offset and id length
+ * as ints); then the ids. With gzip every record is its own gzip member, so the data file is still
+ * a valid gzip of the whole NDJSON.
+ *
+ * <p>The data file ends with a trailer line {@code {"data_sha256":"..."}} (without an id; its own
+ * gzip member with gzip) repeating the hash from the index. Data file and index are replaced one
+ * after the other; {@link #open} compares the trailer with the index, so a crash between the two
+ * renames cannot pair a new data file with an old index (or the reverse), and
+ * {@link #openVerified} also hashes the records before an export carries them over.
+ *
+ * <p>The index is read into memory and the data file is read through a channel, nothing is
+ * mapped: {@link #close} releases the files, so that the next export can replace them (Windows
+ * refuses to replace a mapped file).
+ */
+public final class PackedRagReader implements Closeable {
+    static final String DATA_FILE = "knowledge.ndjson";
+    static final String GZIP_DATA_FILE = DATA_FILE + ".gz";
+    static final String INDEX_FILE = "knowledge.idx";
+
+    private static final int MAGIC = 0x43325352;
+    private static final int VERSION = 3;
+    private static final int FLAG_GZIP = 1;
+    private static final int HEADER_SIZE = 60;
+    private static final int SHA256_SIZE = 32;
+    private static final int ENTRY_SIZE = 20;
+
+    private final ByteBuffer index;
+    private final FileChannel data;
+    private final int count;
+    private final boolean gzip;
+    private final int idsStart;
+
+    private PackedRagReader(ByteBuffer index, FileChannel data, int count, boolean gzip) {
+        this.index = index;
+        this.data = data;
+        this.count = count;
+        this.gzip = gzip;
+        this.idsStart = HEADER_SIZE + count * ENTRY_SIZE;
+    }
+
+    /**
+     * Opens the index and data file of a packed RAG directory; the caller closes the reader.
+     */
+    public static PackedRagReader open(Path ragDir) throws IOException {
+        Path indexFile = ragDir.resolve(INDEX_FILE);
+        ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile));
+        if (index.capacity() < HEADER_SIZE || index.getInt(0) != MAGIC) {
+            throw new IOException("不是有效的 RAG 索引文件: " + indexFile);
+        }
+        if (index.getInt(4) != VERSION) {
+            throw new IOException("不支持的 RAG 索引版本: " + index.getInt(4));
+        }
+        boolean gzip = (index.getInt(8) & FLAG_GZIP) != 0;
+        int count = index.getInt(12);
+        Path dataFile = ragDir.resolve(gzip ? GZIP_DATA_FILE : DATA_FILE);
+        FileChannel data = FileChannel.open(dataFile);
+        PackedRagReader reader = new PackedRagReader(index, data, count, gzip);
+        try {
+            if (!reader.trailerMatches()) {
+                // Written by a different (or unfinished) export
+                throw new IOException("RAG 索引与数据文件不匹配: " + dataFile);
+            }
+        } catch (IOException | RuntimeException e) {
+            data.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /**
+     * Like {@link #open}, and also checks the records against the SHA-256 in the index, reading the
+     * whole data file; for carrying records over to the next export.
+     */
+    static PackedRagReader openVerified(Path ragDir) throws IOException {
+        PackedRagReader reader = open(ragDir);
+        try {
+            MessageDigest digest = AtomicFiles.sha256Digest();
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            long end = reader.recordsLength();
+            for (long pos = 0; pos < end; ) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - pos));
+                int n = reader.data.read(buffer, pos);
+                if (n < 0) break;
+                digest.update(buffer.flip());
+                pos += n;
+            }
+            if (!Arrays.equals(reader.expectedSha256(), digest.digest())) {
+                throw new IOException("RAG 数据文件与索引中的校验和不一致");
+            }
+        } catch (IOException | RuntimeException e) {
+            reader.close();
+            throw e;
+        }
+        return reader;
+    }
+
+    /** The trailer line written after the records of a data file with the given SHA-256 */
+    static byte[] trailer(byte[] recordsSha256) {
+        return ("{\"data_sha256\":\"" + HexFormat.of().formatHex(recordsSha256) + "\"}\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private boolean trailerMatches() throws IOException {
+        long dataLength = index.getLong(16);
+        int trailerLength = index.getInt(24);
+        if (data.size() != dataLength || trailerLength <= 0 || trailerLength > dataLength) return false;
+        byte[] stored = read(dataLength - trailerLength, trailerLength);
+        if (gzip) stored = gunzip(stored);
+        return Arrays.equals(trailer(expectedSha256()), stored);
+    }
+
+    private long recordsLength() {
+        return index.getLong(16) - index.getInt(24);
+    }
+
+    private byte[] expectedSha256() {
+        byte[] sha256 = new byte[SHA256_SIZE];
+        index.get(28, sha256);
+        return sha256;
+    }
+
+    @Override
+    public void close() throws IOException {
+        data.close();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /** Document ids, in index (byte) order */
+    public List<String> ids() {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) ids.add(new String(idBytes(i), StandardCharsets.UTF_8));
+        return ids;
+    }
+
+    /**
+     * Returns the document as a compact JSON string, or null when there is no such id.
+     */
+    public String read(String id) throws IOException {
+        int entry = find(id);
+        return entry < 0 ? null : readRecord(entry);
+    }
+
+    /** Whether records are gzip members */
+    boolean isGzip() {
+        return gzip;
+    }
+
+    /**
+     * Returns the record as stored in the data file (a gzip member with gzip, newline included),
+     * or null when there is no such id; used to carry unchanged records over to the next export.
+     */
+    byte[] readStored(String id) throws IOException {
+        int entry = find(id);
+        return entry < 0 ? null : storedRecord(entry);
+    }
+
+    private int find(String id) {
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Arrays.compareUnsigned(idBytes(mid), key);
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private byte[] idBytes(int entry) {
+        int pos = HEADER_SIZE + entry * ENTRY_SIZE;
+        byte[] id = new byte[index.getInt(pos + 16)];
+        index.get(idsStart + index.getInt(pos + 12), id);
+        return id;
+    }
+
+    private byte[] storedRecord(int entry) throws IOException {
+        int pos = HEADER_SIZE + entry * ENTRY_SIZE;
+        return read(index.getLong(pos), index.getInt(pos + 8));
+    }
+
+    /** Positional read: safe from several threads at once */
+    private byte[] read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (data.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("RAG 数据文件被截断");
+            }
+        }
+        return buffer.array();
+    }
+
+    private String readRecord(int entry) throws IOException {
+        byte[] record = storedRecord(entry);
+        if (gzip) record = gunzip(record);
+        int length = record.length;
+        if (length > 0 && record[length - 1] == '\n') length--;
+        return new String(record, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] gunzip(byte[] member) throws IOException {
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(member))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Writes the index for records laid out in {@code ids} order in a data file of {@code dataLength}
+     * bytes, ending with a trailer of {@code trailerLength} bytes; {@code recordsSha256} covers the
+     * bytes before the trailer.
+     */
+    static void writeIndex(Path file, List<String> ids, long[] offsets, int[] lengths, boolean gzip,
+                           long dataLength, int trailerLength, byte[] recordsSha256) throws IOException {
+        int n = ids.size();
+        byte[][] idBytes = new byte[n][];
+        int idsLength = 0;
+        for (int i = 0; i < n; i++) {
+            idBytes[i] = ids.get(i).getBytes(StandardCharsets.UTF_8);
+            idsLength += idBytes[i].length;
+        }
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparing((Integer i) -> idBytes[i], Arrays::compareUnsigned));
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + n * ENTRY_SIZE + idsLength);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(gzip ? FLAG_GZIP : 0).putInt(n).putLong(dataLength)
+                .putInt(trailerLength).put(recordsSha256);
+        int idOffset = 0;
+        for (int i : order) {
+            buf.putLong(offsets[i]).putInt(lengths[i]).putInt(idOffset).putInt(idBytes[i].length);
+            idOffset += idBytes[i].length;
+        }
+        for (int i : order) buf.put(idBytes[i]);
+        AtomicFiles.write(file, buf.array());
+    }
+}
@@ -0,0 +1,73 @@
+package io.github.code2spec.export;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads single RAG documents back from an export, in either per-file or packed format. Open it
+ * once for a series of reads: the packed index is loaded on open.
+ */
+public final class RagDocuments implements Closeable {
+    private final Path ragDir;
+    private final PackedRagReader packed;
+
+    private RagDocuments(Path ragDir, PackedRagReader packed) {
+        this.ragDir = ragDir;
+        this.packed = packed;
+    }
+
+    public static RagDocuments open(Path ragDir) throws IOException {
+        boolean isPacked = Files.isRegularFile(ragDir.resolve(PackedRagReader.INDEX_FILE));
+        return new RagDocuments(ragDir, isPacked ? PackedRagReader.open(ragDir) : null);
+    }
+
+    /**
+     * Returns the pretty-printed document for a search index id, or null when it is not there.
+     * Error code ids ({@code error:<code>}) resolve to the entry in {@code _error_codes}.
+     */
+    public String read(String id) throws IOException {
+        boolean errorCode = id.startsWith(RagKnowledgeExporter.SEARCH_ERROR_CODE_PREFIX);
+        String json = readRaw(errorCode ? "_error_codes" : id);
+        if (json == null) return null;
+        JsonElement doc = JsonParser.parseString(json);
+        if (errorCode) {
+            String code = id.substring(RagKnowledgeExporter.SEARCH_ERROR_CODE_PREFIX.length());
+            doc = null;
+            for (JsonElement ec : JsonParser.parseString(json).getAsJsonObject().getAsJsonArray("error_codes")) {
+                JsonObject o = ec.getAsJsonObject();
+                if (o.has("code") && code.equals(o.get("code").getAsString())) {
+                    doc = o;
+                    break;
+                }
+            }
+            if (doc == null) return null;
+        }
+        return new GsonBuilder().setPrettyPrinting().create().toJson(doc);
+    }
+
+    private String readRaw(String id) throws IOException {
+        if (packed != null) return packed.read(id);
+        Path file = ragDir.resolve(id + RagKnowledgeExporter.DOCUMENT_SUFFIX);
+        if (Files.isRegularFile(file)) return Files.readString(file);
+        Path gzipFile = ragDir.resolve(id + RagKnowledgeExporter.GZIP_DOCUMENT_SUFFIX);
+        if (!Files.isRegularFile(gzipFile)) return null;
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gzipFile))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (packed != null) packed.close();
+    }
+}
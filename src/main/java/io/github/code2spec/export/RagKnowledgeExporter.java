@@ -2,39 +2,183 @@ package io.github.code2spec.export;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import io.github.code2spec.core.model.*;
+import io.github.code2spec.search.SearchIndex;
+import io.github.code2spec.search.SearchIndexWriter;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Exports spec to RAG-optimized knowledge objects (JSON).
+ *
+ * <p>By default every document is its own pretty-printed file ({@code .json.gz} with compression);
+ * files are replaced atomically and only when their content changed. In packed mode all documents go to one compact NDJSON file
+ * (optionally gzip) with an offset index for {@link PackedRagReader}. Either way
+ * {@code _manifest.json} lists added, changed and removed documents for incremental ingestion,
+ * and {@code search.idx} is a BM25 index over endpoints and error codes for {@code code2spec query}.
+ *
+ * <p>The manifest also records the input fingerprint of each document (and of the search index);
+ * a document whose input is unchanged since the previous export is not built again but kept as is,
+ * in packed mode by copying its record from the previous data file.
  */
-public class RagKnowledgeExporter {
+public class RagKnowledgeExporter implements SpecExporter {
+    private static final String FORMAT_FILES = "files";
+    private static final String FORMAT_PACKED = "packed";
+    /** Id prefix of error code documents in the search index */
+    public static final String SEARCH_ERROR_CODE_PREFIX = "error:";
+    static final String DOCUMENT_SUFFIX = ".json";
+    static final String GZIP_DOCUMENT_SUFFIX = ".json.gz";
+    /** Mixed into every input fingerprint; bump when the document layout changes */
+    private static final String DOCUMENT_VERSION = "rag/1";
+
     private final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+    private final Gson compactGson = new Gson();
+    private final boolean packed;
+    private final boolean gzip;
+    /** Gzip each document file ({@code <id>.json.gz}) in files mode */
+    private final boolean gzipFiles;
+    private final boolean incremental;
+
+    public RagKnowledgeExporter() {
+        this(new ExportConfig());
+    }
+
+    public RagKnowledgeExporter(ExportConfig config) {
+        this.packed = config.isRagPacked();
+        this.gzip = config.isRagGzip() || config.isGzip();
+        this.gzipFiles = config.isGzip();
+        this.incremental = config.isIncremental();
+    }
+
+    @Override
+    public String name() {
+        return "rag";
+    }
+
+    @Override
+    public String write(ExportContext ctx, ExportConfig config, Path outputDir) throws IOException {
+        Path dir = outputDir.resolve("rag");
+        RagManifest manifest = new RagKnowledgeExporter(config).export(ctx, dir);
+        return dir + "/ (新增 " + manifest.count(RagManifest.Status.ADDED)
+                + "，更新 " + manifest.count(RagManifest.Status.CHANGED)
+                + "，未变 " + manifest.count(RagManifest.Status.UNCHANGED)
+                + "，删除 " + manifest.removed().size() + ")";
+    }
+
+    public RagManifest export(SpecResult result, Path outputDir) throws IOException {
+        return export(new ExportContext(result), outputDir);
+    }
 
-    public void export(SpecResult result, Path outputDir) throws IOException {
+    /**
+     * Writes one document per endpoint plus the error code and endpoint indexes, serialized in
+     * parallel. Documents left over from the previous export of the same format are dropped.
+     */
+    public RagManifest export(ExportContext ctx, Path outputDir) throws IOException {
         Files.createDirectories(outputDir);
+        PreviousManifest previous = readPreviousManifest(outputDir);
+        Map<String, Source> docs = buildDocuments(ctx);
+
+        String searchInput = input(ctx.endpointsFingerprint() + "|" + ctx.errorCodesFingerprint());
+        Path searchFile = outputDir.resolve(SearchIndex.FILE_NAME);
+        if (!incremental || !searchInput.equals(previous.searchInput()) || !Files.isRegularFile(searchFile)) {
+            byte[] searchIndex = buildSearchIndex(ctx).toBytes();
+            AtomicFiles.writeIfChanged(searchFile, searchIndex, AtomicFiles.sha256(searchIndex));
+        }
+        // The manifest goes last, so that it never records input for output that was not written
+        try {
+            return packed ? exportPacked(docs, previous, outputDir, searchInput)
+                    : exportFiles(docs, previous, outputDir, searchInput);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /** A document's input fingerprint and its content, built only when the document is written */
+    private record Source(String input, Supplier<Object> content) {
+    }
+
+    private static String input(String fingerprint) {
+        return AtomicFiles.sha256((DOCUMENT_VERSION + "|" + fingerprint).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * BM25 index over the endpoint documents (by document id) and the error codes ({@code error:<code>}).
+     */
+    private SearchIndexWriter buildSearchIndex(ExportContext ctx) {
+        SearchIndexWriter index = new SearchIndexWriter();
+        for (Endpoint ep : ctx.getResult().getEndpoints()) {
+            StringBuilder text = new StringBuilder();
+            appendText(text, ep.getHttpMethod(), ep.getUri(), ep.getOperationId(), ep.getSummary(), ep.getDescription(),
+                    ep.getRequestBodyType(), ep.getResponseType());
+            BusinessSemantic bs = ep.getBusinessSemantic();
+            if (bs != null) {
+                appendText(text, bs.getFunction(), bs.getScenario(), bs.getImplementationNotes(), bs.getCautions());
+            }
+            for (Parameter p : ep.getParameters()) appendText(text, p.getName(), p.getDescription());
+            for (ErrorCodeRef ref : ep.getErrorCodes()) {
+                ErrorCode ec = ctx.findErrorCode(ref.getCode());
+                appendText(text, ref.getCode(), ec != null ? ec.getMessage() : null);
+            }
+            String title = ep.getHttpMethod() + " " + ep.getUri() + (ep.getSummary() != null ? " " + ep.getSummary() : "");
+            index.add(sanitizeFilename(ep.getOperationId() + "_" + ep.getHttpMethod()), "endpoint", title, text.toString());
+        }
+        for (ErrorCode ec : ctx.getResult().getErrorCodes()) {
+            if (ctx.findErrorCode(ec.getCode()) != ec) continue;
+            StringBuilder text = new StringBuilder();
+            appendText(text, ec.getCode(), ec.getMessage(), ec.getExceptionType(), ec.getRootCause(),
+                    ec.getHandlingSuggestion(), ec.getPrevention());
+            String title = ec.getCode() + " (HTTP " + ec.getHttpStatus() + ")"
+                    + (ec.getMessage() != null && !ec.getMessage().equals(ec.getCode()) ? " " + ec.getMessage() : "");
+            index.add(SEARCH_ERROR_CODE_PREFIX + ec.getCode(), "error_code", title, text.toString());
+        }
+        return index;
+    }
 
+    private static void appendText(StringBuilder text, String... values) {
+        for (String v : values) {
+            if (v != null) text.append(v).append('\n');
+        }
+    }
+
+    /**
+     * Documents by id (file name without {@code .json}), endpoints first; on an id clash the last endpoint wins.
+     */
+    private Map<String, Source> buildDocuments(ExportContext ctx) {
+        SpecResult result = ctx.getResult();
+        Map<String, Source> docs = new LinkedHashMap<>();
         // Export endpoints as individual knowledge objects
         for (Endpoint ep : result.getEndpoints()) {
-            Map<String, Object> doc = toRagDocument(ep, result.getErrorCodes());
-            String filename = sanitizeFilename(ep.getOperationId() + "_" + ep.getHttpMethod()) + ".json";
-            Files.writeString(outputDir.resolve(filename), gson.toJson(doc));
+            docs.put(sanitizeFilename(ep.getOperationId() + "_" + ep.getHttpMethod()),
+                    new Source(input(ctx.inputFingerprint(ep)), () -> toRagDocument(ep, ctx)));
         }
 
         // Export error codes index
-        Map<String, Object> errorIndex = new LinkedHashMap<>();
-        errorIndex.put("type", "error_code_index");
-        errorIndex.put("error_codes", result.getErrorCodes().stream()
-                .map(this::toErrorCodeDoc)
-                .collect(Collectors.toList()));
-        Files.writeString(outputDir.resolve("_error_codes.json"), gson.toJson(errorIndex));
+        docs.put("_error_codes", new Source(input(ctx.errorCodesFingerprint()), () -> {
+            Map<String, Object> errorIndex = new LinkedHashMap<>();
+            errorIndex.put("type", "error_code_index");
+            errorIndex.put("error_codes", ctx.ragAllErrorCodeDocs());
+            return errorIndex;
+        }));
 
         // Export full index for retrieval
+        docs.put("_index", new Source(input(ctx.endpointsFingerprint()), () -> endpointIndex(result)));
+        return docs;
+    }
+
+    private static Map<String, Object> endpointIndex(SpecResult result) {
         List<Map<String, Object>> index = new ArrayList<>();
         for (Endpoint ep : result.getEndpoints()) {
             Map<String, Object> entry = new LinkedHashMap<>();
@@ -50,10 +194,230 @@ public class RagKnowledgeExporter {
         Map<String, Object> indexDoc = new LinkedHashMap<>();
         indexDoc.put("type", "endpoint_index");
         indexDoc.put("endpoints", index);
-        Files.writeString(outputDir.resolve("_index.json"), gson.toJson(indexDoc));
+        return indexDoc;
+    }
+
+    private RagManifest exportFiles(Map<String, Source> docs, PreviousManifest previousManifest, Path outputDir,
+                                    String searchInput) throws IOException {
+        Map<String, PreviousDocument> previous = previousManifest.documents(FORMAT_FILES);
+        // Switching from packed output
+        Files.deleteIfExists(outputDir.resolve(PackedRagReader.DATA_FILE));
+        Files.deleteIfExists(outputDir.resolve(PackedRagReader.GZIP_DATA_FILE));
+        Files.deleteIfExists(outputDir.resolve(PackedRagReader.INDEX_FILE));
+        List<RagManifest.Document> documents = docs.entrySet().parallelStream()
+                .map(e -> {
+                    String filename = e.getKey() + (gzipFiles ? GZIP_DOCUMENT_SUFFIX : DOCUMENT_SUFFIX);
+                    return writeDocument(outputDir, filename, e.getValue(), previous.get(filename));
+                })
+                .collect(Collectors.toList());
+        Set<String> current = documents.stream().map(RagManifest.Document::file).collect(Collectors.toSet());
+        List<String> removed = deleteFiles(outputDir, previous.keySet(), current);
+        return writeManifest(outputDir, FORMAT_FILES, new RagManifest(documents, removed), searchInput);
+    }
+
+    private RagManifest.Document writeDocument(Path outputDir, String filename, Source doc, PreviousDocument before) {
+        try {
+            Path file = outputDir.resolve(filename);
+            if (incremental && before != null && doc.input().equals(before.input()) && Files.isRegularFile(file)) {
+                return new RagManifest.Document(filename, before.sha256(), RagManifest.Status.UNCHANGED, doc.input());
+            }
+            byte[] content = gson.toJson(doc.content().get()).getBytes(StandardCharsets.UTF_8);
+            if (gzipFiles) content = gzip(content);
+            String sha256 = AtomicFiles.sha256(content);
+            boolean existed = Files.exists(file);
+            RagManifest.Status status = !AtomicFiles.writeIfChanged(file, content, sha256)
+                    ? RagManifest.Status.UNCHANGED
+                    : existed ? RagManifest.Status.CHANGED : RagManifest.Status.ADDED;
+            return new RagManifest.Document(filename, sha256, status, doc.input());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
-    private Map<String, Object> toRagDocument(Endpoint ep, List<ErrorCode> allErrorCodes) {
+    private record PackedRecord(String id, String sha256, byte[] bytes, String input) {
+    }
+
+    /**
+     * Writes every document as one compact NDJSON line (each line its own gzip member with gzip)
+     * and the trailer line, then the offset index. Change status comes from the document hashes in
+     * the previous manifest. All records are held in memory until the data file is written, about
+     * the size of the NDJSON (compressed with gzip).
+     */
+    private RagManifest exportPacked(Map<String, Source> docs, PreviousManifest previousManifest, Path outputDir,
+                                     String searchInput) throws IOException {
+        Map<String, PreviousDocument> previous = previousManifest.documents(FORMAT_PACKED);
+        // Switching from one file per document
+        deleteFiles(outputDir, previousManifest.documents(FORMAT_FILES).keySet(), Set.of());
+        List<PackedRecord> records;
+        // Closed before the data file and index are replaced
+        try (PackedRagReader reader = incremental && !previous.isEmpty() ? previousPacked(outputDir) : null) {
+            records = docs.entrySet().parallelStream()
+                    .map(e -> toPackedRecord(e.getKey(), e.getValue(), previous.get(e.getKey()), reader))
+                    .collect(Collectors.toList());
+        }
+
+        int n = records.size();
+        List<String> ids = new ArrayList<>(n);
+        long[] offsets = new long[n];
+        int[] lengths = new int[n];
+        List<RagManifest.Document> documents = new ArrayList<>(n);
+        long offset = 0;
+        for (int i = 0; i < n; i++) {
+            PackedRecord r = records.get(i);
+            ids.add(r.id());
+            offsets[i] = offset;
+            lengths[i] = r.bytes().length;
+            offset += lengths[i];
+            PreviousDocument before = previous.get(r.id());
+            RagManifest.Status status = before == null ? RagManifest.Status.ADDED
+                    : before.sha256().equals(r.sha256()) ? RagManifest.Status.UNCHANGED : RagManifest.Status.CHANGED;
+            documents.add(new RagManifest.Document(r.id(), r.sha256(), status, r.input()));
+        }
+
+        MessageDigest recordsDigest = AtomicFiles.sha256Digest();
+        for (PackedRecord r : records) recordsDigest.update(r.bytes());
+        byte[] recordsSha256 = recordsDigest.digest();
+        byte[] trailer = PackedRagReader.trailer(recordsSha256);
+        if (gzip) trailer = gzip(trailer);
+        byte[] dataTrailer = trailer;
+        Path dataFile = outputDir.resolve(gzip ? PackedRagReader.GZIP_DATA_FILE : PackedRagReader.DATA_FILE);
+        AtomicFiles.write(dataFile, out -> {
+            for (PackedRecord r : records) out.write(r.bytes());
+            out.write(dataTrailer);
+        });
+        Files.deleteIfExists(outputDir.resolve(gzip ? PackedRagReader.DATA_FILE : PackedRagReader.GZIP_DATA_FILE));
+        // The trailer repeats the hash in the index: after a crash before this rename the old index
+        // no longer opens against the new data file
+        PackedRagReader.writeIndex(outputDir.resolve(PackedRagReader.INDEX_FILE), ids, offsets, lengths, gzip,
+                offset + trailer.length, trailer.length, recordsSha256);
+
+        List<String> removed = previous.keySet().stream().filter(id -> !docs.containsKey(id)).collect(Collectors.toList());
+        return writeManifest(outputDir, FORMAT_PACKED, new RagManifest(documents, removed), searchInput);
+    }
+
+    /** The previous packed output if it can be reused: intact and compressed the same way */
+    private PackedRagReader previousPacked(Path outputDir) {
+        try {
+            PackedRagReader reader = PackedRagReader.openVerified(outputDir);
+            if (reader.isGzip() == gzip) return reader;
+            reader.close();
+        } catch (IOException | RuntimeException e) {
+            // Missing, unfinished or edited: render every record
+        }
+        return null;
+    }
+
+    private PackedRecord toPackedRecord(String id, Source doc, PreviousDocument before, PackedRagReader reader) {
+        if (reader != null && before != null && doc.input().equals(before.input())) {
+            byte[] stored;
+            try {
+                stored = reader.readStored(id);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (stored != null) return new PackedRecord(id, before.sha256(), stored, doc.input());
+        }
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("id", id);
+        if (doc.content().get() instanceof Map<?, ?> fields) {
+            fields.forEach((k, v) -> line.put(String.valueOf(k), v));
+        }
+        byte[] bytes = (compactGson.toJson(line) + "\n").getBytes(StandardCharsets.UTF_8);
+        String sha256 = AtomicFiles.sha256(bytes);
+        if (gzip) {
+            try {
+                bytes = gzip(bytes);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return new PackedRecord(id, sha256, bytes, doc.input());
+    }
+
+    /** One gzip member; the header carries no timestamp, so equal input gives equal bytes */
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 3 + 32);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(bytes);
+        }
+        return compressed.toByteArray();
+    }
+
+    /** A document of the previous manifest; {@code input} is null for manifests that predate it */
+    private record PreviousDocument(String sha256, String input) {
+    }
+
+    private record PreviousManifest(String format, Map<String, PreviousDocument> documents, String searchInput) {
+        static final PreviousManifest NONE = new PreviousManifest(FORMAT_FILES, Map.of(), null);
+
+        /** The previous documents by file (or id), if they were written in {@code format} */
+        Map<String, PreviousDocument> documents(String format) {
+            return format.equals(this.format) ? documents : Map.of();
+        }
+    }
+
+    private static PreviousManifest readPreviousManifest(Path outputDir) {
+        Path previous = outputDir.resolve(RagManifest.FILE_NAME);
+        if (!Files.isRegularFile(previous)) return PreviousManifest.NONE;
+        try {
+            JsonObject manifest = JsonParser.parseString(Files.readString(previous)).getAsJsonObject();
+            // Manifests without a format predate packed output
+            String format = manifest.has("format") ? manifest.get("format").getAsString() : FORMAT_FILES;
+            Map<String, PreviousDocument> documents = new LinkedHashMap<>();
+            for (JsonElement d : manifest.getAsJsonArray("documents")) {
+                JsonObject doc = d.getAsJsonObject();
+                documents.put(doc.get("file").getAsString(), new PreviousDocument(doc.get("sha256").getAsString(),
+                        doc.has("input") ? doc.get("input").getAsString() : null));
+            }
+            String searchInput = manifest.has("search_input") ? manifest.get("search_input").getAsString() : null;
+            return new PreviousManifest(format, documents, searchInput);
+        } catch (IOException | RuntimeException e) {
+            // Unreadable previous manifest: every document counts as added, nothing as stale
+            return PreviousManifest.NONE;
+        }
+    }
+
+    /**
+     * Deletes the previously written {@code files} that are not in {@code keep}; returns those deleted.
+     */
+    private static List<String> deleteFiles(Path outputDir, Set<String> files, Set<String> keep) throws IOException {
+        List<String> deleted = new ArrayList<>();
+        for (String file : files) {
+            // Only plain file names in this directory, never paths taken from the manifest
+            if (keep.contains(file) || !file.equals(sanitizeManifestName(file))) continue;
+            if (Files.deleteIfExists(outputDir.resolve(file))) deleted.add(file);
+        }
+        return deleted;
+    }
+
+    private static String sanitizeManifestName(String file) {
+        return file.replaceAll("[^a-zA-Z0-9_.-]", "_").replace("..", "_");
+    }
+
+    private RagManifest writeManifest(Path outputDir, String format, RagManifest manifest, String searchInput)
+            throws IOException {
+        Map<String, Object> doc = new LinkedHashMap<>();
+        doc.put("type", "rag_manifest");
+        doc.put("format", format);
+        doc.put("documents", manifest.documents().stream().map(d -> {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("file", d.file());
+            m.put("sha256", d.sha256());
+            m.put("status", d.status().name().toLowerCase(Locale.ROOT));
+            m.put("input", d.input());
+            return m;
+        }).collect(Collectors.toList()));
+        doc.put("changed", manifest.documents().stream()
+                .filter(d -> d.status() != RagManifest.Status.UNCHANGED)
+                .map(RagManifest.Document::file)
+                .collect(Collectors.toList()));
+        doc.put("removed", manifest.removed());
+        doc.put("search_input", searchInput);
+        AtomicFiles.write(outputDir.resolve(RagManifest.FILE_NAME), gson.toJson(doc).getBytes(StandardCharsets.UTF_8));
+        return manifest;
+    }
+
+    private Map<String, Object> toRagDocument(Endpoint ep, ExportContext ctx) {
         Map<String, Object> doc = new LinkedHashMap<>();
         doc.put("type", "rest_endpoint");
         doc.put("uri", ep.getHttpMethod() + " " + ep.getUri());
@@ -88,21 +452,17 @@ public class RagKnowledgeExporter {
 
         List<Map<String, Object>> errorDocs = new ArrayList<>();
         for (ErrorCodeRef ref : ep.getErrorCodes()) {
-            allErrorCodes.stream()
-                    .filter(ec -> ref.getCode().equals(ec.getCode()))
-                    .findFirst()
-                    .ifPresent(ec -> errorDocs.add(toErrorCodeDoc(ec)));
-        }
-        if (errorDocs.isEmpty() && !allErrorCodes.isEmpty()) {
-            // Include all error codes as reference
-            errorDocs.addAll(allErrorCodes.stream().map(this::toErrorCodeDoc).collect(Collectors.toList()));
+            Map<String, Object> errorDoc = ctx.ragErrorCodeDoc(ref.getCode());
+            if (errorDoc != null) errorDocs.add(errorDoc);
         }
-        doc.put("error_codes", errorDocs);
+        // Include all error codes as reference
+        doc.put("error_codes", errorDocs.isEmpty() ? ctx.ragAllErrorCodeDocs() : errorDocs);
 
         return doc;
     }
 
-    private Map<String, Object> toErrorCodeDoc(ErrorCode ec) {
+    /** Error code as a JSON map; built once per code by {@link ExportContext} */
+    static Map<String, Object> toErrorCodeDoc(ErrorCode ec) {
         Map<String, Object> m = new LinkedHashMap<>();
         m.put("code", ec.getCode());
         m.put("message", ec.getMessage());
@@ -0,0 +1,27 @@
+package io.github.code2spec.export;
+
+import java.util.List;
+
+/**
+ * Outcome of a RAG export, also written to {@code _manifest.json} so that ingestion can
+ * re-index only the documents that changed.
+ *
+ * @param documents every document of this export, in output order; {@code file} is the document id in packed mode
+ * @param removed   documents of the previous export that are no longer produced (and were deleted)
+ */
+public record RagManifest(List<Document> documents, List<String> removed) {
+    public static final String FILE_NAME = "_manifest.json";
+
+    public enum Status { ADDED, CHANGED, UNCHANGED }
+
+    /**
+     * @param input fingerprint of what the document was built from; equal input means the
+     *              document need not be built again
+     */
+    public record Document(String file, String sha256, Status status, String input) {
+    }
+
+    public long count(Status status) {
+        return documents.stream().filter(d -> d.status() == status).count();
+    }
+}
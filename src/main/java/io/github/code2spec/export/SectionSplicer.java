@@ -0,0 +1,299 @@
+package io.github.code2spec.export;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.Flushable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes a generated document section by section, copying the bytes of sections whose input
+ * fingerprint is unchanged from the previous output instead of rendering them again.
+ *
+ * <p>Section offsets and fingerprints are kept in a sidecar manifest, {@code .<file>.sections.json}.
+ * When it is missing or from another renderer version, or the document no longer matches the
+ * SHA-256 recorded in it (edited by hand, run interrupted), every section is rendered. The
+ * document is only replaced when its content changed.
+ *
+ * <p>The previous document is never held in memory: its hash is checked while streaming it, and
+ * reused sections are transferred from a file channel. A gzip document is inflated to a
+ * temporary file for that, which is deleted once the new document is written.
+ */
+final class SectionSplicer {
+    private static final int VERSION = 1;
+    private static final int GZIP_BUFFER_SIZE = 64 * 1024;
+    private static final Gson GSON = new Gson();
+
+    /** Byte range of a section in the (uncompressed) document */
+    record Section(String key, String fingerprint, long start, long end) {
+    }
+
+    /** Renders a section that could not be reused */
+    interface Renderer {
+        void render() throws IOException;
+    }
+
+    private final Path file;
+    private final boolean gzip;
+    private final String renderer;
+    /** Uncompressed previous document (a temporary file with gzip), or null when nothing is reused */
+    private final Path previous;
+    private final boolean previousIsTemp;
+    private final String previousSha256;
+    private final Map<String, Section> previousSections;
+    private final List<Section> sections = new ArrayList<>();
+    private final Map<String, Integer> keyCounts = new HashMap<>();
+    private DigestingOutputStream out;
+    private WritableByteChannel outChannel;
+    private FileChannel previousChannel;
+    private int reused;
+    private int rendered;
+    private boolean replaced;
+
+    private SectionSplicer(Path file, boolean gzip, String renderer, Path previous, String previousSha256,
+                           Map<String, Section> previousSections) {
+        this.file = file;
+        this.gzip = gzip;
+        this.renderer = renderer;
+        this.previous = previous;
+        this.previousIsTemp = previous != null && gzip;
+        this.previousSha256 = previousSha256;
+        this.previousSections = previousSections;
+    }
+
+    /**
+     * Loads the previous document and its sidecar, if they match.
+     *
+     * @param renderer name and version of the renderer; bump it when the section output changes
+     * @param reuse    false to render every section (the sidecar is still written)
+     */
+    static SectionSplicer open(Path file, boolean gzip, String renderer, boolean reuse) {
+        Path sidecar = sidecar(file);
+        if (reuse && Files.isRegularFile(sidecar) && Files.isRegularFile(file)) {
+            try {
+                JsonObject manifest = JsonParser.parseString(Files.readString(sidecar)).getAsJsonObject();
+                if (manifest.get("version").getAsInt() == VERSION && renderer.equals(manifest.get("renderer").getAsString())) {
+                    return open(file, gzip, renderer, manifest);
+                }
+            } catch (IOException | RuntimeException e) {
+                // Unreadable sidecar or document: render everything
+            }
+        }
+        return new SectionSplicer(file, gzip, renderer, null, null, Map.of());
+    }
+
+    private static SectionSplicer open(Path file, boolean gzip, String renderer, JsonObject manifest) throws IOException {
+        Path previous = file;
+        MessageDigest digest = AtomicFiles.sha256Digest();
+        long length;
+        if (gzip) {
+            previous = Files.createTempFile("code2spec-", ".splice");
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file), GZIP_BUFFER_SIZE);
+                 OutputStream copy = Files.newOutputStream(previous)) {
+                length = digest(in, digest, copy);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(previous);
+                throw e;
+            }
+        } else {
+            try (InputStream in = Files.newInputStream(file)) {
+                length = digest(in, digest, null);
+            }
+        }
+        String sha256 = HexFormat.of().formatHex(digest.digest());
+        if (!sha256.equals(manifest.get("sha256").getAsString())) {
+            if (gzip) Files.deleteIfExists(previous);
+            return new SectionSplicer(file, gzip, renderer, null, null, Map.of());
+        }
+        Map<String, Section> sections = new HashMap<>();
+        for (JsonElement e : manifest.getAsJsonArray("sections")) {
+            JsonObject s = e.getAsJsonObject();
+            Section section = new Section(s.get("key").getAsString(), s.get("fingerprint").getAsString(),
+                    s.get("start").getAsLong(), s.get("end").getAsLong());
+            if (section.start() >= 0 && section.start() <= section.end() && section.end() <= length) {
+                sections.put(section.key(), section);
+            }
+        }
+        return new SectionSplicer(file, gzip, renderer, previous, sha256, sections);
+    }
+
+    /** Digests {@code in} to the end, copying it to {@code copy} if not null; returns the length */
+    private static long digest(InputStream in, MessageDigest digest, OutputStream copy) throws IOException {
+        byte[] buffer = new byte[GZIP_BUFFER_SIZE];
+        long length = 0;
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            digest.update(buffer, 0, n);
+            if (copy != null) copy.write(buffer, 0, n);
+            length += n;
+        }
+        return length;
+    }
+
+    /** Deletes a document written through a splicer together with its sidecar */
+    static void delete(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(sidecar(file));
+    }
+
+    /** Drops the sidecar of a document that is replaced by output not written through a splicer */
+    static void deleteSidecar(Path file) throws IOException {
+        Files.deleteIfExists(sidecar(file));
+    }
+
+    private static Path sidecar(Path file) {
+        return file.resolveSibling("." + file.getFileName() + ".sections.json");
+    }
+
+    /**
+     * Writes the document through {@code content}, which gets the raw (uncompressed) output
+     * stream, and the sidecar.
+     *
+     * @return whether the document was replaced
+     */
+    boolean write(AtomicFiles.Content content) throws IOException {
+        MessageDigest digest = AtomicFiles.sha256Digest();
+        String[] sha256 = new String[1];
+        try {
+            replaced = AtomicFiles.write(file, target -> {
+                GZIPOutputStream gzipOut = gzip ? new GZIPOutputStream(target, GZIP_BUFFER_SIZE) : null;
+                out = new DigestingOutputStream(gzipOut != null ? gzipOut : target, digest);
+                outChannel = Channels.newChannel(out);
+                content.writeTo(out);
+                if (gzipOut != null) gzipOut.finish();
+                // Not held open while the new document replaces the previous one
+                if (previousChannel != null) previousChannel.close();
+                sha256[0] = HexFormat.of().formatHex(digest.digest());
+            }, () -> !sha256[0].equals(previousSha256));
+        } finally {
+            if (previousChannel != null) previousChannel.close();
+            if (previousIsTemp) Files.deleteIfExists(previous);
+        }
+        writeSidecar(sha256[0]);
+        return replaced;
+    }
+
+    private void writeSidecar(String sha256) throws IOException {
+        Map<String, Object> manifest = new LinkedHashMap<>();
+        manifest.put("version", VERSION);
+        manifest.put("renderer", renderer);
+        manifest.put("sha256", sha256);
+        manifest.put("sections", sections);
+        byte[] bytes = GSON.toJson(manifest).getBytes(StandardCharsets.UTF_8);
+        AtomicFiles.writeIfChanged(sidecar(file), bytes, AtomicFiles.sha256(bytes));
+    }
+
+    /** Makes repeated keys (e.g. the same route declared twice) unique by occurrence */
+    String uniqueKey(String key) {
+        int n = keyCounts.merge(key, 1, Integer::sum);
+        return n == 1 ? key : key + "#" + n;
+    }
+
+    /** Bytes written so far, after flushing {@code pending} (the writer or generator on top of the output) */
+    long position(Flushable pending) throws IOException {
+        pending.flush();
+        return out.count;
+    }
+
+    /** The section in the previous document, or null when it has to be rendered */
+    Section reusable(String key, String fingerprint) {
+        Section section = previousSections.get(key);
+        return section == null || !section.fingerprint().equals(fingerprint) ? null : section;
+    }
+
+    /** Records a section written (rendered or reused) between {@code start} and {@code end} */
+    void add(String key, String fingerprint, long start, long end, boolean wasReused) {
+        sections.add(new Section(key, fingerprint, start, end));
+        if (wasReused) reused++;
+        else rendered++;
+    }
+
+    /**
+     * Writes a section: copies it from the previous document or calls {@code render}, which
+     * writes to {@code writer}.
+     */
+    void section(Flushable writer, String key, String fingerprint, Renderer render) throws IOException {
+        key = uniqueKey(key);
+        Section previousSection = reusable(key, fingerprint);
+        if (previousSection != null) {
+            copy(writer, previousSection);
+        } else {
+            long start = position(writer);
+            render.render();
+            add(key, fingerprint, start, position(writer), false);
+        }
+    }
+
+    /** Copies a section returned by {@link #reusable} to the output, after what is pending in {@code writer} */
+    void copy(Flushable writer, Section section) throws IOException {
+        long start = position(writer);
+        if (previousChannel == null) previousChannel = FileChannel.open(previous);
+        long length = section.end() - section.start();
+        for (long done = 0; done < length; ) {
+            long n = previousChannel.transferTo(section.start() + done, length - done, outChannel);
+            if (n <= 0) throw new IOException("上次输出在复用时被截断: " + file);
+            done += n;
+        }
+        add(section.key(), section.fingerprint(), start, start + length, true);
+    }
+
+    /** Suffix for the "Generated:" line; empty when there was no previous document to splice */
+    String summary() {
+        if (previous == null) return "";
+        if (!replaced) return " (未变)";
+        return " (章节: 复用 " + reused + "，重新生成 " + rendered + ")";
+    }
+
+    /** Counts and digests the uncompressed bytes; flush stops here so that positions cost no I/O */
+    private static final class DigestingOutputStream extends FilterOutputStream {
+        private final MessageDigest digest;
+        private long count;
+
+        DigestingOutputStream(OutputStream out, MessageDigest digest) {
+            super(out);
+            this.digest = digest;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            digest.update((byte) b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            digest.update(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package io.github.code2spec.export;
+
+import io.github.code2spec.core.model.Endpoint;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Splits the endpoints into shards ({@link ExportConfig#getShardBy()}) and writes one file per
+ * shard into a directory owned by the exporter.
+ *
+ * <p>Shards are rendered in parallel and written only when their content changed, so an
+ * unchanged shard keeps its file (and timestamp) and does not show up in diffs or re-renders.
+ * Files of shards that no longer exist are deleted. Names starting with {@code _} are reserved
+ * for the exporter's own files (index, error codes).
+ */
+final class ShardedOutput {
+    static final String DEFAULT_SHARD = "default";
+    private static final String ROOT_SHARD = "root";
+
+    private ShardedOutput() {
+    }
+
+    /** Renders the endpoints of one shard to {@code out} */
+    interface Renderer {
+        void render(String shard, List<Endpoint> endpoints, Writer out) throws IOException;
+    }
+
+    /** What writing a shard did to its file */
+    enum Status { ADDED, CHANGED, UNCHANGED }
+
+    /**
+     * @param file file name relative to the shard directory
+     */
+    record Shard(String name, String file, int endpoints, String sha256, Status status) {
+    }
+
+    /**
+     * Groups endpoints by shard name, sorted by name; endpoints keep their order within a shard.
+     * Endpoints are grouped by {@link #shardKey}; keys that end up with the same name (equally
+     * named controllers in different packages) get a suffix from their package, e.g.
+     * {@code UserController-v1} and {@code UserController-v2}.
+     */
+    static Map<String, List<Endpoint>> group(List<Endpoint> endpoints, ExportConfig config) {
+        Map<String, List<Endpoint>> byKey = new TreeMap<>();
+        Map<String, Set<String>> keysByName = new HashMap<>();
+        for (Endpoint ep : endpoints) {
+            String key = shardKey(ep, config);
+            byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(ep);
+            keysByName.computeIfAbsent(shardName(ep, config), k -> new TreeSet<>()).add(key);
+        }
+        Map<String, List<Endpoint>> shards = new TreeMap<>();
+        for (Map.Entry<String, Set<String>> e : keysByName.entrySet()) {
+            List<String> keys = new ArrayList<>(e.getValue());
+            if (keys.size() == 1) {
+                shards.put(e.getKey(), byKey.get(keys.get(0)));
+                continue;
+            }
+            List<String> suffixes = suffixes(keys);
+            for (int i = 0; i < keys.size(); i++) {
+                shards.put(e.getKey() + "-" + sanitize(suffixes.get(i)), byKey.get(keys.get(i)));
+            }
+        }
+        return shards;
+    }
+
+    /**
+     * What endpoints are grouped by: the controller's fully qualified name, the first tag or the
+     * URI prefix, with the same fallbacks as {@link #shardName}; empty for none.
+     */
+    static String shardKey(Endpoint ep, ExportConfig config) {
+        String tag = ep.getTags().isEmpty() ? null : ep.getTags().get(0);
+        String key = switch (config.getShardBy()) {
+            case CONTROLLER -> ep.getSourceClass() != null ? ep.getSourceClass() : tag;
+            case TAG -> tag != null ? tag : ep.getSourceClass();
+            case PREFIX -> uriPrefix(ep.getUri(), config.getShardPrefixSegments());
+        };
+        return key == null || key.isBlank() ? "" : key;
+    }
+
+    /**
+     * Shard of an endpoint as a file-name-safe string, before disambiguation. Controller falls
+     * back to the first tag and tag to the controller (Java sources carry no tags); controllers
+     * go by their simple name. Endpoints with neither go to {@value #DEFAULT_SHARD}.
+     */
+    static String shardName(Endpoint ep, ExportConfig config) {
+        String tag = ep.getTags().isEmpty() ? null : ep.getTags().get(0);
+        String sourceClass = simpleName(ep.getSourceClass());
+        String key = switch (config.getShardBy()) {
+            case CONTROLLER -> sourceClass != null ? sourceClass : tag;
+            case TAG -> tag != null ? tag : sourceClass;
+            case PREFIX -> uriPrefix(ep.getUri(), config.getShardPrefixSegments());
+        };
+        return sanitize(key);
+    }
+
+    private static String simpleName(String className) {
+        return className == null ? null : className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    /**
+     * Distinguishing suffixes for keys sharing a name: the fewest trailing package segments that
+     * tell all keys apart, otherwise (no packages, e.g. tags) their position in key order.
+     */
+    private static List<String> suffixes(List<String> keys) {
+        for (int segments = 1; ; segments++) {
+            boolean more = false;
+            List<String> suffixes = new ArrayList<>();
+            for (String key : keys) {
+                String[] packages = key.contains(".") ? key.substring(0, key.lastIndexOf('.')).split("\\.") : new String[0];
+                int from = Math.max(0, packages.length - segments);
+                more |= from > 0;
+                suffixes.add(String.join("-", Arrays.asList(packages).subList(from, packages.length)));
+            }
+            if (new HashSet<>(suffixes).size() == keys.size() && !suffixes.contains("")) return suffixes;
+            if (!more) break;
+        }
+        List<String> suffixes = new ArrayList<>();
+        for (int i = 1; i <= keys.size(); i++) suffixes.add(String.valueOf(i));
+        return suffixes;
+    }
+
+    /**
+     * First {@code segments} literal segments of the URI joined with {@code -}, stopping at a
+     * path variable: {@code /api/v1/orders/{id}} with 2 gives {@code api-v1}.
+     */
+    static String uriPrefix(String uri, int segments) {
+        List<String> parts = new ArrayList<>();
+        for (String part : uri.split("/")) {
+            if (parts.size() >= segments) break;
+            if (part.isEmpty()) continue;
+            if (part.startsWith("{")) break;
+            parts.add(part);
+        }
+        return parts.isEmpty() ? ROOT_SHARD : String.join("-", parts);
+    }
+
+    private static String sanitize(String key) {
+        if (key == null || key.isBlank()) return DEFAULT_SHARD;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            sb.append(Character.isLetterOrDigit(c) || c == '-' || c == '.' ? c : '_');
+        }
+        String name = sb.toString().replaceAll("^[_.]+", "");
+        return name.isEmpty() ? DEFAULT_SHARD : name;
+    }
+
+    /**
+     * Renders the shards in parallel into {@code dir}, one {@code <shard><extension>} file each,
+     * and deletes shard files of earlier runs that are not produced any more.
+     */
+    static List<Shard> write(Path dir, String extension, Map<String, List<Endpoint>> shards, Renderer renderer)
+            throws IOException {
+        Files.createDirectories(dir);
+        List<Shard> written;
+        try {
+            written = shards.entrySet().parallelStream()
+                    .map(e -> writeShard(dir, e.getKey() + extension, out -> renderer.render(e.getKey(), e.getValue(), out),
+                            e.getKey(), e.getValue().size()))
+                    .collect(Collectors.toList());
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Set<String> current = written.stream().map(Shard::file).collect(Collectors.toSet());
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(extension) && !name.startsWith("_") && !current.contains(name)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        return written;
+    }
+
+    /** Writes one of the exporter's own files (index, error codes) if its content changed */
+    static boolean writeFile(Path file, WriterContent content) throws IOException {
+        byte[] bytes = render(content);
+        return AtomicFiles.writeIfChanged(file, bytes, AtomicFiles.sha256(bytes));
+    }
+
+    interface WriterContent {
+        void writeTo(Writer out) throws IOException;
+    }
+
+    private static Shard writeShard(Path dir, String file, WriterContent content, String name, int endpoints) {
+        try {
+            byte[] bytes = render(content);
+            String sha256 = AtomicFiles.sha256(bytes);
+            Path path = dir.resolve(file);
+            boolean existed = Files.exists(path);
+            Status status = !AtomicFiles.writeIfChanged(path, bytes, sha256)
+                    ? Status.UNCHANGED
+                    : existed ? Status.CHANGED : Status.ADDED;
+            return new Shard(name, file, endpoints, sha256, status);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] render(WriterContent content) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer out = new OutputStreamWriter(bytes, StandardCharsets.UTF_8);
+        content.writeTo(out);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Deletes the shard files and, if then empty, the directory; used when sharding is switched off.
+     */
+    static void remove(Path dir, String extension) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.collect(Collectors.toList())) {
+                if (file.getFileName().toString().endsWith(extension)) Files.deleteIfExists(file);
+            }
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            if (files.findAny().isEmpty()) Files.delete(dir);
+        }
+    }
+
+    /** Summary for the "Generated:" line, e.g. {@code docs/api-docs/ (12 个分片，更新 2，未变 10)} */
+    static String summary(Path dir, List<Shard> shards) {
+        long unchanged = shards.stream().filter(s -> s.status() == Status.UNCHANGED).count();
+        return dir + "/ (" + shards.size() + " 个分片，更新 " + (shards.size() - unchanged) + "，未变 " + unchanged + ")";
+    }
+}
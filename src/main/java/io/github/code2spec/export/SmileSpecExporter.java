@@ -0,0 +1,110 @@
+package io.github.code2spec.export;
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.PropertyAccessor;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import io.github.code2spec.core.model.SpecResult;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the merged {@link SpecResult} as a binary Smile snapshot ({@value #FILE_NAME}) that
+ * {@code --from-spec} loads back without parsing sources or calling the LLM.
+ *
+ * <p>Model fields are mapped directly and repeated strings (types, parameter locations, ...)
+ * are written once and back-referenced. Not written unless {@code --formats} lists {@code spec}.
+ */
+public class SmileSpecExporter implements SpecExporter {
+    public static final String FILE_NAME = "spec.smile";
+    public static final String GZIP_FILE_NAME = FILE_NAME + ".gz";
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper(SmileFactory.builder()
+            .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES)
+            .build())
+            .setVisibility(PropertyAccessor.ALL, JsonAutoDetect.Visibility.NONE)
+            .setVisibility(PropertyAccessor.FIELD, JsonAutoDetect.Visibility.ANY)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL)
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    /** Top-level object, so that an incompatible snapshot is rejected instead of misread */
+    private static class Snapshot {
+        int version;
+        SpecResult result;
+    }
+
+    @Override
+    public String name() {
+        return "spec";
+    }
+
+    @Override
+    public boolean enabledByDefault() {
+        return false;
+    }
+
+    @Override
+    public String write(ExportContext ctx, ExportConfig config, Path outputDir) throws IOException {
+        Path file = outputDir.resolve(config.isGzip() ? GZIP_FILE_NAME : FILE_NAME);
+        Snapshot snapshot = new Snapshot();
+        snapshot.version = VERSION;
+        snapshot.result = ctx.getResult();
+        AtomicFiles.write(file, out -> {
+            if (config.isGzip()) {
+                GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+                MAPPER.writeValue(gzip, snapshot);
+                gzip.finish();
+            } else {
+                MAPPER.writeValue(out, snapshot);
+            }
+        });
+        Files.deleteIfExists(outputDir.resolve(config.isGzip() ? FILE_NAME : GZIP_FILE_NAME));
+        return file.toString();
+    }
+
+    /** Smile encoding of a model object, e.g. for fingerprinting; equal content gives equal bytes */
+    static byte[] encode(Object value) {
+        try {
+            return MAPPER.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Deep copy of a spec through its Smile encoding */
+    static SpecResult copy(SpecResult result) {
+        try {
+            return MAPPER.readValue(encode(result), SpecResult.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Loads a snapshot written by this exporter, gzip or not.
+     */
+    public static SpecResult read(Path file) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE)) {
+            in.mark(2);
+            boolean gzip = in.read() == 0x1f && in.read() == 0x8b;
+            in.reset();
+            Snapshot snapshot = MAPPER.readValue(gzip ? new GZIPInputStream(in, BUFFER_SIZE) : in, Snapshot.class);
+            if (snapshot.version != VERSION || snapshot.result == null) {
+                throw new IOException("不支持的 spec 快照版本: " + snapshot.version + "（" + file + "）");
+            }
+            return snapshot.result;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package io.github.code2spec.export;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * An output format of the export stage. Implementations are discovered with
+ * {@link java.util.ServiceLoader} from {@code META-INF/services/io.github.code2spec.export.SpecExporter}
+ * and need a public no-argument constructor.
+ */
+public interface SpecExporter {
+
+    /** Short unique name (e.g. {@code openapi}), used by {@code --formats} and in progress output */
+    String name();
+
+    /** Whether this format is written when {@code --formats} is not given */
+    default boolean enabledByDefault() {
+        return true;
+    }
+
+    /**
+     * Writes this format under {@code outputDir}. Runs concurrently with the other exporters, on
+     * its own copy of the context.
+     *
+     * @return what was written, for the list of generated outputs (usually the path)
+     */
+    String write(ExportContext ctx, ExportConfig config, Path outputDir) throws IOException;
+}
@@ -0,0 +1,207 @@
+package io.github.code2spec.llm;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Pool of LLM backends with weighted least-outstanding-requests selection.
+ *
+ * <p>A backend is picked by the lowest {@code (outstanding + 1) / weight} among those that are
+ * within their concurrency and requests-per-minute limits. After {@value #EJECT_AFTER_FAILURES}
+ * consecutive 429/5xx/transport failures a backend is taken out of rotation for a cooldown that
+ * doubles on every ejection (capped); once it elapses a single probe request is let through, and
+ * a success puts the backend back into rotation.
+ */
+public class BackendPool {
+    static final int EJECT_AFTER_FAILURES = 3;
+    private static final long BASE_COOLDOWN_MS = 30_000;
+    private static final long MAX_COOLDOWN_MS = 5 * 60_000;
+    private static final long RATE_WINDOW_MS = 60_000;
+
+    private final List<Backend> backends = new ArrayList<>();
+
+    public BackendPool(List<LlmBackendConfig> configs) {
+        if (configs.isEmpty()) throw new IllegalArgumentException("LLM backend pool is empty");
+        for (LlmBackendConfig c : configs) {
+            backends.add(new Backend(c));
+        }
+    }
+
+    public int size() {
+        return backends.size();
+    }
+
+    /**
+     * Reserves a backend for one request, preferring ones not in {@code exclude}.
+     * Returns null when every backend is ejected, busy or rate limited right now.
+     */
+    public synchronized Backend acquire(Collection<Backend> exclude) {
+        long now = System.currentTimeMillis();
+        Backend best = pick(now, exclude);
+        if (best == null && exclude != null && !exclude.isEmpty()) {
+            best = pick(now, null);
+        }
+        if (best == null) return null;
+        if (best.ejectedUntilMs > 0) best.probing = true;
+        best.outstanding++;
+        best.requests++;
+        best.recentStarts.addLast(now);
+        return best;
+    }
+
+    private Backend pick(long now, Collection<Backend> exclude) {
+        Backend best = null;
+        double bestScore = Double.MAX_VALUE;
+        for (Backend b : backends) {
+            if (exclude != null && exclude.contains(b)) continue;
+            if (!b.isAvailable(now)) continue;
+            double score = (b.outstanding + 1) / (double) b.config.getWeight();
+            if (score < bestScore || (score == bestScore && b.requests < best.requests)) {
+                best = b;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * How long until {@link #acquire} can succeed again, at least 50 ms.
+     */
+    public synchronized long millisUntilAvailable() {
+        long now = System.currentTimeMillis();
+        long min = Long.MAX_VALUE;
+        for (Backend b : backends) {
+            min = Math.min(min, b.millisUntilAvailable(now));
+        }
+        return Math.max(50, min == Long.MAX_VALUE ? 1000 : min);
+    }
+
+    /**
+     * Whether another backend than {@code current} could take a request now (for failover).
+     */
+    public synchronized boolean hasAlternative(Backend current) {
+        long now = System.currentTimeMillis();
+        for (Backend b : backends) {
+            if (b != current && b.isAvailable(now)) return true;
+        }
+        return false;
+    }
+
+    public synchronized void onSuccess(Backend b, long latencyMs, int promptTokens, int completionTokens) {
+        b.outstanding--;
+        b.consecutiveFailures = 0;
+        b.ejections = 0;
+        b.ejectedUntilMs = 0;
+        b.probing = false;
+        b.successes++;
+        b.totalLatencyMs += latencyMs;
+        b.promptTokens += promptTokens;
+        b.completionTokens += completionTokens;
+    }
+
+    /**
+     * Records a 429/5xx/transport failure; may eject the backend.
+     */
+    public synchronized void onFailure(Backend b) {
+        b.outstanding--;
+        b.failures++;
+        b.consecutiveFailures++;
+        if (b.probing || b.consecutiveFailures >= EJECT_AFTER_FAILURES) {
+            b.ejections++;
+            long cooldown = Math.min(MAX_COOLDOWN_MS, BASE_COOLDOWN_MS << Math.min(10, b.ejections - 1));
+            b.ejectedUntilMs = System.currentTimeMillis() + cooldown;
+            b.probing = false;
+            System.err.println("        [LLM 后端] " + b.label() + " 连续失败 " + b.consecutiveFailures
+                    + " 次，暂停 " + (cooldown / 1000) + " s 后探测");
+        }
+    }
+
+    /**
+     * Releases a request that produced no verdict about backend health (e.g. cancelled, 4xx).
+     */
+    public synchronized void onNeutral(Backend b) {
+        b.outstanding--;
+        b.probing = false;
+    }
+
+    /**
+     * Per-backend table for the run summary.
+     */
+    public synchronized List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        lines.add(String.format("%-40s %6s %6s %10s %10s %10s  %s", "后端", "请求", "失败", "平均耗时", "prompt", "completion", "状态"));
+        long now = System.currentTimeMillis();
+        for (Backend b : backends) {
+            String avg = b.successes > 0 ? (b.totalLatencyMs / b.successes) + " ms" : "-";
+            String state = b.ejectedUntilMs > now ? "暂停中" : (b.ejectedUntilMs > 0 ? "待探测" : "正常");
+            lines.add(String.format("%-40s %6d %6d %10s %10d %10d  %s", b.label(), b.requests, b.failures, avg,
+                    b.promptTokens, b.completionTokens, state));
+        }
+        return lines;
+    }
+
+    /**
+     * A backend with its live counters; fields are guarded by the pool's lock.
+     */
+    public static class Backend {
+        private final LlmBackendConfig config;
+        private final Deque<Long> recentStarts = new ArrayDeque<>();
+        private int outstanding;
+        private int consecutiveFailures;
+        private int ejections;
+        private long ejectedUntilMs;
+        private boolean probing;
+        private long requests;
+        private long successes;
+        private long failures;
+        private long totalLatencyMs;
+        private long promptTokens;
+        private long completionTokens;
+        private volatile boolean responseFormatUnsupported;
+        private volatile boolean gzipUnsupported;
+
+        Backend(LlmBackendConfig config) {
+            this.config = config;
+        }
+
+        /** Whether the backend rejected {@code response_format}; it is then sent plain requests */
+        public boolean isResponseFormatUnsupported() { return responseFormatUnsupported; }
+
+        void setResponseFormatUnsupported() { this.responseFormatUnsupported = true; }
+
+        /** Whether the backend rejected a gzip-encoded request body; it is then sent uncompressed */
+        public boolean isGzipUnsupported() { return gzipUnsupported; }
+
+        void setGzipUnsupported() { this.gzipUnsupported = true; }
+
+        public LlmBackendConfig getConfig() { return config; }
+
+        public String label() { return config.label(); }
+
+        private boolean isAvailable(long now) {
+            if (ejectedUntilMs > 0 && (now < ejectedUntilMs || probing)) return false;
+            if (config.getMaxConcurrency() > 0 && outstanding >= config.getMaxConcurrency()) return false;
+            if (config.getMaxRequestsPerMinute() > 0) {
+                while (!recentStarts.isEmpty() && recentStarts.peekFirst() <= now - RATE_WINDOW_MS) {
+                    recentStarts.pollFirst();
+                }
+                return recentStarts.size() < config.getMaxRequestsPerMinute();
+            }
+            return true;
+        }
+
+        private long millisUntilAvailable(long now) {
+            if (isAvailable(now)) return 0;
+            long wait = 0;
+            if (ejectedUntilMs > now) wait = Math.max(wait, ejectedUntilMs - now);
+            if (config.getMaxRequestsPerMinute() > 0 && recentStarts.size() >= config.getMaxRequestsPerMinute()) {
+                wait = Math.max(wait, recentStarts.peekFirst() + RATE_WINDOW_MS - now);
+            }
+            // Busy or probing: re-check shortly
+            return wait > 0 ? wait : 200;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package io.github.code2spec.llm;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OkHttp event listener counting connection reuse for LLM calls: how many calls completed on a
+ * pooled (or multiplexed HTTP/2) connection without opening one, TLS handshakes, negotiated
+ * protocols and request body bytes before and after gzip.
+ *
+ * <p>Counted per call rather than per connection acquisition: a stale pooled connection that
+ * fails and is replaced would otherwise count as a reuse.
+ */
+public class ConnectionMetrics extends EventListener {
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong reusedCalls = new AtomicLong();
+    private final AtomicLong connected = new AtomicLong();
+    private final AtomicLong tlsHandshakes = new AtomicLong();
+    private final AtomicLong rawBodyBytes = new AtomicLong();
+    private final AtomicLong sentBodyBytes = new AtomicLong();
+    private final Map<Protocol, AtomicLong> protocols = new ConcurrentHashMap<>();
+    private final Map<Call, Protocol> callProtocols = new ConcurrentHashMap<>();
+    private final Set<Call> connectingCalls = ConcurrentHashMap.newKeySet();
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+        connected.incrementAndGet();
+        connectingCalls.add(call);
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        tlsHandshakes.incrementAndGet();
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        callProtocols.put(call, connection.protocol());
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        onCallFinished(call);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        onCallFinished(call);
+    }
+
+    private void onCallFinished(Call call) {
+        calls.incrementAndGet();
+        if (!connectingCalls.remove(call)) reusedCalls.incrementAndGet();
+        Protocol protocol = callProtocols.remove(call);
+        if (protocol != null) protocols.computeIfAbsent(protocol, p -> new AtomicLong()).incrementAndGet();
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        sentBodyBytes.addAndGet(byteCount);
+    }
+
+    /** Size of a request body before compression */
+    void onRequestBody(long rawBytes) {
+        rawBodyBytes.addAndGet(rawBytes);
+    }
+
+    public long getCalls() { return calls.get(); }
+    public long getConnected() { return connected.get(); }
+
+    /** Share of finished calls that did not open a connection, 0-1 */
+    public double reuseRate() {
+        long c = calls.get();
+        return c > 0 ? reusedCalls.get() / (double) c : 0;
+    }
+
+    public List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        long c = calls.get();
+        if (c == 0) return lines;
+        lines.add(String.format("连接复用: %d 次请求，新建连接 %d 个（TLS 握手 %d 次），复用率 %.1f%%",
+                c, connected.get(), tlsHandshakes.get(), reuseRate() * 100));
+        StringBuilder byProtocol = new StringBuilder();
+        protocols.forEach((p, n) -> byProtocol.append(byProtocol.length() > 0 ? "，" : "").append(p).append(' ').append(n.get()));
+        lines.add("协议: " + byProtocol);
+        long raw = rawBodyBytes.get();
+        long sent = sentBodyBytes.get();
+        if (raw > 0 && sent < raw) {
+            lines.add(String.format("请求体: 原始 %d KB，实际发送 %d KB（gzip 节省 %.1f%%）",
+                    raw / 1024, sent / 1024, (raw - sent) * 100.0 / raw));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.code2spec.llm;
+
+import io.github.code2spec.core.model.BusinessSemantic;
+import io.github.code2spec.core.model.ErrorCode;
+import io.github.code2spec.core.model.ErrorEnhancement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Enhancer for {@code --dry-run}: builds every prompt exactly as {@link OpenAiLlmEnhancer} would
+ * (same error code batching), estimates its tokens locally and returns no result, so nothing is
+ * sent. {@link #summaryLines()} projects requests, tokens, wall time and cost for a real run.
+ */
+public class DryRunLlmEnhancer implements LlmEnhancer {
+    /** Assumed latency of one request, for the wall time projection */
+    static final long ASSUMED_LATENCY_MS = 8000;
+    private static final int TOP_PROMPTS = 20;
+
+    private final LlmConfig config;
+    private final LlmPrompts prompts;
+    private final List<Request> requests = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * @param inputTokens     estimated prompt tokens
+     * @param maxOutputTokens max_tokens of the request, the upper bound of its completion
+     */
+    record Request(String type, String target, int chars, int inputTokens, int maxOutputTokens) {
+    }
+
+    public DryRunLlmEnhancer(LlmConfig config) {
+        this.config = config;
+        this.prompts = new LlmPrompts(config);
+    }
+
+    @Override
+    public BusinessSemantic enhanceEndpoint(EndpointContext ctx) {
+        record("端点", ctx.getHttpMethod() + " " + ctx.getUri(), prompts.endpointMessages(ctx), config.getMaxTokens());
+        return null;
+    }
+
+    @Override
+    public void enhanceErrorCode(ErrorCode errorCode, ErrorCodeContext ctx) {
+        enhanceErrorCodeAsync(ctx);
+    }
+
+    @Override
+    public CompletableFuture<ErrorEnhancement> enhanceErrorCodeAsync(ErrorCodeContext ctx) {
+        record("错误码", ctx.getCode(), prompts.errorCodeMessages(ctx), config.getMaxTokens());
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<List<ErrorEnhancement>> enhanceErrorCodesAsync(List<ErrorCodeContext> contexts) {
+        int batchSize = Math.max(1, config.getErrorCodeBatchSize());
+        for (int from = 0; from < contexts.size(); from += batchSize) {
+            List<ErrorCodeContext> chunk = contexts.subList(from, Math.min(contexts.size(), from + batchSize));
+            if (chunk.size() == 1) {
+                enhanceErrorCodeAsync(chunk.get(0));
+            } else {
+                record("错误码(批量)", String.join(", ", chunk.stream().map(ErrorCodeContext::getCode).toList()),
+                        prompts.errorCodeBatchMessages(chunk),
+                        Math.max(config.getMaxTokens(), chunk.size() * OpenAiLlmEnhancer.BATCH_TOKENS_PER_ERROR_CODE));
+            }
+        }
+        return CompletableFuture.completedFuture(new ArrayList<>(Collections.nCopies(contexts.size(), null)));
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return true;
+    }
+
+    private void record(String type, String target, List<OpenAiClient.ChatMessage> messages, int maxTokens) {
+        int chars = messages.stream().mapToInt(m -> m.content != null ? m.content.length() : 0).sum();
+        requests.add(new Request(type, target, chars, TokenEstimator.estimate(messages), maxTokens));
+    }
+
+    List<Request> getRequests() {
+        synchronized (requests) {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    /**
+     * Projected wall time: the slowest of request pacing ({@code llmDelayMs} apart), the
+     * concurrency limit at {@link #ASSUMED_LATENCY_MS} per request and the backends' combined
+     * requests-per-minute limit (when every backend has one).
+     */
+    long projectedWallTimeMs(int requestCount) {
+        if (requestCount == 0) return 0;
+        long pacing = (long) requestCount * Math.max(0, config.getLlmDelayMs()) + ASSUMED_LATENCY_MS;
+        int concurrency = Math.max(1, config.getConcurrency());
+        long byConcurrency = (long) Math.ceil(requestCount / (double) concurrency) * ASSUMED_LATENCY_MS;
+        long byRpm = 0;
+        List<LlmBackendConfig> backends = config.getBackends();
+        if (!backends.isEmpty() && backends.stream().allMatch(b -> b.getMaxRequestsPerMinute() > 0)) {
+            int rpm = backends.stream().mapToInt(LlmBackendConfig::getMaxRequestsPerMinute).sum();
+            byRpm = (long) Math.ceil(requestCount * 60_000.0 / rpm);
+        }
+        return Math.max(pacing, Math.max(byConcurrency, byRpm));
+    }
+
+    public List<String> summaryLines() {
+        List<Request> all = getRequests();
+        List<String> lines = new ArrayList<>();
+        long input = all.stream().mapToLong(Request::inputTokens).sum();
+        long maxOutput = all.stream().mapToLong(Request::maxOutputTokens).sum();
+        Map<String, Integer> byType = new LinkedHashMap<>();
+        all.forEach(r -> byType.merge(r.type(), 1, Integer::sum));
+
+        StringBuilder types = new StringBuilder();
+        byType.forEach((type, n) -> types.append(types.length() > 0 ? "，" : "").append(type).append(' ').append(n));
+        lines.add("LLM 请求: " + all.size() + " 次" + (all.isEmpty() ? "" : "（" + types + "）"));
+        lines.add("输入 token: ≈" + input + "（本地估算）");
+        lines.add("输出 token: ≤" + maxOutput + "（按各请求 max_tokens 计的上限）");
+        lines.add(String.format("预计耗时: ≈%s（间隔 %d ms，并发 %d，按单次请求约 %d s 估算）",
+                formatDuration(projectedWallTimeMs(all.size())), config.getLlmDelayMs(),
+                Math.max(1, config.getConcurrency()), ASSUMED_LATENCY_MS / 1000));
+        if (config.getInputPricePerMillion() > 0 || config.getOutputPricePerMillion() > 0) {
+            double inputCost = input * config.getInputPricePerMillion() / 1_000_000;
+            double maxOutputCost = maxOutput * config.getOutputPricePerMillion() / 1_000_000;
+            lines.add(String.format("预计费用: $%.4f ~ $%.4f（输出按 0 ~ 上限计）", inputCost, inputCost + maxOutputCost));
+        }
+        if (!all.isEmpty()) {
+            lines.add("输入最大的 " + Math.min(TOP_PROMPTS, all.size()) + " 个 prompt（可据此调整 --llm-call-chain-max-chars）:");
+            all.stream()
+                    .sorted(Comparator.comparingInt(Request::inputTokens).reversed())
+                    .limit(TOP_PROMPTS)
+                    .forEach(r -> lines.add(String.format("  %6d tokens %7d 字符  %s %s",
+                            r.inputTokens(), r.chars(), r.type(), r.target())));
+        }
+        return lines;
+    }
+
+    private static String formatDuration(long ms) {
+        long sec = Math.round(ms / 1000.0);
+        if (sec < 60) return sec + " s";
+        if (sec < 3600) return (sec / 60) + " m " + (sec % 60) + " s";
+        return (sec / 3600) + " h " + (sec % 3600 / 60) + " m";
+    }
+}
@@ -15,6 +15,9 @@ public class EndpointContext {
     private String methodBodySnippet;
     private List<String> calledMethodNames;
     private String callChainSnippet;
+    private String entityName;
+    private String sharedCallChainSnippet;
+    private List<String> templateEntities;
 
     public String getUri() { return uri; }
     public void setUri(String uri) { this.uri = uri; }
@@ -42,4 +45,22 @@ public class EndpointContext {
 
     public String getCallChainSnippet() { return callChainSnippet; }
     public void setCallChainSnippet(String callChainSnippet) { this.callChainSnippet = callChainSnippet; }
+
+    /**
+     * Code of the methods called by the endpoint (without the endpoint itself), placed ahead of
+     * the endpoint details in the cache-friendly prompt layout.
+     */
+    public String getSharedCallChainSnippet() { return sharedCallChainSnippet; }
+    public void setSharedCallChainSnippet(String sharedCallChainSnippet) { this.sharedCallChainSnippet = sharedCallChainSnippet; }
+
+    /** Entity the endpoint operates on, derived from the controller name (e.g. {@code User}) */
+    public String getEntityName() { return entityName; }
+    public void setEntityName(String entityName) { this.entityName = entityName; }
+
+    /**
+     * Entities of all near-duplicate endpoints this one represents; when set, the LLM is asked
+     * for a template answer that can be adapted to each of them.
+     */
+    public List<String> getTemplateEntities() { return templateEntities; }
+    public void setTemplateEntities(List<String> templateEntities) { this.templateEntities = templateEntities; }
 }
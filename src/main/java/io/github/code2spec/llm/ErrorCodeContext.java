@@ -10,6 +10,8 @@ public class ErrorCodeContext {
     private String exceptionType;
     private String exceptionHandlerSnippet;
     private String throwLocationSnippet;
+    /** Class declaring the @ExceptionHandler, e.g. the @ControllerAdvice; used to batch related codes */
+    private String handlerClass;
 
     public String getCode() { return code; }
     public void setCode(String code) { this.code = code; }
@@ -28,4 +30,7 @@ public class ErrorCodeContext {
 
     public String getThrowLocationSnippet() { return throwLocationSnippet; }
     public void setThrowLocationSnippet(String throwLocationSnippet) { this.throwLocationSnippet = throwLocationSnippet; }
+
+    public String getHandlerClass() { return handlerClass; }
+    public void setHandlerClass(String handlerClass) { this.handlerClass = handlerClass; }
 }
@@ -0,0 +1,139 @@
+package io.github.code2spec.llm;
+
+import io.github.code2spec.ProgressReporter;
+import io.github.code2spec.core.model.BusinessSemantic;
+import io.github.code2spec.core.model.ErrorCode;
+import io.github.code2spec.core.model.ErrorEnhancement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * Decorator that replays results from an {@link LlmJournal} and records every newly
+ * completed enhancement, so an interrupted run can be resumed without repeating calls.
+ * Prompt hashes cover every model in the backend pool, since any of them may have produced an
+ * entry; changing a backend's model invalidates the journal.
+ */
+public class JournalingLlmEnhancer implements LlmEnhancer {
+    private final LlmEnhancer delegate;
+    private final LlmJournal journal;
+    private final LlmPrompts prompts;
+    private final String model;
+    private final ProgressReporter progressReporter;
+
+    public JournalingLlmEnhancer(LlmEnhancer delegate, LlmJournal journal, LlmConfig config, ProgressReporter progressReporter) {
+        this.delegate = delegate;
+        this.journal = journal;
+        this.prompts = new LlmPrompts(config);
+        this.model = poolModels(config);
+        this.progressReporter = progressReporter;
+    }
+
+    @Override
+    public BusinessSemantic enhanceEndpoint(EndpointContext ctx) {
+        return enhanceEndpointAsync(ctx).join();
+    }
+
+    @Override
+    public CompletableFuture<BusinessSemantic> enhanceEndpointAsync(EndpointContext ctx) {
+        String key = endpointKey(ctx);
+        String hash = LlmJournal.promptHash(model, prompts.endpointMessages(ctx));
+        BusinessSemantic replayed = journal.findEndpoint(key, hash);
+        if (replayed != null) {
+            if (progressReporter != null) progressReporter.onLlmReplayed("端点", ctx.getHttpMethod() + " " + ctx.getUri());
+            return CompletableFuture.completedFuture(replayed);
+        }
+        return delegate.enhanceEndpointAsync(ctx).thenApply(semantic -> {
+            if (semantic != null) journal.recordEndpoint(key, hash, semantic);
+            return semantic;
+        });
+    }
+
+    @Override
+    public void enhanceErrorCode(ErrorCode errorCode, ErrorCodeContext ctx) {
+        ErrorEnhancement enhancement = enhanceErrorCodeAsync(ctx).join();
+        if (enhancement != null) enhancement.applyTo(errorCode);
+    }
+
+    @Override
+    public void enhanceErrorCodes(List<ErrorCode> errorCodes, List<ErrorCodeContext> contexts) {
+        List<ErrorEnhancement> enhancements = enhanceErrorCodesAsync(contexts).join();
+        for (int i = 0; i < errorCodes.size(); i++) {
+            if (enhancements.get(i) != null) enhancements.get(i).applyTo(errorCodes.get(i));
+        }
+    }
+
+    @Override
+    public CompletableFuture<ErrorEnhancement> enhanceErrorCodeAsync(ErrorCodeContext ctx) {
+        String hash = errorCodeHash(ctx);
+        ErrorEnhancement replayed = journal.findErrorCode(ctx.getCode(), hash);
+        if (replayed != null) {
+            if (progressReporter != null) progressReporter.onLlmReplayed("错误码", ctx.getCode());
+            return CompletableFuture.completedFuture(replayed);
+        }
+        return delegate.enhanceErrorCodeAsync(ctx).thenApply(enhancement -> {
+            if (enhancement != null) journal.recordErrorCode(ctx.getCode(), hash, enhancement);
+            return enhancement;
+        });
+    }
+
+    /**
+     * Replays what the journal has and sends only the missing codes (still batched) to the delegate.
+     * Codes are journaled individually, keyed by their single-code prompt, so the grouping may change
+     * between runs without invalidating entries.
+     */
+    @Override
+    public CompletableFuture<List<ErrorEnhancement>> enhanceErrorCodesAsync(List<ErrorCodeContext> contexts) {
+        List<ErrorEnhancement> results = new ArrayList<>();
+        List<String> hashes = new ArrayList<>();
+        List<Integer> missingIdx = new ArrayList<>();
+        List<ErrorCodeContext> missing = new ArrayList<>();
+        for (int i = 0; i < contexts.size(); i++) {
+            ErrorCodeContext ctx = contexts.get(i);
+            String hash = errorCodeHash(ctx);
+            hashes.add(hash);
+            ErrorEnhancement replayed = journal.findErrorCode(ctx.getCode(), hash);
+            results.add(replayed);
+            if (replayed != null) {
+                if (progressReporter != null) progressReporter.onLlmReplayed("错误码", ctx.getCode());
+            } else {
+                missingIdx.add(i);
+                missing.add(ctx);
+            }
+        }
+        if (missing.isEmpty()) return CompletableFuture.completedFuture(results);
+        return delegate.enhanceErrorCodesAsync(missing).thenApply(enhanced -> {
+            for (int j = 0; j < missingIdx.size(); j++) {
+                int i = missingIdx.get(j);
+                ErrorEnhancement enhancement = enhanced.get(j);
+                if (enhancement != null) journal.recordErrorCode(contexts.get(i).getCode(), hashes.get(i), enhancement);
+                results.set(i, enhancement);
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return delegate.isEnabled();
+    }
+
+    private String errorCodeHash(ErrorCodeContext ctx) {
+        return LlmJournal.promptHash(model, prompts.errorCodeMessages(ctx));
+    }
+
+    /** Sorted, distinct models of the backend pool; just the model for a single backend */
+    static String poolModels(LlmConfig config) {
+        return config.getEffectiveBackends().stream()
+                .map(b -> Objects.toString(b.getModel()))
+                .distinct().sorted()
+                .collect(Collectors.joining(","));
+    }
+
+    private static String endpointKey(EndpointContext ctx) {
+        return ctx.getHttpMethod() + " " + ctx.getUri() + "#" + ctx.getMethodName();
+    }
+}
@@ -0,0 +1,35 @@
+package io.github.code2spec.llm;
+
+import java.util.Arrays;
+
+/**
+ * Sliding window of recent successful LLM call latencies, used to pick the hedging delay.
+ */
+public class LatencyTracker {
+    private final long[] window;
+    private final int minSamples;
+    private int count;
+    private int next;
+
+    public LatencyTracker(int windowSize, int minSamples) {
+        this.window = new long[windowSize];
+        this.minSamples = minSamples;
+    }
+
+    public synchronized void record(long latencyMs) {
+        window[next] = latencyMs;
+        next = (next + 1) % window.length;
+        if (count < window.length) count++;
+    }
+
+    /**
+     * The given percentile (0-100) of the window, or -1 until enough samples are recorded.
+     */
+    public synchronized long percentile(int p) {
+        if (count < minSamples) return -1;
+        long[] sorted = Arrays.copyOf(window, count);
+        Arrays.sort(sorted);
+        int idx = (int) Math.ceil(p / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, idx))];
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.code2spec.llm;
+
+/**
+ * One OpenAI-compatible backend in the provider pool: base URL, key, model, weight and rate limits.
+ */
+public class LlmBackendConfig {
+    private String apiBaseUrl;
+    private String apiKey;
+    private String model;
+    private int weight = 1;
+    private int maxRequestsPerMinute;
+    private int maxConcurrency;
+
+    public LlmBackendConfig() {}
+    public LlmBackendConfig(String apiBaseUrl, String apiKey, String model) {
+        this.apiBaseUrl = apiBaseUrl;
+        this.apiKey = apiKey;
+        this.model = model;
+    }
+
+    /**
+     * Parses a CLI spec such as
+     * {@code url=http://localhost:11434/v1,model=llama3,weight=2,rpm=30,concurrency=2,key-env=OLLAMA_KEY}.
+     * Keys: url (required), key, key-env, model, weight, rpm, concurrency. Unset model falls back to
+     * {@code defaultModel}.
+     */
+    public static LlmBackendConfig parse(String spec, String defaultModel) {
+        LlmBackendConfig c = new LlmBackendConfig();
+        c.model = defaultModel;
+        for (String part : spec.split(",")) {
+            if (part.isBlank()) continue;
+            int eq = part.indexOf('=');
+            if (eq <= 0) throw new IllegalArgumentException("LLM 后端参数格式应为 key=value: " + part);
+            String key = part.substring(0, eq).trim().toLowerCase();
+            String value = part.substring(eq + 1).trim();
+            switch (key) {
+                case "url" -> c.apiBaseUrl = value;
+                case "key" -> c.apiKey = value;
+                case "key-env" -> c.apiKey = System.getenv(value);
+                case "model" -> c.model = value;
+                case "weight" -> c.weight = parseInt(key, value);
+                case "rpm" -> c.maxRequestsPerMinute = parseInt(key, value);
+                case "concurrency" -> c.maxConcurrency = parseInt(key, value);
+                default -> throw new IllegalArgumentException("未知的 LLM 后端参数: " + key);
+            }
+        }
+        if (c.apiBaseUrl == null || c.apiBaseUrl.isBlank()) {
+            throw new IllegalArgumentException("LLM 后端缺少 url: " + spec);
+        }
+        if (c.weight <= 0) throw new IllegalArgumentException("LLM 后端 weight 必须大于 0: " + spec);
+        return c;
+    }
+
+    private static int parseInt(String key, String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("LLM 后端参数 " + key + " 不是整数: " + value);
+        }
+    }
+
+    /** Short label for logs and the summary table, e.g. {@code llama3@localhost:11434}. */
+    public String label() {
+        String host = apiBaseUrl.replaceFirst("^https?://", "");
+        int slash = host.indexOf('/');
+        if (slash > 0) host = host.substring(0, slash);
+        return model + "@" + host;
+    }
+
+    public String getApiBaseUrl() { return apiBaseUrl; }
+    public void setApiBaseUrl(String apiBaseUrl) { this.apiBaseUrl = apiBaseUrl; }
+
+    public String getApiKey() { return apiKey; }
+    public void setApiKey(String apiKey) { this.apiKey = apiKey; }
+
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+
+    public int getWeight() { return weight; }
+    public void setWeight(int weight) { this.weight = weight; }
+
+    public int getMaxRequestsPerMinute() { return maxRequestsPerMinute; }
+    public void setMaxRequestsPerMinute(int maxRequestsPerMinute) { this.maxRequestsPerMinute = maxRequestsPerMinute; }
+
+    public int getMaxConcurrency() { return maxConcurrency; }
+    public void setMaxConcurrency(int maxConcurrency) { this.maxConcurrency = maxConcurrency; }
+}
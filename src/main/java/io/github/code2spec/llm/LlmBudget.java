@@ -0,0 +1,104 @@
+package io.github.code2spec.llm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wall-clock deadline and token budget for LLM enhancement, checked before each dispatch.
+ *
+ * <p>Requests already in flight are allowed to finish. For the token budget, every in-flight
+ * request is counted at the average tokens per finished call, so that a burst of concurrent
+ * dispatches does not overshoot the budget by much.
+ */
+public class LlmBudget {
+    private final long deadlineAtMs;
+    private final long tokenBudget;
+    private long usedTokens;
+    private int finishedCalls;
+    private int inFlight;
+    private int skipped;
+    private String stopReason;
+
+    /**
+     * @param deadlineSeconds seconds from now, 0 for none
+     * @param tokenBudget     total prompt + completion tokens, 0 for none
+     */
+    public LlmBudget(long deadlineSeconds, long tokenBudget) {
+        this.deadlineAtMs = deadlineSeconds > 0 ? System.currentTimeMillis() + deadlineSeconds * 1000 : 0;
+        this.tokenBudget = tokenBudget;
+    }
+
+    public boolean isLimited() {
+        return deadlineAtMs > 0 || tokenBudget > 0;
+    }
+
+    /**
+     * Reserves a dispatch; false (and the item counted as skipped) once the deadline has passed
+     * or the budget is used up.
+     */
+    public synchronized boolean tryAcquire() {
+        if (stopReason == null) {
+            if (deadlineAtMs > 0 && System.currentTimeMillis() >= deadlineAtMs) {
+                stopReason = "已到达截止时间";
+            } else if (tokenBudget > 0 && usedTokens + (long) inFlight * averageTokens() >= tokenBudget) {
+                stopReason = "token 预算已用完";
+            }
+        }
+        if (stopReason != null) {
+            skipped++;
+            return false;
+        }
+        inFlight++;
+        return true;
+    }
+
+    /**
+     * Releases a dispatch reserved by {@link #tryAcquire()}; tokens is 0 for a failed call.
+     */
+    public synchronized void release(int tokens) {
+        inFlight--;
+        usedTokens += tokens;
+        if (tokens > 0) finishedCalls++;
+    }
+
+    /**
+     * Releases a dispatch with the tokens of its result (null for a failed call). When the server
+     * reported no usage, or the stream ended before the usage chunk, prompt and completion are
+     * estimated locally so that the budget still runs out.
+     */
+    public void release(List<OpenAiClient.ChatMessage> messages, OpenAiClient.ChatResult result) {
+        if (result == null) {
+            release(0);
+            return;
+        }
+        int tokens = result.promptTokens + result.completionTokens;
+        if (tokens <= 0) {
+            tokens = TokenEstimator.estimate(messages) + TokenEstimator.estimate(result.content);
+        }
+        release(tokens);
+    }
+
+    /** Whether dispatching has stopped; later items can skip pacing and fail fast */
+    public synchronized boolean isExhausted() {
+        return stopReason != null;
+    }
+
+    private long averageTokens() {
+        return finishedCalls > 0 ? usedTokens / finishedCalls : 0;
+    }
+
+    public synchronized List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        if (deadlineAtMs > 0) {
+            long left = deadlineAtMs - System.currentTimeMillis();
+            lines.add("截止时间: " + (left > 0 ? "剩余 " + (left / 1000) + " s" : "已到达"));
+        }
+        if (tokenBudget > 0) {
+            lines.add("Token 预算: 已用 " + usedTokens + " / " + tokenBudget);
+        }
+        if (stopReason != null) {
+            lines.add(stopReason + "，跳过 " + skipped + " 项 LLM 增强（可加 --resume 续跑补全）");
+        }
+        return lines;
+    }
+}
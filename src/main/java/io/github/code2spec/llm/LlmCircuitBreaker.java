@@ -0,0 +1,138 @@
+package io.github.code2spec.llm;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stops sending LLM requests while the API is down, so that the remaining items fall through to
+ * rule-only output at once instead of each waiting for connect/read timeouts.
+ *
+ * <p>Opens after a number of consecutive failed calls (after the client's own retries). While
+ * open, dispatches are refused; after a cooldown a single probe request is let through, and its
+ * success closes the breaker again while a failure reopens it with a doubled cooldown. Requests
+ * accepted before the breaker opened may still answer meanwhile; they only count towards
+ * {@code consecutiveFailures}, as only the probe's {@link Ticket} decides. Refused items get no
+ * journal entry, so {@code --resume} sends exactly those.
+ */
+public class LlmCircuitBreaker {
+    static final long BASE_COOLDOWN_MS = 60_000;
+    private static final long MAX_COOLDOWN_MS = 10 * 60_000;
+    private static final int LISTED_SKIPS = 10;
+
+    private final int threshold;
+    private final long baseCooldownMs;
+    private int consecutiveFailures;
+    private long openUntilMs;
+    private boolean open;
+    private boolean probing;
+    private int openings;
+    /** Openings since the last recovery; doubles the cooldown */
+    private int openingsInRow;
+    private int recoveries;
+    private final List<String> skipped = new ArrayList<>();
+
+    /** A dispatch reserved by {@link #tryAcquire(String)}, handed back with its outcome */
+    public enum Ticket { REGULAR, PROBE }
+
+    /**
+     * @param threshold consecutive failures that open the breaker, 0 to disable it
+     */
+    public LlmCircuitBreaker(int threshold) {
+        this(threshold, BASE_COOLDOWN_MS);
+    }
+
+    LlmCircuitBreaker(int threshold, long baseCooldownMs) {
+        this.threshold = threshold;
+        this.baseCooldownMs = baseCooldownMs;
+    }
+
+    public boolean isEnabled() {
+        return threshold > 0;
+    }
+
+    /** Whether new items are refused right now (cooling down or a probe is out); callers can skip pacing */
+    public synchronized boolean isOpen() {
+        return open && (probing || System.currentTimeMillis() < openUntilMs);
+    }
+
+    /**
+     * Whether requests already accepted should be dropped instead of retried: true during the
+     * cooldown, false once a probe may go out so that the probe's own retries are not refused.
+     */
+    public synchronized boolean isCoolingDown() {
+        return open && !probing && System.currentTimeMillis() < openUntilMs;
+    }
+
+    /**
+     * Reserves a dispatch for {@code item}; null (and the item recorded as skipped) while open.
+     * Once the cooldown has elapsed the first caller gets the {@link Ticket#PROBE} ticket.
+     */
+    public synchronized Ticket tryAcquire(String item) {
+        if (!open) return Ticket.REGULAR;
+        if (!probing && System.currentTimeMillis() >= openUntilMs) {
+            probing = true;
+            return Ticket.PROBE;
+        }
+        skipped.add(item);
+        return null;
+    }
+
+    /**
+     * Records an item whose accepted request was dropped because the breaker opened meanwhile;
+     * {@code ticket} is null when the item was dropped before it got one.
+     */
+    public synchronized void recordSkipped(String item, Ticket ticket) {
+        skipped.add(item);
+        // A dropped probe frees the slot for the next item
+        if (ticket == Ticket.PROBE && open) probing = false;
+    }
+
+    /**
+     * Records the outcome of a dispatch reserved by {@link #tryAcquire(String)}; returns true
+     * when this failure opened the breaker, so that queued requests can be dropped.
+     */
+    public synchronized boolean onResult(Ticket ticket, boolean success) {
+        if (!isEnabled()) return false;
+        boolean probe = ticket == Ticket.PROBE && open;
+        if (success) {
+            consecutiveFailures = 0;
+            if (probe) {
+                open = false;
+                probing = false;
+                openingsInRow = 0;
+                recoveries++;
+                System.err.println("        [LLM 熔断] 探测请求成功，恢复 LLM 调用");
+            }
+            return false;
+        }
+        consecutiveFailures++;
+        if (probe || (!open && consecutiveFailures >= threshold)) {
+            openings++;
+            openingsInRow++;
+            long cooldown = Math.min(MAX_COOLDOWN_MS, baseCooldownMs << Math.min(10, openingsInRow - 1));
+            open = true;
+            probing = false;
+            openUntilMs = System.currentTimeMillis() + cooldown;
+            System.err.println("        [LLM 熔断] 连续失败 " + consecutiveFailures + " 次，暂停 LLM 调用 "
+                    + (cooldown / 1000) + " s，期间剩余项仅使用规则提取");
+            return true;
+        }
+        return false;
+    }
+
+    public synchronized int getSkippedCount() {
+        return skipped.size();
+    }
+
+    public synchronized List<String> summaryLines() {
+        List<String> lines = new ArrayList<>();
+        if (openings == 0) return lines;
+        lines.add("熔断 " + openings + " 次，恢复 " + recoveries + " 次" + (open ? "，结束时仍处于熔断" : ""));
+        if (!skipped.isEmpty()) {
+            lines.add("熔断期间跳过 " + skipped.size() + " 项 LLM 增强（未写入断点日志，可加 --resume 续跑补全）:");
+            skipped.stream().limit(LISTED_SKIPS).forEach(s -> lines.add("  " + s));
+            if (skipped.size() > LISTED_SKIPS) lines.add("  ... 共 " + skipped.size() + " 项");
+        }
+        return lines;
+    }
+}
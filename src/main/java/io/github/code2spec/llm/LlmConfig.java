@@ -1,5 +1,8 @@
 package io.github.code2spec.llm;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Configuration for LLM API.
  */
@@ -15,6 +18,22 @@ public class LlmConfig {
     private int callChainDepth = 2;
     private int methodBodyMaxChars = 1200;
     private int callChainMaxChars = 6000;
+    private int errorCodeBatchSize = 8;
+    private boolean stream;
+    private int concurrency = 1;
+    private boolean resume;
+    private int hedgePercent;
+    private boolean dedup;
+    private boolean promptCacheLayout;
+    private long deadlineSeconds;
+    private long tokenBudget;
+    private String responseFormat = "none";
+    private boolean dryRun;
+    private boolean gzipRequests;
+    private int circuitBreakerThreshold = 5;
+    private double inputPricePerMillion;
+    private double outputPricePerMillion;
+    private List<LlmBackendConfig> backends = new ArrayList<>();
     private boolean verbose;
 
     public boolean isVerbose() { return verbose; }
@@ -52,4 +71,99 @@ public class LlmConfig {
 
     public int getCallChainMaxChars() { return callChainMaxChars; }
     public void setCallChainMaxChars(int callChainMaxChars) { this.callChainMaxChars = callChainMaxChars; }
+
+    /**
+     * Explicit provider pool; when empty the single apiBaseUrl/apiKey/model is used.
+     */
+    public List<LlmBackendConfig> getBackends() { return backends; }
+    public void setBackends(List<LlmBackendConfig> backends) { this.backends = backends; }
+
+    public List<LlmBackendConfig> getEffectiveBackends() {
+        if (!backends.isEmpty()) return backends;
+        return List.of(new LlmBackendConfig(apiBaseUrl, apiKey, model));
+    }
+
+    /**
+     * Whether an API is configured: a backend pool or a single API key.
+     */
+    public boolean hasApiAccess() {
+        return !backends.isEmpty() || (apiKey != null && !apiKey.isBlank());
+    }
+
+    public boolean isResume() { return resume; }
+    public void setResume(boolean resume) { this.resume = resume; }
+
+    /**
+     * Maximum share of requests (0-100) that may be hedged; 0 disables hedging.
+     */
+    public int getHedgePercent() { return hedgePercent; }
+    public void setHedgePercent(int hedgePercent) { this.hedgePercent = hedgePercent; }
+
+    /**
+     * Whether near-duplicate endpoints share one LLM call (see {@link NearDuplicateDetector}).
+     */
+    public boolean isDedup() { return dedup; }
+    public void setDedup(boolean dedup) { this.dedup = dedup; }
+
+    /**
+     * Prompt layout ordered from most to least shared (system prompt, called code, endpoint
+     * details) so that providers with prefix caching can reuse the leading tokens.
+     */
+    public boolean isPromptCacheLayout() { return promptCacheLayout; }
+    public void setPromptCacheLayout(boolean promptCacheLayout) { this.promptCacheLayout = promptCacheLayout; }
+
+    /**
+     * Stop dispatching LLM requests this many seconds after start; 0 for no deadline.
+     */
+    public long getDeadlineSeconds() { return deadlineSeconds; }
+    public void setDeadlineSeconds(long deadlineSeconds) { this.deadlineSeconds = deadlineSeconds; }
+
+    /**
+     * Stop dispatching LLM requests once this many prompt + completion tokens are used; 0 for no limit.
+     */
+    public long getTokenBudget() { return tokenBudget; }
+    public void setTokenBudget(long tokenBudget) { this.tokenBudget = tokenBudget; }
+
+    /**
+     * {@code response_format} sent with each request: {@code none}, {@code json_object} or
+     * {@code json_schema} (batched error codes always use json_object).
+     */
+    public String getResponseFormat() { return responseFormat; }
+    public void setResponseFormat(String responseFormat) { this.responseFormat = responseFormat; }
+
+    /**
+     * Build every prompt and estimate tokens, wall time and cost without calling the LLM.
+     */
+    public boolean isDryRun() { return dryRun; }
+    public void setDryRun(boolean dryRun) { this.dryRun = dryRun; }
+
+    /** Price per million prompt tokens, used only for the dry-run cost estimate */
+    public double getInputPricePerMillion() { return inputPricePerMillion; }
+    public void setInputPricePerMillion(double inputPricePerMillion) { this.inputPricePerMillion = inputPricePerMillion; }
+
+    /** Price per million completion tokens, used only for the dry-run cost estimate */
+    public double getOutputPricePerMillion() { return outputPricePerMillion; }
+    public void setOutputPricePerMillion(double outputPricePerMillion) { this.outputPricePerMillion = outputPricePerMillion; }
+
+    /**
+     * Gzip request bodies of 1 KB and more; a backend answering 415/400 is switched back to plain bodies.
+     */
+    public boolean isGzipRequests() { return gzipRequests; }
+    public void setGzipRequests(boolean gzipRequests) { this.gzipRequests = gzipRequests; }
+
+    /**
+     * Consecutive failed LLM calls after which the remaining items skip the LLM (see
+     * {@link LlmCircuitBreaker}); 0 disables the breaker.
+     */
+    public int getCircuitBreakerThreshold() { return circuitBreakerThreshold; }
+    public void setCircuitBreakerThreshold(int circuitBreakerThreshold) { this.circuitBreakerThreshold = circuitBreakerThreshold; }
+
+    public int getConcurrency() { return concurrency; }
+    public void setConcurrency(int concurrency) { this.concurrency = concurrency; }
+
+    public boolean isStream() { return stream; }
+    public void setStream(boolean stream) { this.stream = stream; }
+
+    public int getErrorCodeBatchSize() { return errorCodeBatchSize; }
+    public void setErrorCodeBatchSize(int errorCodeBatchSize) { this.errorCodeBatchSize = errorCodeBatchSize; }
 }
@@ -3,6 +3,11 @@ package io.github.code2spec.llm;
 import io.github.code2spec.core.model.BusinessSemantic;
 import io.github.code2spec.core.model.Endpoint;
 import io.github.code2spec.core.model.ErrorCode;
+import io.github.code2spec.core.model.ErrorEnhancement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * LLM-based enhancement for endpoints and error codes.
@@ -19,6 +24,54 @@ public interface LlmEnhancer {
      */
     void enhanceErrorCode(ErrorCode errorCode, ErrorCodeContext ctx);
 
+    /**
+     * Enhance a group of related error codes (typically handled by the same
+     * exception handler class) in one pass. {@code contexts.get(i)} describes
+     * {@code errorCodes.get(i)}. Defaults to one call per code.
+     */
+    default void enhanceErrorCodes(List<ErrorCode> errorCodes, List<ErrorCodeContext> contexts) {
+        for (int i = 0; i < errorCodes.size(); i++) {
+            enhanceErrorCode(errorCodes.get(i), contexts.get(i));
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #enhanceEndpoint}. Completes with null when enhancement
+     * is unavailable or fails; never completes exceptionally.
+     * Defaults to running the blocking call on the caller thread.
+     */
+    default CompletableFuture<BusinessSemantic> enhanceEndpointAsync(EndpointContext ctx) {
+        return CompletableFuture.completedFuture(enhanceEndpoint(ctx));
+    }
+
+    /**
+     * Non-blocking variant of {@link #enhanceErrorCode}: the result is returned instead of
+     * being applied, so callers decide when to mutate the model. Completes with null on failure.
+     */
+    default CompletableFuture<ErrorEnhancement> enhanceErrorCodeAsync(ErrorCodeContext ctx) {
+        ErrorCode scratch = new ErrorCode();
+        scratch.setCode(ctx.getCode());
+        enhanceErrorCode(scratch, ctx);
+        if (scratch.getRootCause() == null && scratch.getHandlingSuggestion() == null && scratch.getPrevention() == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.completedFuture(new ErrorEnhancement(
+                scratch.getRootCause(), scratch.getHandlingSuggestion(), scratch.getPrevention()));
+    }
+
+    /**
+     * Non-blocking variant of {@link #enhanceErrorCodes}. The returned list is aligned with
+     * {@code contexts}; entries are null for codes that could not be enhanced.
+     */
+    default CompletableFuture<List<ErrorEnhancement>> enhanceErrorCodesAsync(List<ErrorCodeContext> contexts) {
+        List<CompletableFuture<ErrorEnhancement>> futures = new ArrayList<>();
+        for (ErrorCodeContext ctx : contexts) {
+            futures.add(enhanceErrorCodeAsync(ctx));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
     /**
      * Whether LLM enhancement is enabled (e.g. API configured).
      */
@@ -0,0 +1,152 @@
+package io.github.code2spec.llm;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import io.github.code2spec.core.model.BusinessSemantic;
+import io.github.code2spec.core.model.ErrorEnhancement;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only checkpoint journal of completed LLM enhancements (JSON Lines).
+ *
+ * <p>Each line records one endpoint or error code, keyed by its stable identity plus a hash of
+ * the prompt that produced it, and is flushed as soon as the call completes. On resume an entry
+ * is only reused when the prompt hash still matches, so changed code is enhanced again.
+ * A torn last line (process killed mid-write) is ignored.
+ */
+public class LlmJournal implements Closeable {
+    public static final String KIND_ENDPOINT = "endpoint";
+    public static final String KIND_ERROR_CODE = "error_code";
+
+    private final Gson gson = new Gson();
+    private final Map<String, JsonObject> entries = new HashMap<>();
+    private final BufferedWriter writer;
+    private boolean writeFailed;
+
+    private LlmJournal(BufferedWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Opens the journal. With {@code resume} existing entries are loaded and new ones appended;
+     * otherwise the file is truncated and the run starts from scratch.
+     */
+    public static LlmJournal open(Path file, boolean resume) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        Map<String, JsonObject> loaded = new HashMap<>();
+        if (resume && Files.exists(file)) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                if (line.isBlank()) continue;
+                try {
+                    JsonObject obj = JsonParser.parseString(line).getAsJsonObject();
+                    loaded.put(entryKey(obj.get("kind").getAsString(), obj.get("key").getAsString()), obj);
+                } catch (Exception ignored) {
+                    // torn or foreign line
+                }
+            }
+        }
+        BufferedWriter writer = resume
+                ? Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)
+                : Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        LlmJournal journal = new LlmJournal(writer);
+        journal.entries.putAll(loaded);
+        return journal;
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public BusinessSemantic findEndpoint(String key, String promptHash) {
+        JsonObject entry = find(KIND_ENDPOINT, key, promptHash);
+        return entry != null && entry.has("result") ? gson.fromJson(entry.get("result"), BusinessSemantic.class) : null;
+    }
+
+    public ErrorEnhancement findErrorCode(String key, String promptHash) {
+        JsonObject entry = find(KIND_ERROR_CODE, key, promptHash);
+        return entry != null && entry.has("result") ? gson.fromJson(entry.get("result"), ErrorEnhancement.class) : null;
+    }
+
+    public void recordEndpoint(String key, String promptHash, BusinessSemantic semantic) {
+        record(KIND_ENDPOINT, key, promptHash, gson.toJsonTree(semantic).getAsJsonObject());
+    }
+
+    public void recordErrorCode(String key, String promptHash, ErrorEnhancement enhancement) {
+        record(KIND_ERROR_CODE, key, promptHash, gson.toJsonTree(enhancement).getAsJsonObject());
+    }
+
+    private JsonObject find(String kind, String key, String promptHash) {
+        JsonObject entry;
+        synchronized (entries) {
+            entry = entries.get(entryKey(kind, key));
+        }
+        if (entry == null || !entry.has("prompt_hash")) return null;
+        return promptHash.equals(entry.get("prompt_hash").getAsString()) ? entry : null;
+    }
+
+    private void record(String kind, String key, String promptHash, JsonObject result) {
+        JsonObject entry = new JsonObject();
+        entry.addProperty("kind", kind);
+        entry.addProperty("key", key);
+        entry.addProperty("prompt_hash", promptHash);
+        entry.add("result", result);
+        synchronized (entries) {
+            entries.put(entryKey(kind, key), entry);
+            if (writeFailed) return;
+            try {
+                writer.write(gson.toJson(entry));
+                writer.newLine();
+                writer.flush();
+            } catch (IOException e) {
+                writeFailed = true;
+                System.err.println("      [断点日志] 写入失败，后续结果将不再记录: " + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (entries) {
+            writer.close();
+        }
+    }
+
+    /**
+     * Short, stable hash of the model and the full prompt messages.
+     */
+    public static String promptHash(String model, List<OpenAiClient.ChatMessage> messages) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(model).getBytes(StandardCharsets.UTF_8));
+            for (OpenAiClient.ChatMessage m : messages) {
+                digest.update((byte) 0);
+                digest.update(String.valueOf(m.role).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(String.valueOf(m.content).getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest(), 0, 12);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String entryKey(String kind, String key) {
+        return kind + "\u0000" + key;
+    }
+}
@@ -0,0 +1,147 @@
+package io.github.code2spec.llm;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the JSON object in an LLM answer with a streaming {@link JsonReader}, without building a
+ * tree. Text before the first {@code '{'} (e.g. a code fence) and after the object is ignored.
+ *
+ * <p>Values are returned as strings (numbers and booleans included, arrays joined with
+ * {@code "; "}) or, for nested objects, as maps. When the answer is cut off (max_tokens reached)
+ * a cheap repair closes the open string and containers, and whatever was read is kept.
+ */
+public final class LlmJsonReader {
+
+    private LlmJsonReader() {
+    }
+
+    /**
+     * @param values   fields of the top-level object, in answer order
+     * @param repaired whether the answer was incomplete and had to be repaired
+     */
+    public record Result(Map<String, Object> values, boolean repaired) {
+        public String getString(String key) {
+            Object v = values.get(key);
+            return v instanceof String s ? s : null;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Map<String, Object> getObject(String key) {
+            Object v = values.get(key);
+            return v instanceof Map ? (Map<String, Object>) v : null;
+        }
+    }
+
+    /**
+     * Returns the fields read, or null when the text holds no readable JSON object.
+     */
+    public static Result read(String text) {
+        if (text == null) return null;
+        int start = text.indexOf('{');
+        if (start < 0) return null;
+        String json = text.substring(start);
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        try {
+            readObject(reader(json), values);
+            return new Result(values, false);
+        } catch (IOException | IllegalStateException | NumberFormatException e) {
+            // Truncated or malformed: retry on the repaired text, keeping partial fields either way
+        }
+        Map<String, Object> repairedValues = new LinkedHashMap<>();
+        try {
+            readObject(reader(repair(json)), repairedValues);
+        } catch (IOException | IllegalStateException | NumberFormatException ignored) {
+        }
+        Map<String, Object> best = repairedValues.size() >= values.size() ? repairedValues : values;
+        return best.isEmpty() ? null : new Result(best, true);
+    }
+
+    private static JsonReader reader(String json) {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        reader.setLenient(true);
+        return reader;
+    }
+
+    private static void readObject(JsonReader reader, Map<String, Object> into) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_OBJECT) {
+                Map<String, Object> nested = new LinkedHashMap<>();
+                // Inserted first so a truncated nested object keeps what was read
+                into.put(name, nested);
+                readObject(reader, nested);
+            } else if (token == JsonToken.BEGIN_ARRAY) {
+                List<String> items = new ArrayList<>();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    if (reader.peek() == JsonToken.STRING || reader.peek() == JsonToken.NUMBER
+                            || reader.peek() == JsonToken.BOOLEAN) {
+                        items.add(reader.nextString());
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+                into.put(name, String.join("; ", items));
+            } else if (token == JsonToken.NULL) {
+                reader.nextNull();
+                into.put(name, null);
+            } else {
+                into.put(name, token == JsonToken.BOOLEAN ? String.valueOf(reader.nextBoolean()) : reader.nextString());
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Makes a truncated JSON text parseable: drops a dangling escape, closes an open string,
+     * completes a dangling {@code "key":} with null and closes open objects/arrays.
+     */
+    static String repair(String json) {
+        Deque<Character> open = new ArrayDeque<>();
+        boolean inString = false;
+        boolean escape = false;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (inString) {
+                if (escape) escape = false;
+                else if (c == '\\') escape = true;
+                else if (c == '"') inString = false;
+                continue;
+            }
+            switch (c) {
+                case '"' -> inString = true;
+                case '{' -> open.push('}');
+                case '[' -> open.push(']');
+                case '}', ']' -> {
+                    if (!open.isEmpty()) open.pop();
+                    if (open.isEmpty()) return json.substring(0, i + 1);
+                }
+                default -> { }
+            }
+        }
+        StringBuilder sb = new StringBuilder(json);
+        if (escape) sb.setLength(sb.length() - 1);
+        if (inString) sb.append('"');
+        String trimmed = sb.toString().stripTrailing();
+        sb.setLength(0);
+        sb.append(trimmed);
+        if (trimmed.endsWith(",")) sb.setLength(sb.length() - 1);
+        else if (trimmed.endsWith(":")) sb.append("null");
+        while (!open.isEmpty()) sb.append(open.pop());
+        return sb.toString();
+    }
+}
@@ -0,0 +1,246 @@
+package io.github.code2spec.llm;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Prompt templates for endpoint and error code enhancement.
+ * Shared by the enhancer and by anything that needs the exact prompt text (e.g. the journal hash).
+ */
+public class LlmPrompts {
+    private final LlmConfig config;
+
+    public LlmPrompts(LlmConfig config) {
+        this.config = config;
+    }
+
+    public List<OpenAiClient.ChatMessage> endpointMessages(EndpointContext ctx) {
+        return List.of(
+                new OpenAiClient.ChatMessage("system", getEndpointSystemPrompt()),
+                new OpenAiClient.ChatMessage("user", buildEndpointPrompt(ctx))
+        );
+    }
+
+    public List<OpenAiClient.ChatMessage> errorCodeMessages(ErrorCodeContext ctx) {
+        return List.of(
+                new OpenAiClient.ChatMessage("system", getErrorCodeSystemPrompt()),
+                new OpenAiClient.ChatMessage("user", buildErrorCodePrompt(ctx))
+        );
+    }
+
+    public List<OpenAiClient.ChatMessage> errorCodeBatchMessages(List<ErrorCodeContext> contexts) {
+        return List.of(
+                new OpenAiClient.ChatMessage("system", getErrorCodeBatchSystemPrompt()),
+                new OpenAiClient.ChatMessage("user", buildErrorCodeBatchPrompt(contexts))
+        );
+    }
+
+    /**
+     * {@code response_format} for an endpoint request, or null when disabled.
+     */
+    public JsonObject endpointResponseFormat(EndpointContext ctx) {
+        JsonObject properties = stringProperties("function", "scenario", "implementationNotes", "cautions");
+        if (ctx.getTemplateEntities() != null && ctx.getTemplateEntities().size() > 1) {
+            JsonObject names = new JsonObject();
+            names.addProperty("type", "object");
+            JsonObject value = new JsonObject();
+            value.addProperty("type", "string");
+            names.add("additionalProperties", value);
+            properties.add("entityNames", names);
+        }
+        return responseFormat("business_semantic", properties);
+    }
+
+    public JsonObject errorCodeResponseFormat() {
+        return responseFormat("error_enhancement", stringProperties("rootCause", "handlingSuggestion", "prevention"));
+    }
+
+    /** Batched answers are keyed by error code, so only plain JSON mode applies */
+    public JsonObject errorCodeBatchResponseFormat() {
+        return "none".equalsIgnoreCase(config.getResponseFormat()) ? null : jsonObjectFormat();
+    }
+
+    private JsonObject responseFormat(String name, JsonObject properties) {
+        String mode = config.getResponseFormat() == null ? "none" : config.getResponseFormat().toLowerCase();
+        if (mode.equals("json_object")) return jsonObjectFormat();
+        if (!mode.equals("json_schema")) return null;
+        JsonObject schema = new JsonObject();
+        schema.addProperty("type", "object");
+        schema.add("properties", properties);
+        JsonArray required = new JsonArray();
+        properties.keySet().stream().filter(k -> !k.equals("entityNames")).forEach(required::add);
+        schema.add("required", required);
+        JsonObject jsonSchema = new JsonObject();
+        jsonSchema.addProperty("name", name);
+        jsonSchema.add("schema", schema);
+        JsonObject format = new JsonObject();
+        format.addProperty("type", "json_schema");
+        format.add("json_schema", jsonSchema);
+        return format;
+    }
+
+    private static JsonObject jsonObjectFormat() {
+        JsonObject format = new JsonObject();
+        format.addProperty("type", "json_object");
+        return format;
+    }
+
+    private static JsonObject stringProperties(String... names) {
+        JsonObject properties = new JsonObject();
+        for (String n : names) {
+            JsonObject p = new JsonObject();
+            p.addProperty("type", "string");
+            properties.add(n, p);
+        }
+        return properties;
+    }
+
+    public String getEndpointSystemPrompt() {
+        return """
+            你是一个 REST API 文档专家。根据提供的 Java 接口代码上下文，生成结构化的业务语义描述。
+            输出必须是合法的 JSON，且只包含以下字段（均为字符串，可为空）：
+            - function: 功能概述（一句话说明接口做什么）
+            - scenario: 业务场景（典型使用场景，如：用户登录、订单创建）
+            - implementationNotes: 实现要点（关键逻辑、校验规则、依赖服务）
+            - cautions: 注意事项（调用方需注意的事项）
+            不要输出任何其他文字，只输出 JSON。
+            """;
+    }
+
+    public String buildEndpointPrompt(EndpointContext ctx) {
+        StringBuilder sb = new StringBuilder();
+        int callChainMax = config.getCallChainMaxChars();
+        // Cache-friendly layout: code shared with other endpoints first, so that consecutive
+        // requests start with the same tokens and hit the provider's prompt cache
+        if (config.isPromptCacheLayout() && callChainMax > 0
+                && ctx.getSharedCallChainSnippet() != null && !ctx.getSharedCallChainSnippet().isBlank()) {
+            sb.append("被调用方法代码:\n```\n").append(truncate(ctx.getSharedCallChainSnippet(), callChainMax)).append("\n```\n\n");
+        }
+        sb.append("接口信息：\n");
+        sb.append("- URI: ").append(ctx.getHttpMethod()).append(" ").append(ctx.getUri()).append("\n");
+        sb.append("- 方法名: ").append(ctx.getMethodName()).append("\n");
+        if (ctx.getJavadoc() != null && !ctx.getJavadoc().isBlank()) {
+            sb.append("- Javadoc: ").append(ctx.getJavadoc()).append("\n");
+        }
+        if (ctx.getParameterTypes() != null && !ctx.getParameterTypes().isEmpty()) {
+            sb.append("- 参数类型: ").append(String.join(", ", ctx.getParameterTypes())).append("\n");
+        }
+        if (ctx.getReturnType() != null) {
+            sb.append("- 返回类型: ").append(ctx.getReturnType()).append("\n");
+        }
+        int methodBodyMax = config.getMethodBodyMaxChars();
+        if (ctx.getMethodBodySnippet() != null && !ctx.getMethodBodySnippet().isBlank()) {
+            sb.append("- 方法体片段:\n```\n").append(truncate(ctx.getMethodBodySnippet(), methodBodyMax)).append("\n```\n");
+        }
+        if (callChainMax > 0 && ctx.getCalledMethodNames() != null && !ctx.getCalledMethodNames().isEmpty()) {
+            sb.append("- 调用的方法: ").append(String.join(", ", ctx.getCalledMethodNames())).append("\n");
+        }
+        if (callChainMax > 0 && ctx.getCallChainSnippet() != null && !ctx.getCallChainSnippet().isBlank()) {
+            sb.append("- 完整调用链代码:\n```\n").append(truncate(ctx.getCallChainSnippet(), callChainMax)).append("\n```\n");
+        }
+        if (ctx.getTemplateEntities() != null && ctx.getTemplateEntities().size() > 1) {
+            sb.append("\n模板说明：以下实体的同类接口与本接口结构相同，将复用你的描述：")
+                    .append(String.join(", ", ctx.getTemplateEntities())).append("。\n")
+                    .append("请在各字段中用 ").append(NearDuplicateDetector.ENTITY_PLACEHOLDER)
+                    .append(" 指代实体（本接口为 ").append(ctx.getEntityName()).append("），不要写死实体名；")
+                    .append("并额外输出字段 entityNames：对象，键为上述每个实体名，值为其中文名称。\n");
+        }
+        sb.append("\n请生成 JSON 格式的业务语义描述。");
+        return sb.toString();
+    }
+
+    public String getErrorCodeSystemPrompt() {
+        return """
+            你是一个 REST API 错误处理专家。根据提供的错误码和代码上下文，生成根因描述和处理建议。
+            输出必须是合法的 JSON，且只包含以下字段（均为字符串，可为空）：
+            - rootCause: 根因描述（导致该错误的典型原因，从业务层面说明）
+            - handlingSuggestion: 处理建议（API 调用方应如何应对：重试、参数修正、联系支持等）
+            - prevention: 预防建议（如何避免触发该错误）
+            不要输出任何其他文字，只输出 JSON。
+            """;
+    }
+
+    public String buildErrorCodePrompt(ErrorCodeContext ctx) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("错误码信息：\n");
+        sb.append("- code: ").append(ctx.getCode()).append("\n");
+        sb.append("- message: ").append(ctx.getMessage()).append("\n");
+        sb.append("- HTTP Status: ").append(ctx.getHttpStatus()).append("\n");
+        sb.append("- 异常类型: ").append(ctx.getExceptionType()).append("\n");
+        if (ctx.getExceptionHandlerSnippet() != null && !ctx.getExceptionHandlerSnippet().isBlank()) {
+            sb.append("- 异常处理逻辑:\n```\n").append(truncate(ctx.getExceptionHandlerSnippet(), 800)).append("\n```\n");
+        }
+        if (ctx.getThrowLocationSnippet() != null && !ctx.getThrowLocationSnippet().isBlank()) {
+            sb.append("- 抛出位置上下文:\n```\n").append(truncate(ctx.getThrowLocationSnippet(), 800)).append("\n```\n");
+        }
+        sb.append("\n请生成 JSON 格式的根因描述和处理建议。");
+        return sb.toString();
+    }
+
+    public String getErrorCodeBatchSystemPrompt() {
+        return """
+            你是一个 REST API 错误处理专家。根据提供的一组错误码（共享同一个异常处理类）和代码上下文，为每个错误码生成根因描述和处理建议。
+            输出必须是合法的 JSON 对象：键为错误码 code，值为只包含以下字段的对象（均为字符串，可为空）：
+            - rootCause: 根因描述（导致该错误的典型原因，从业务层面说明）
+            - handlingSuggestion: 处理建议（API 调用方应如何应对：重试、参数修正、联系支持等）
+            - prevention: 预防建议（如何避免触发该错误）
+            不要输出任何其他文字，只输出 JSON。
+            """;
+    }
+
+    public String buildErrorCodeBatchPrompt(List<ErrorCodeContext> contexts) {
+        StringBuilder sb = new StringBuilder();
+        String handlerClass = contexts.get(0).getHandlerClass();
+        if (handlerClass != null && !handlerClass.isBlank()) {
+            sb.append("异常处理类: ").append(handlerClass).append("\n\n");
+        }
+
+        // Several exception types often share one handler method: send each distinct snippet once
+        Map<String, List<String>> snippetToCodes = new LinkedHashMap<>();
+        for (ErrorCodeContext ctx : contexts) {
+            String snippet = ctx.getExceptionHandlerSnippet();
+            if (snippet != null && !snippet.isBlank()) {
+                snippetToCodes.computeIfAbsent(snippet, k -> new ArrayList<>()).add(ctx.getCode());
+            }
+        }
+        Map<String, Integer> snippetIndex = new LinkedHashMap<>();
+        if (!snippetToCodes.isEmpty()) {
+            sb.append("共享的异常处理逻辑：\n");
+            int n = 0;
+            for (Map.Entry<String, List<String>> e : snippetToCodes.entrySet()) {
+                snippetIndex.put(e.getKey(), ++n);
+                sb.append("[处理逻辑 ").append(n).append("] 适用于: ").append(String.join(", ", e.getValue())).append("\n");
+                sb.append("```\n").append(truncate(e.getKey(), 800)).append("\n```\n");
+            }
+            sb.append("\n");
+        }
+
+        sb.append("错误码列表：\n");
+        for (int i = 0; i < contexts.size(); i++) {
+            ErrorCodeContext ctx = contexts.get(i);
+            sb.append(i + 1).append(". code: ").append(ctx.getCode()).append("\n");
+            sb.append("   - message: ").append(ctx.getMessage()).append("\n");
+            sb.append("   - HTTP Status: ").append(ctx.getHttpStatus()).append("\n");
+            sb.append("   - 异常类型: ").append(ctx.getExceptionType()).append("\n");
+            Integer idx = snippetIndex.get(ctx.getExceptionHandlerSnippet());
+            if (idx != null) {
+                sb.append("   - 异常处理逻辑: 见 [处理逻辑 ").append(idx).append("]\n");
+            }
+            if (ctx.getThrowLocationSnippet() != null && !ctx.getThrowLocationSnippet().isBlank()) {
+                sb.append("   - 抛出位置上下文:\n```\n").append(truncate(ctx.getThrowLocationSnippet(), 800)).append("\n```\n");
+            }
+        }
+        sb.append("\n请生成以错误码为键的 JSON，每个错误码包含根因描述和处理建议。");
+        return sb.toString();
+    }
+
+    private static String truncate(String s, int maxLen) {
+        if (s == null) return "";
+        return s.length() <= maxLen ? s : s.substring(0, maxLen) + "...";
+    }
+}
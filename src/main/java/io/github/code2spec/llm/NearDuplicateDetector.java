@@ -0,0 +1,231 @@
+package io.github.code2spec.llm;
+
+import io.github.code2spec.core.model.BusinessSemantic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Clusters structurally identical endpoints (e.g. generated CRUD controllers that differ only in
+ * the entity name) so that one representative per cluster is sent to the LLM.
+ *
+ * <p>Each endpoint context is tokenized with its entity name and literals masked, cut into
+ * token shingles and summarized by a MinHash signature; LSH banding finds candidate pairs, which
+ * join a cluster when the estimated Jaccard similarity reaches the threshold and HTTP method and
+ * masked URI are equal.
+ */
+public class NearDuplicateDetector {
+    public static final double DEFAULT_THRESHOLD = 0.9;
+    /** Placeholder the LLM is asked to use for the entity in a cluster template */
+    public static final String ENTITY_PLACEHOLDER = "{{entity}}";
+
+    private static final int SHINGLE_SIZE = 5;
+    private static final int MIN_ENTITY_LENGTH = 3;
+    private static final int BANDS = 16;
+    private static final int ROWS = 4;
+    private static final int NUM_HASHES = BANDS * ROWS;
+    private static final Pattern TOKEN = Pattern.compile("\"(?:\\\\.|[^\"\\\\])*\"|[A-Za-z_$][A-Za-z0-9_$]*|\\d+|\\S");
+    private static final long[] SEEDS = new long[NUM_HASHES];
+
+    static {
+        Random random = new Random(0x5eed);
+        for (int i = 0; i < NUM_HASHES; i++) SEEDS[i] = random.nextLong();
+    }
+
+    private final double threshold;
+
+    public NearDuplicateDetector(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Groups the contexts into clusters of indices into {@code contexts}, representative first.
+     * Every context appears in exactly one cluster; endpoints without an entity name stay alone.
+     */
+    public List<List<Integer>> cluster(List<EndpointContext> contexts) {
+        List<List<Integer>> clusters = new ArrayList<>();
+        List<long[]> repSignatures = new ArrayList<>();
+        List<String> repKeys = new ArrayList<>();
+        Map<Long, List<Integer>> buckets = new HashMap<>();
+
+        for (int i = 0; i < contexts.size(); i++) {
+            EndpointContext ctx = contexts.get(i);
+            String entity = ctx.getEntityName();
+            if (entity == null || entity.length() < MIN_ENTITY_LENGTH) {
+                clusters.add(new ArrayList<>(List.of(i)));
+                repSignatures.add(null);
+                repKeys.add(null);
+                continue;
+            }
+            long[] signature = signature(shingles(tokens(ctx)));
+            String key = ctx.getHttpMethod() + " " + mask(ctx.getUri(), entity);
+
+            Set<Integer> candidates = new HashSet<>();
+            for (int b = 0; b < BANDS; b++) {
+                candidates.addAll(buckets.getOrDefault(bandKey(signature, b), List.of()));
+            }
+            int match = -1;
+            double best = threshold;
+            for (int c : candidates) {
+                if (!key.equals(repKeys.get(c))) continue;
+                double similarity = similarity(signature, repSignatures.get(c));
+                if (similarity >= best) {
+                    best = similarity;
+                    match = c;
+                }
+            }
+            if (match >= 0) {
+                clusters.get(match).add(i);
+                continue;
+            }
+            int id = clusters.size();
+            clusters.add(new ArrayList<>(List.of(i)));
+            repSignatures.add(signature);
+            repKeys.add(key);
+            for (int b = 0; b < BANDS; b++) {
+                buckets.computeIfAbsent(bandKey(signature, b), k -> new ArrayList<>()).add(id);
+            }
+        }
+        return clusters;
+    }
+
+    /**
+     * Adapts a representative's result to another endpoint of its cluster: replaces the
+     * placeholder with the entity's localized name, or, if the LLM did not use the placeholder,
+     * substitutes the representative's entity names.
+     */
+    public static BusinessSemantic instantiate(BusinessSemantic template, String templateEntity, String entity) {
+        if (template == null) return null;
+        Map<String, String> names = template.getEntityNames() != null ? template.getEntityNames() : Map.of();
+        BusinessSemantic s = new BusinessSemantic();
+        s.setFunction(substitute(template.getFunction(), templateEntity, entity, names));
+        s.setScenario(substitute(template.getScenario(), templateEntity, entity, names));
+        s.setImplementationNotes(substitute(template.getImplementationNotes(), templateEntity, entity, names));
+        s.setCautions(substitute(template.getCautions(), templateEntity, entity, names));
+        return s;
+    }
+
+    private static String substitute(String text, String templateEntity, String entity, Map<String, String> names) {
+        if (text == null) return null;
+        String localized = names.getOrDefault(entity, entity);
+        if (text.contains(ENTITY_PLACEHOLDER)) {
+            return text.replace(ENTITY_PLACEHOLDER, localized);
+        }
+        if (templateEntity.equals(entity)) return text;
+        String templateLocalized = names.get(templateEntity);
+        if (templateLocalized != null && !templateLocalized.isBlank()) {
+            text = text.replace(templateLocalized, localized);
+        }
+        return replaceIgnoreCase(text, templateEntity, entity);
+    }
+
+    /**
+     * Replaces the entity in any casing, keeping a leading capital when the original had one.
+     * Only whole identifier parts match: "order", "orderId" and "getOrder" but not "reorder"
+     * or "Orders"; the boundary classes stay case-sensitive to tell camel case apart.
+     */
+    private static String replaceIgnoreCase(String text, String from, String to) {
+        Matcher m = Pattern.compile("(?:(?<![A-Za-z])|(?<=[a-z])(?=[A-Z]))(?i:" + Pattern.quote(from) + ")(?![a-z])")
+                .matcher(text);
+        StringBuilder sb = new StringBuilder();
+        while (m.find()) {
+            String found = m.group();
+            String replacement = Character.isUpperCase(found.charAt(0))
+                    ? Character.toUpperCase(to.charAt(0)) + to.substring(1)
+                    : Character.toLowerCase(to.charAt(0)) + to.substring(1);
+            m.appendReplacement(sb, Matcher.quoteReplacement(replacement));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    static List<String> tokens(EndpointContext ctx) {
+        String entity = ctx.getEntityName();
+        StringBuilder text = new StringBuilder();
+        text.append(ctx.getHttpMethod()).append(' ').append(ctx.getUri()).append(' ')
+                .append(ctx.getMethodName()).append(' ').append(ctx.getReturnType()).append(' ');
+        if (ctx.getParameterTypes() != null) text.append(String.join(" ", ctx.getParameterTypes())).append(' ');
+        if (ctx.getMethodBodySnippet() != null) text.append(ctx.getMethodBodySnippet()).append(' ');
+        if (ctx.getCallChainSnippet() != null) text.append(ctx.getCallChainSnippet()).append(' ');
+        if (ctx.getSharedCallChainSnippet() != null) text.append(ctx.getSharedCallChainSnippet());
+
+        List<String> tokens = new ArrayList<>();
+        Matcher m = TOKEN.matcher(mask(text.toString(), entity));
+        while (m.find()) {
+            String t = m.group();
+            if (t.startsWith("\"")) tokens.add("§s");
+            else if (Character.isDigit(t.charAt(0))) tokens.add("§n");
+            else tokens.add(t);
+        }
+        return tokens;
+    }
+
+    /** Masks the entity name in any casing, so {@code findUserById} and {@code findOrderById} match */
+    static String mask(String text, String entity) {
+        if (text == null) return "";
+        return Pattern.compile(Pattern.quote(entity), Pattern.CASE_INSENSITIVE).matcher(text).replaceAll("§E");
+    }
+
+    private static Set<Long> shingles(List<String> tokens) {
+        Set<Long> shingles = new HashSet<>();
+        if (tokens.size() < SHINGLE_SIZE) {
+            shingles.add(hash(tokens, 0, tokens.size()));
+            return shingles;
+        }
+        for (int i = 0; i + SHINGLE_SIZE <= tokens.size(); i++) {
+            shingles.add(hash(tokens, i, i + SHINGLE_SIZE));
+        }
+        return shingles;
+    }
+
+    private static long hash(List<String> tokens, int from, int to) {
+        long h = 1125899906842597L;
+        for (int i = from; i < to; i++) {
+            h = 31 * h + tokens.get(i).hashCode();
+        }
+        return h;
+    }
+
+    private static long[] signature(Set<Long> shingles) {
+        long[] sig = new long[NUM_HASHES];
+        Arrays.fill(sig, Long.MAX_VALUE);
+        for (long s : shingles) {
+            for (int i = 0; i < NUM_HASHES; i++) {
+                long h = mix(s ^ SEEDS[i]);
+                if (h < sig[i]) sig[i] = h;
+            }
+        }
+        return sig;
+    }
+
+    /** SplitMix64 finalizer */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long bandKey(long[] sig, int band) {
+        long h = band;
+        for (int r = 0; r < ROWS; r++) {
+            h = mix(h ^ sig[band * ROWS + r]);
+        }
+        return h;
+    }
+
+    private static double similarity(long[] a, long[] b) {
+        int same = 0;
+        for (int i = 0; i < NUM_HASHES; i++) {
+            if (a[i] == b[i]) same++;
+        }
+        return same / (double) NUM_HASHES;
+    }
+}
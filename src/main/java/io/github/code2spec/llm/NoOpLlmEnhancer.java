@@ -2,6 +2,12 @@ package io.github.code2spec.llm;
 
 import io.github.code2spec.core.model.BusinessSemantic;
 import io.github.code2spec.core.model.ErrorCode;
+import io.github.code2spec.core.model.ErrorEnhancement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * No-op LLM enhancer when API is not configured.
@@ -17,6 +23,26 @@ public class NoOpLlmEnhancer implements LlmEnhancer {
         // no-op
     }
 
+    @Override
+    public void enhanceErrorCodes(List<ErrorCode> errorCodes, List<ErrorCodeContext> contexts) {
+        // no-op
+    }
+
+    @Override
+    public CompletableFuture<BusinessSemantic> enhanceEndpointAsync(EndpointContext ctx) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<ErrorEnhancement> enhanceErrorCodeAsync(ErrorCodeContext ctx) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<List<ErrorEnhancement>> enhanceErrorCodesAsync(List<ErrorCodeContext> contexts) {
+        return CompletableFuture.completedFuture(new ArrayList<>(Collections.nCopies(contexts.size(), null)));
+    }
+
     @Override
     public boolean isEnabled() {
         return false;
@@ -2,37 +2,109 @@ package io.github.code2spec.llm;
 
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
 import okhttp3.*;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 
 /**
  * HTTP client for OpenAI-compatible chat API.
+ *
+ * <p>Requests are sent with OkHttp's non-blocking {@link Call#enqueue}; no thread is held
+ * while a request is in flight or waiting for a 429 retry. The number of concurrent requests
+ * is bounded by the dispatcher ({@link LlmConfig#getConcurrency()}).
+ *
+ * <p>Each request goes to a backend chosen by the {@link BackendPool}. With several backends a
+ * 429/5xx or transport failure is retried right away on another backend; with a single backend
+ * a 429 is retried after the server's {@code Retry-After}, or {@link LlmConfig#getLlmRetryWaitMs()}
+ * when it sends none.
+ *
+ * <p>With {@link LlmConfig#getHedgePercent()} &gt; 0 a request that has not answered within the
+ * observed p90 latency is duplicated, preferably on another backend; the first answer wins and
+ * the other call is cancelled. Hedges are capped at that percentage of all requests.
  */
 public class OpenAiClient {
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final Gson GSON = new Gson();
     private static final int MAX_RETRIES_ON_429 = 3;
+    private static final int HEDGE_PERCENTILE = 90;
+    private static final int HEDGE_MIN_SAMPLES = 20;
+    /** Smaller bodies are sent uncompressed; gzip would barely pay for its header */
+    private static final int GZIP_MIN_BYTES = 1024;
+    /**
+     * Connections shared by every client in the process. Idle connections are kept long
+     * enough to span pacing delays and 429 waits, so that calls through a proxy rarely pay for
+     * a new TLS handshake; with HTTP/2 one connection per backend carries all concurrent calls.
+     */
+    private static final ConnectionPool CONNECTION_POOL = new ConnectionPool(32, 5, TimeUnit.MINUTES);
+    private static final ScheduledExecutorService RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "llm-retry");
+        t.setDaemon(true);
+        return t;
+    });
     private final OkHttpClient httpClient;
-    private final String apiBaseUrl;
-    private final String apiKey;
-    private final String model;
+    private final BackendPool pool;
     private final int maxTokens;
     private final int retryWaitMs;
-    private final Gson gson = new Gson();
+    private final boolean stream;
+    private final int hedgePercent;
+    private final LatencyTracker latencies = new LatencyTracker(200, HEDGE_MIN_SAMPLES);
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong hedgeCount = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final boolean gzip;
+    private final ConnectionMetrics connectionMetrics = new ConnectionMetrics();
+    private volatile BooleanSupplier dispatchGate = () -> true;
 
     public OpenAiClient(LlmConfig config) {
-        this.apiBaseUrl = config.getApiBaseUrl().replaceAll("/$", "");
-        this.apiKey = config.getApiKey();
-        this.model = config.getModel();
+        this.pool = new BackendPool(config.getEffectiveBackends());
         this.maxTokens = config.getMaxTokens();
         this.retryWaitMs = config.getLlmRetryWaitMs();
+        this.stream = config.isStream();
+        this.hedgePercent = Math.max(0, Math.min(100, config.getHedgePercent()));
+        this.gzip = config.isGzipRequests();
 
+        Dispatcher dispatcher = new Dispatcher();
+        int concurrency = Math.max(1, config.getConcurrency());
+        dispatcher.setMaxRequests(concurrency);
+        dispatcher.setMaxRequestsPerHost(concurrency);
+
+        // readTimeout is an idle timeout between socket reads: in streaming mode every
+        // SSE chunk resets it, so long generations no longer fail as a whole
         OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .dispatcher(dispatcher)
+                .connectionPool(CONNECTION_POOL)
+                // HTTP/2 is negotiated via ALPN on TLS (also through a CONNECT proxy tunnel);
+                // plain-text backends stay on HTTP/1.1
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .eventListener(connectionMetrics)
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(60, TimeUnit.SECONDS)
                 .writeTimeout(60, TimeUnit.SECONDS);
@@ -62,53 +134,520 @@ public class OpenAiClient {
     }
 
     public ChatResult chat(List<ChatMessage> messages) throws IOException {
-        JsonObject body = new JsonObject();
-        body.addProperty("model", model);
-        body.addProperty("max_tokens", maxTokens);
-        body.add("messages", gson.toJsonTree(messages));
-
-        RequestBody requestBody = RequestBody.create(gson.toJson(body), JSON);
-        Request request = new Request.Builder()
-                .url(apiBaseUrl + "/chat/completions")
-                .addHeader("Authorization", "Bearer " + apiKey)
-                .addHeader("Content-Type", "application/json")
-                .post(requestBody)
-                .build();
-
-        for (int attempt = 0; attempt <= MAX_RETRIES_ON_429; attempt++) {
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (response.code() == 429 && attempt < MAX_RETRIES_ON_429) {
-                    response.close();
-                    System.err.println("        [LLM 429] 限流，第 " + (attempt + 1) + " 次重试，等待 " + retryWaitMs + " ms 后重试");
-                    Thread.sleep(retryWaitMs);
-                    continue;
+        return chat(messages, maxTokens);
+    }
+
+    /**
+     * Same as {@link #chat(List)} but with an explicit max_tokens, e.g. for batched prompts
+     * whose answer covers several items.
+     */
+    public ChatResult chat(List<ChatMessage> messages, int maxTokens) throws IOException {
+        try {
+            return chatAsync(messages, maxTokens).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for LLM response", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public CompletableFuture<ChatResult> chatAsync(List<ChatMessage> messages) {
+        return chatAsync(messages, maxTokens);
+    }
+
+    /**
+     * Sends the request without blocking. The future completes exceptionally with an
+     * {@link IOException} on failure; cancelling it cancels the underlying HTTP call.
+     */
+    public CompletableFuture<ChatResult> chatAsync(List<ChatMessage> messages, int maxTokens) {
+        return chatAsync(messages, maxTokens, null);
+    }
+
+    /**
+     * Same as {@link #chatAsync(List, int)} with a {@code response_format} (JSON mode or JSON
+     * schema). A backend that rejects it with 400/422 is asked again without it and is no longer
+     * sent one.
+     */
+    public CompletableFuture<ChatResult> chatAsync(List<ChatMessage> messages, int maxTokens, JsonObject responseFormat) {
+        ChatRequest request = new ChatRequest(messages, maxTokens, responseFormat);
+        requestCount.incrementAndGet();
+        CompletableFuture<ChatResult> primary = new CompletableFuture<>();
+        AtomicReference<BackendPool.Backend> primaryBackend = new AtomicReference<>();
+        send(request, 0, new HashSet<>(), primaryBackend, primary);
+        long hedgeDelay = hedgePercent > 0 ? latencies.percentile(HEDGE_PERCENTILE) : -1;
+        if (hedgeDelay < 0) return primary;
+
+        CompletableFuture<ChatResult> future = new CompletableFuture<>();
+        CompletableFuture<ChatResult> hedge = new CompletableFuture<>();
+        // Set once either the hedge is sent or the primary finished before it could be
+        AtomicBoolean hedgeDecided = new AtomicBoolean();
+        AtomicReference<Throwable> primaryError = new AtomicReference<>();
+        primary.whenComplete((r, t) -> {
+            if (t == null) {
+                future.complete(r);
+                hedge.cancel(false);
+                return;
+            }
+            primaryError.set(t);
+            if (hedgeDecided.compareAndSet(false, true) || hedge.isDone()) {
+                future.completeExceptionally(t);
+            }
+            // otherwise the running hedge decides the outcome
+        });
+        hedge.whenComplete((r, t) -> {
+            if (t == null) {
+                if (future.complete(r)) hedgeWins.incrementAndGet();
+                primary.cancel(false);
+            } else if (primary.isDone() && primaryError.get() != null) {
+                future.completeExceptionally(primaryError.get());
+            }
+        });
+        future.whenComplete((r, t) -> {
+            if (future.isCancelled()) {
+                primary.cancel(false);
+                hedge.cancel(false);
+            }
+        });
+        RETRY_SCHEDULER.schedule(() -> {
+            if (primary.isDone()) return;
+            // Hedging while calls are still queued in the dispatcher only adds load
+            if (httpClient.dispatcher().queuedCallsCount() > 0) return;
+            if ((hedgeCount.get() + 1) * 100 > (long) hedgePercent * requestCount.get()) return;
+            if (!hedgeDecided.compareAndSet(false, true)) return;
+            hedgeCount.incrementAndGet();
+            Set<BackendPool.Backend> exclude = new HashSet<>();
+            if (primaryBackend.get() != null) exclude.add(primaryBackend.get());
+            resend(request, 0, exclude, new AtomicReference<>(), hedge);
+        }, hedgeDelay, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    /**
+     * Gate checked before every retry, fallback, pool wait and hedge (the first send is up to
+     * the caller); while it returns false those requests complete with a CancellationException.
+     */
+    public void setDispatchGate(BooleanSupplier dispatchGate) {
+        this.dispatchGate = dispatchGate;
+    }
+
+    /**
+     * Cancels the calls still waiting in the dispatcher queue; their futures complete with a
+     * CancellationException. Returns the number of cancelled calls.
+     */
+    public int cancelQueued() {
+        List<Call> queued = httpClient.dispatcher().queuedCalls();
+        queued.forEach(Call::cancel);
+        return queued.size();
+    }
+
+    public BackendPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Connection reuse, protocol and request compression statistics for the run summary.
+     */
+    public List<String> connectionSummaryLines() {
+        return connectionMetrics.summaryLines();
+    }
+
+    ConnectionMetrics getConnectionMetrics() {
+        return connectionMetrics;
+    }
+
+    long getHedgeCount() {
+        return hedgeCount.get();
+    }
+
+    long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    /** HTTP calls currently executing in the dispatcher (cancelled ones drop out) */
+    int runningCalls() {
+        return httpClient.dispatcher().runningCallsCount();
+    }
+
+    /**
+     * Hedging statistics for the run summary.
+     */
+    public List<String> hedgeSummaryLines() {
+        long requests = requestCount.get();
+        long hedges = hedgeCount.get();
+        long p90 = latencies.percentile(HEDGE_PERCENTILE);
+        return List.of(
+                "请求数: " + requests + "，对冲请求: " + hedges
+                        + (requests > 0 ? String.format("（%.1f%%，上限 %d%%）", hedges * 100.0 / requests, hedgePercent) : ""),
+                "对冲先返回: " + hedgeWins.get() + "，当前 p90 耗时: " + (p90 < 0 ? "样本不足" : p90 + " ms"));
+    }
+
+    private record ChatRequest(List<ChatMessage> messages, int maxTokens, JsonObject responseFormat) {}
+
+    private Request buildRequest(BackendPool.Backend backend, ChatRequest request, boolean gzipBody) {
+        Buffer json = writeRequestJson(backend, request);
+        connectionMetrics.onRequestBody(json.size());
+        LlmBackendConfig config = backend.getConfig();
+        Request.Builder builder = new Request.Builder()
+                .url(config.getApiBaseUrl().replaceAll("/$", "") + "/chat/completions")
+                .addHeader("Content-Type", "application/json");
+        if (gzipBody) {
+            builder.addHeader("Content-Encoding", "gzip").post(new ChatRequestBody(gzip(json)));
+        } else {
+            builder.post(new ChatRequestBody(json));
+        }
+        if (config.getApiKey() != null && !config.getApiKey().isBlank()) {
+            builder.addHeader("Authorization", "Bearer " + config.getApiKey());
+        }
+        return builder.build();
+    }
+
+    /**
+     * Writes the request JSON with a streaming writer straight into an okio buffer: no JSON tree
+     * and no intermediate String. The body is buffered rather than written to the socket so that
+     * it goes out with a Content-Length; some OpenAI-compatible servers reject chunked uploads.
+     */
+    private Buffer writeRequestJson(BackendPool.Backend backend, ChatRequest request) {
+        Buffer buffer = new Buffer();
+        try (JsonWriter w = new JsonWriter(new OutputStreamWriter(buffer.outputStream(), StandardCharsets.UTF_8))) {
+            w.beginObject();
+            w.name("model").value(backend.getConfig().getModel());
+            w.name("max_tokens").value(request.maxTokens());
+            w.name("messages").beginArray();
+            for (ChatMessage m : request.messages()) {
+                w.beginObject().name("role").value(m.role).name("content").value(m.content).endObject();
+            }
+            w.endArray();
+            if (request.responseFormat() != null && !backend.isResponseFormatUnsupported()) {
+                w.name("response_format");
+                GSON.toJson(request.responseFormat(), w);
+            }
+            if (stream) {
+                w.name("stream").value(true);
+                w.name("stream_options").beginObject().name("include_usage").value(true).endObject();
+            }
+            w.endObject();
+        } catch (IOException e) {
+            // An in-memory buffer does not fail
+            throw new UncheckedIOException(e);
+        }
+        return buffer;
+    }
+
+    private static Buffer gzip(Buffer json) {
+        Buffer compressed = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(compressed))) {
+            sink.writeAll(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed;
+    }
+
+    /**
+     * Whether to gzip this request body: enabled, the backend has not rejected it and the
+     * body is large enough. Prompts are mostly code and compress to roughly a quarter.
+     */
+    private boolean shouldGzip(BackendPool.Backend backend, ChatRequest request) {
+        if (!gzip || backend.isGzipUnsupported()) return false;
+        long chars = 0;
+        for (ChatMessage m : request.messages()) chars += m.content != null ? m.content.length() : 0;
+        return chars >= GZIP_MIN_BYTES;
+    }
+
+    /**
+     * Request body backed by a serialized buffer; each write (OkHttp may retry on a fresh
+     * connection) shares the buffer's segments instead of copying bytes.
+     */
+    private static final class ChatRequestBody extends RequestBody {
+        private final Buffer json;
+
+        ChatRequestBody(Buffer json) {
+            this.json = json;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return JSON;
+        }
+
+        @Override
+        public long contentLength() {
+            return json.size();
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            json.copyTo(sink.getBuffer(), 0, json.size());
+            sink.emitCompleteSegments();
+        }
+    }
+
+    /**
+     * Retries, fallbacks, pool waits and hedges go through the dispatch gate: while it is closed
+     * the request completes with a {@link CancellationException} instead of being sent.
+     */
+    private void resend(ChatRequest request, int attempt, Set<BackendPool.Backend> failed,
+                        AtomicReference<BackendPool.Backend> current, CompletableFuture<ChatResult> future) {
+        if (!dispatchGate.getAsBoolean()) {
+            future.completeExceptionally(new CancellationException("LLM dispatch paused"));
+            return;
+        }
+        send(request, attempt, failed, current, future);
+    }
+
+    private void send(ChatRequest request, int attempt, Set<BackendPool.Backend> failed,
+                      AtomicReference<BackendPool.Backend> current, CompletableFuture<ChatResult> future) {
+        if (future.isDone()) return;
+        BackendPool.Backend backend = pool.acquire(failed);
+        if (backend == null) {
+            // Every backend is ejected, busy or rate limited: wait without consuming an attempt
+            RETRY_SCHEDULER.schedule(() -> resend(request, attempt, failed, current, future),
+                    pool.millisUntilAvailable(), TimeUnit.MILLISECONDS);
+            return;
+        }
+        current.set(backend);
+        boolean sentResponseFormat = request.responseFormat() != null && !backend.isResponseFormatUnsupported();
+        boolean sentGzip = shouldGzip(backend, request);
+        Call call = httpClient.newCall(buildRequest(backend, request, sentGzip));
+        future.whenComplete((r, t) -> {
+            if (future.isCancelled()) call.cancel();
+        });
+        long startMs = System.currentTimeMillis();
+        call.enqueue(new Callback() {
+            @Override
+            public void onFailure(Call call, IOException e) {
+                if (future.isDone()) {
+                    pool.onNeutral(backend);
+                    return;
                 }
-                if (!response.isSuccessful()) {
-                    String body = response.body() != null ? response.body().string() : "";
-                    throw new IOException("LLM API error: " + response.code() + " " + body);
+                if (call.isCanceled()) {
+                    // Dropped from the dispatcher queue by cancelQueued(), never reached the backend
+                    pool.onNeutral(backend);
+                    future.completeExceptionally(new CancellationException("LLM dispatch paused"));
+                    return;
+                }
+                pool.onFailure(backend);
+                System.err.println("        [LLM 请求失败] " + backend.label() + " 第 " + (attempt + 1) + "/" + (MAX_RETRIES_ON_429 + 1) + " 次尝试: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+                if (attempt < MAX_RETRIES_ON_429 && pool.hasAlternative(backend)) {
+                    failed.add(backend);
+                    resend(request, attempt + 1, failed, current, future);
+                    return;
+                }
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void onResponse(Call call, Response response) {
+                try (response) {
+                    int code = response.code();
+                    if (code == 429 || code >= 500) {
+                        pool.onFailure(backend);
+                        if (attempt < MAX_RETRIES_ON_429 && pool.hasAlternative(backend)) {
+                            System.err.println("        [LLM " + code + "] " + backend.label() + " 失败，切换到其他后端重试");
+                            failed.add(backend);
+                            resend(request, attempt + 1, failed, current, future);
+                            return;
+                        }
+                        if (code == 429) {
+                            if (attempt < MAX_RETRIES_ON_429) {
+                                long waitMs = retryAfterMs(response, retryWaitMs);
+                                System.err.println("        [LLM 429] 限流，第 " + (attempt + 1) + " 次重试，等待 " + waitMs + " ms 后重试");
+                                RETRY_SCHEDULER.schedule(() -> resend(request, attempt + 1, failed, current, future), waitMs, TimeUnit.MILLISECONDS);
+                                return;
+                            }
+                            future.completeExceptionally(new IOException("LLM API rate limited (429) after " + (MAX_RETRIES_ON_429 + 1) + " attempts"));
+                            return;
+                        }
+                        future.completeExceptionally(new IOException("LLM API error: " + code + " " + readErrorBody(response)));
+                        return;
+                    }
+                    // There is no way to ask whether a server accepts compressed bodies: a 415 or 400
+                    // turns gzip off for the backend. When response_format was sent too, gzip goes
+                    // first; a second 400 then points at response_format
+                    if (sentGzip && (code == 415 || code == 400)) {
+                        pool.onNeutral(backend);
+                        backend.setGzipUnsupported();
+                        System.err.println("        [LLM " + code + "] " + backend.label() + " 不接受 gzip 请求体，改为不压缩");
+                        resend(request, attempt, failed, current, future);
+                        return;
+                    }
+                    if ((code == 400 || code == 422) && sentResponseFormat) {
+                        pool.onNeutral(backend);
+                        backend.setResponseFormatUnsupported();
+                        System.err.println("        [LLM " + code + "] " + backend.label() + " 不支持 response_format，改为普通请求");
+                        resend(request, attempt, failed, current, future);
+                        return;
+                    }
+                    if (!response.isSuccessful()) {
+                        pool.onNeutral(backend);
+                        future.completeExceptionally(new IOException("LLM API error: " + code + " " + readErrorBody(response)));
+                        return;
+                    }
+                    ChatResult result;
+                    try {
+                        result = readResult(response).withBackend(backend.label());
+                    } catch (IOException e) {
+                        // A hedge loser cancelled mid-body says nothing about the backend
+                        if (future.isDone()) pool.onNeutral(backend);
+                        else pool.onFailure(backend);
+                        throw e;
+                    } catch (RuntimeException e) {
+                        pool.onNeutral(backend);
+                        throw e;
+                    }
+                    long latencyMs = System.currentTimeMillis() - startMs;
+                    pool.onSuccess(backend, latencyMs, result.promptTokens, result.completionTokens);
+                    latencies.record(latencyMs);
+                    future.complete(result);
+                } catch (IOException e) {
+                    if (!future.isDone()) {
+                        System.err.println("        [LLM 请求失败] " + backend.label() + " 第 " + (attempt + 1) + "/" + (MAX_RETRIES_ON_429 + 1) + " 次尝试: " + e.getClass().getSimpleName() + ": " + e.getMessage());
+                    }
+                    future.completeExceptionally(e);
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(new IOException("Malformed LLM API response: " + e.getMessage(), e));
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait requested by the server ({@code retry-after-ms}, or {@code Retry-After} in seconds),
+     * otherwise the configured default.
+     */
+    static long retryAfterMs(Response response, long defaultMs) {
+        try {
+            String ms = response.header("retry-after-ms");
+            if (ms != null) return Math.max(0, (long) Double.parseDouble(ms.trim()));
+            String seconds = response.header("Retry-After");
+            if (seconds != null) return Math.max(0, (long) (Double.parseDouble(seconds.trim()) * 1000));
+        } catch (NumberFormatException e) {
+            // HTTP-date form or garbage: fall back to the default
+        }
+        return defaultMs;
+    }
+
+    private static String readErrorBody(Response response) {
+        try {
+            return response.body() != null ? response.body().string() : "";
+        } catch (IOException e) {
+            return "";
+        }
+    }
+
+    private ChatResult readResult(Response response) throws IOException {
+        if (stream) {
+            // Measured from when the request actually left, not from when it was queued
+            return new SseChatReader().read(response.body().source(), response.sentRequestAtMillis());
+        }
+        try (JsonReader reader = new JsonReader(new InputStreamReader(response.body().byteStream(), StandardCharsets.UTF_8))) {
+            return readCompletion(reader);
+        } catch (MalformedJsonException e) {
+            // A bad body is the server's answer, not a transport failure
+            throw new JsonSyntaxException(e);
+        }
+    }
+
+    /**
+     * Reads a chat completion from the response stream, keeping only the first choice's content
+     * and the usage counters; everything else is skipped without being materialized.
+     */
+    static ChatResult readCompletion(JsonReader reader) throws IOException {
+        String content = null;
+        int[] usage = new int[3];
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "choices" -> {
+                    reader.beginArray();
+                    for (boolean first = true; reader.hasNext(); first = false) {
+                        if (first) content = readChoiceContent(reader);
+                        else reader.skipValue();
+                    }
+                    reader.endArray();
                 }
-                String responseBody = response.body().string();
-                JsonObject json = JsonParser.parseString(responseBody).getAsJsonObject();
-                String content = json.getAsJsonArray("choices")
-                        .get(0).getAsJsonObject()
-                        .getAsJsonObject("message")
-                        .get("content").getAsString();
-                int prompt = 0, completion = 0;
-                if (json.has("usage")) {
-                    JsonObject usage = json.getAsJsonObject("usage");
-                    if (usage.has("prompt_tokens")) prompt = usage.get("prompt_tokens").getAsInt();
-                    if (usage.has("completion_tokens")) completion = usage.get("completion_tokens").getAsInt();
+                case "usage" -> readUsage(reader, usage);
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (content == null) throw new JsonSyntaxException("no message content");
+        return new ChatResult(content, usage[0], usage[1], usage[2], -1, null);
+    }
+
+    private static String readChoiceContent(JsonReader reader) throws IOException {
+        String content = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!reader.nextName().equals("message")) {
+                reader.skipValue();
+                continue;
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (reader.nextName().equals("content") && reader.peek() == JsonToken.STRING) content = reader.nextString();
+                else reader.skipValue();
+            }
+            reader.endObject();
+        }
+        reader.endObject();
+        return content;
+    }
+
+    /** Fills prompt, completion and cached tokens, the same fields as {@link #cachedTokens(JsonObject)} */
+    private static void readUsage(JsonReader reader, int[] usage) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return;
+        }
+        int cacheHit = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "prompt_tokens" -> usage[0] = reader.nextInt();
+                case "completion_tokens" -> usage[1] = reader.nextInt();
+                case "prompt_cache_hit_tokens" -> cacheHit = reader.nextInt();
+                case "prompt_tokens_details" -> {
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        break;
+                    }
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (reader.nextName().equals("cached_tokens") && reader.peek() == JsonToken.NUMBER) usage[2] = reader.nextInt();
+                        else reader.skipValue();
+                    }
+                    reader.endObject();
                 }
-                return new ChatResult(content, prompt, completion);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new IOException("Interrupted while waiting for retry", e);
-            } catch (IOException e) {
-                System.err.println("        [LLM 请求失败] 第 " + (attempt + 1) + "/" + (MAX_RETRIES_ON_429 + 1) + " 次尝试: " + e.getClass().getSimpleName() + ": " + e.getMessage());
-                throw e;
+                default -> reader.skipValue();
             }
         }
-        throw new IOException("LLM API rate limited (429) after " + (MAX_RETRIES_ON_429 + 1) + " attempts");
+        reader.endObject();
+        if (usage[2] == 0) usage[2] = cacheHit;
+    }
+
+    /**
+     * Prompt tokens served from the provider's prompt cache: OpenAI reports
+     * {@code usage.prompt_tokens_details.cached_tokens}, DeepSeek {@code usage.prompt_cache_hit_tokens}.
+     */
+    static int cachedTokens(JsonObject usage) {
+        if (usage.has("prompt_tokens_details") && usage.get("prompt_tokens_details").isJsonObject()) {
+            JsonObject details = usage.getAsJsonObject("prompt_tokens_details");
+            if (details.has("cached_tokens") && !details.get("cached_tokens").isJsonNull()) {
+                return details.get("cached_tokens").getAsInt();
+            }
+        }
+        if (usage.has("prompt_cache_hit_tokens") && !usage.get("prompt_cache_hit_tokens").isJsonNull()) {
+            return usage.get("prompt_cache_hit_tokens").getAsInt();
+        }
+        return 0;
     }
 
     public static class ChatMessage {
@@ -125,11 +664,25 @@ public class OpenAiClient {
         public final String content;
         public final int promptTokens;
         public final int completionTokens;
+        /** Prompt tokens served from the provider's prompt cache, 0 if not reported */
+        public final int cachedTokens;
+        /** Time to first content token in streaming mode, -1 otherwise */
+        public final long timeToFirstTokenMs;
+        /** Label of the backend that answered, e.g. {@code gpt-4o-mini@api.openai.com}; set by the pool */
+        public final String backend;
 
-        public ChatResult(String content, int promptTokens, int completionTokens) {
+        public ChatResult(String content, int promptTokens, int completionTokens, int cachedTokens,
+                          long timeToFirstTokenMs, String backend) {
             this.content = content;
             this.promptTokens = promptTokens;
             this.completionTokens = completionTokens;
+            this.cachedTokens = cachedTokens;
+            this.timeToFirstTokenMs = timeToFirstTokenMs;
+            this.backend = backend;
+        }
+
+        ChatResult withBackend(String backend) {
+            return new ChatResult(content, promptTokens, completionTokens, cachedTokens, timeToFirstTokenMs, backend);
         }
     }
 }
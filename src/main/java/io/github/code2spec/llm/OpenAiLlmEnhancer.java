@@ -1,23 +1,43 @@
 package io.github.code2spec.llm;
 
-import com.google.gson.Gson;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import io.github.code2spec.ProgressReporter;
 import io.github.code2spec.core.model.BusinessSemantic;
 import io.github.code2spec.core.model.ErrorCode;
+import io.github.code2spec.core.model.ErrorEnhancement;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 /**
  * OpenAI-compatible LLM enhancer for business semantics and error codes.
+ *
+ * <p>All work goes through the non-blocking {@code *Async} methods; the blocking methods
+ * simply wait for them. Requests are paced so that consecutive dispatches are at least
+ * {@link LlmConfig#getLlmDelayMs()} apart, without sleeping on the caller thread.
  */
 public class OpenAiLlmEnhancer implements LlmEnhancer {
+    /** Rough completion budget per error code in a batched prompt (three short fields). */
+    static final int BATCH_TOKENS_PER_ERROR_CODE = 320;
+    /** Lower bound for the tighter max_tokens of a retry after an unparsable answer */
+    private static final int MIN_RETRY_MAX_TOKENS = 256;
+
     private final OpenAiClient client;
     private final LlmConfig config;
     private final ProgressReporter progressReporter;
-    private final Gson gson = new Gson();
+    private final LlmPrompts prompts;
+    private final LlmBudget budget;
+    private final LlmCircuitBreaker breaker;
+    private final Object pacingLock = new Object();
+    private long lastRequestSlotMs;
 
     public OpenAiLlmEnhancer(LlmConfig config) {
         this(config, null);
@@ -27,251 +47,309 @@ public class OpenAiLlmEnhancer implements LlmEnhancer {
         this.config = config;
         this.progressReporter = progressReporter;
         this.client = new OpenAiClient(config);
+        this.prompts = new LlmPrompts(config);
+        this.budget = new LlmBudget(config.getDeadlineSeconds(), config.getTokenBudget());
+        this.breaker = new LlmCircuitBreaker(config.getCircuitBreakerThreshold());
+        if (breaker.isEnabled()) client.setDispatchGate(() -> !breaker.isCoolingDown());
+        if (progressReporter != null && client.getPool().size() > 1) {
+            progressReporter.addSummarySection("LLM 后端", client.getPool()::summaryLines);
+        }
+        if (progressReporter != null && config.getHedgePercent() > 0) {
+            progressReporter.addSummarySection("LLM 对冲请求", client::hedgeSummaryLines);
+        }
+        if (progressReporter != null) {
+            progressReporter.addSummarySection("LLM 连接", client::connectionSummaryLines);
+        }
+        if (progressReporter != null && breaker.isEnabled()) {
+            progressReporter.addSummarySection("LLM 熔断", breaker::summaryLines);
+        }
+        if (progressReporter != null && budget.isLimited()) {
+            progressReporter.addSummarySection("LLM 时间/Token 预算", budget::summaryLines);
+        }
     }
 
     @Override
     public BusinessSemantic enhanceEndpoint(EndpointContext ctx) {
-        if (!isEnabled()) return null;
+        return enhanceEndpointAsync(ctx).join();
+    }
+
+    @Override
+    public CompletableFuture<BusinessSemantic> enhanceEndpointAsync(EndpointContext ctx) {
+        if (!isEnabled()) return CompletableFuture.completedFuture(null);
 
         long t0 = System.currentTimeMillis();
-        String prompt = buildEndpointPrompt(ctx);
-        List<OpenAiClient.ChatMessage> messages = List.of(
-                new OpenAiClient.ChatMessage("system", getEndpointSystemPrompt()),
-                new OpenAiClient.ChatMessage("user", prompt)
-        );
+        List<OpenAiClient.ChatMessage> messages = prompts.endpointMessages(ctx);
         if (progressReporter != null) progressReporter.verboseTiming("构建 prompt", System.currentTimeMillis() - t0);
 
-        try {
-            long t1 = System.currentTimeMillis();
-            delayBeforeLlmRequest();
-            if (progressReporter != null) progressReporter.verboseTiming("请求前延迟", System.currentTimeMillis() - t1);
-
-            long t2 = System.currentTimeMillis();
-            OpenAiClient.ChatResult result;
-            try {
-                result = client.chat(messages);
-            } catch (Exception e) {
-                long failDuration = System.currentTimeMillis() - t2;
-                if (progressReporter != null) {
-                    progressReporter.reportLlmFailure("端点", ctx.getHttpMethod() + " " + ctx.getUri(),
-                            buildLlmUri(), buildInputFromMessages(messages), failDuration, e);
-                } else {
-                    System.err.println("      [LLM 调用失败] 端点 " + ctx.getHttpMethod() + " " + ctx.getUri()
-                            + ": " + e.getClass().getSimpleName() + ": " + e.getMessage());
-                }
-                return null;
-            }
-            long llmDurationMs = System.currentTimeMillis() - t2;
-            if (progressReporter != null) progressReporter.verboseTiming("LLM 请求", llmDurationMs);
-
-            if (progressReporter != null) {
-                progressReporter.reportLlmCall("端点", ctx.getHttpMethod() + " " + ctx.getUri(),
-                        result.promptTokens, result.completionTokens);
-                progressReporter.verboseLlmDetail(
-                        buildLlmUri(),
-                        buildInputFromMessages(messages),
-                        result.content,
-                        llmDurationMs,
-                        result.promptTokens,
-                        result.completionTokens);
-            }
-
-            long t3 = System.currentTimeMillis();
-            BusinessSemantic semantic = parseBusinessSemantic(result.content);
-            if (progressReporter != null) progressReporter.verboseTiming("解析响应", System.currentTimeMillis() - t3);
-            return semantic;
-        } catch (Exception e) {
-            long failDuration = System.currentTimeMillis() - t0;
-            if (progressReporter != null) {
-                progressReporter.reportLlmFailure("端点", ctx.getHttpMethod() + " " + ctx.getUri(),
-                        buildLlmUri(), buildInputFromMessages(messages), failDuration, e);
-            } else {
-                System.err.println("      [LLM 调用失败] " + e.getClass().getSimpleName() + ": " + e.getMessage());
-            }
-            return null;
-        }
+        return callParsed("端点", ctx.getHttpMethod() + " " + ctx.getUri(), messages, config.getMaxTokens(),
+                prompts.endpointResponseFormat(ctx), this::parseBusinessSemantic, null);
     }
 
     @Override
     public void enhanceErrorCode(ErrorCode errorCode, ErrorCodeContext ctx) {
-        if (!isEnabled()) return;
+        ErrorEnhancement enhancement = enhanceErrorCodeAsync(ctx).join();
+        if (enhancement != null) enhancement.applyTo(errorCode);
+    }
+
+    @Override
+    public CompletableFuture<ErrorEnhancement> enhanceErrorCodeAsync(ErrorCodeContext ctx) {
+        if (!isEnabled()) return CompletableFuture.completedFuture(null);
 
         long t0 = System.currentTimeMillis();
-        String prompt = buildErrorCodePrompt(ctx);
-        List<OpenAiClient.ChatMessage> messages = List.of(
-                new OpenAiClient.ChatMessage("system", getErrorCodeSystemPrompt()),
-                new OpenAiClient.ChatMessage("user", prompt)
-        );
+        List<OpenAiClient.ChatMessage> messages = prompts.errorCodeMessages(ctx);
         if (progressReporter != null) progressReporter.verboseTiming("构建 prompt", System.currentTimeMillis() - t0);
 
-        try {
-            long t1 = System.currentTimeMillis();
-            delayBeforeLlmRequest();
-            if (progressReporter != null) progressReporter.verboseTiming("请求前延迟", System.currentTimeMillis() - t1);
-
-            long t2 = System.currentTimeMillis();
-            OpenAiClient.ChatResult result;
-            try {
-                result = client.chat(messages);
-            } catch (Exception e) {
-                long failDuration = System.currentTimeMillis() - t2;
-                if (progressReporter != null) {
-                    progressReporter.reportLlmFailure("错误码", errorCode.getCode(),
-                            buildLlmUri(), buildInputFromMessages(messages), failDuration, e);
-                } else {
-                    System.err.println("      [LLM 调用失败] 错误码 " + errorCode.getCode()
-                            + ": " + e.getClass().getSimpleName() + ": " + e.getMessage());
-                }
-                return;
-            }
-            long llmDurationMs = System.currentTimeMillis() - t2;
-            if (progressReporter != null) progressReporter.verboseTiming("LLM 请求", llmDurationMs);
-
-            if (progressReporter != null) {
-                progressReporter.reportLlmCall("错误码", errorCode.getCode(),
-                        result.promptTokens, result.completionTokens);
-                progressReporter.verboseLlmDetail(
-                        buildLlmUri(),
-                        buildInputFromMessages(messages),
-                        result.content,
-                        llmDurationMs,
-                        result.promptTokens,
-                        result.completionTokens);
-            }
-
-            long t3 = System.currentTimeMillis();
-            parseAndApplyErrorCodeEnhancement(result.content, errorCode);
-            if (progressReporter != null) progressReporter.verboseTiming("解析响应", System.currentTimeMillis() - t3);
-        } catch (Exception e) {
-            long failDuration = System.currentTimeMillis() - t0;
-            if (progressReporter != null) {
-                progressReporter.reportLlmFailure("错误码", errorCode.getCode(),
-                        buildLlmUri(), buildInputFromMessages(messages), failDuration, e);
-            } else {
-                System.err.println("      [LLM 调用失败] " + e.getClass().getSimpleName() + ": " + e.getMessage());
-            }
+        return callParsed("错误码", ctx.getCode(), messages, config.getMaxTokens(),
+                prompts.errorCodeResponseFormat(), this::parseErrorCodeEnhancement, null);
+    }
+
+    @Override
+    public void enhanceErrorCodes(List<ErrorCode> errorCodes, List<ErrorCodeContext> contexts) {
+        List<ErrorEnhancement> enhancements = enhanceErrorCodesAsync(contexts).join();
+        for (int i = 0; i < errorCodes.size(); i++) {
+            if (enhancements.get(i) != null) enhancements.get(i).applyTo(errorCodes.get(i));
         }
     }
 
     @Override
-    public boolean isEnabled() {
-        return config.isEnabled() && config.getApiKey() != null && !config.getApiKey().isBlank();
+    public CompletableFuture<List<ErrorEnhancement>> enhanceErrorCodesAsync(List<ErrorCodeContext> contexts) {
+        int batchSize = Math.max(1, config.getErrorCodeBatchSize());
+        List<CompletableFuture<List<ErrorEnhancement>>> chunks = new ArrayList<>();
+        for (int from = 0; from < contexts.size(); from += batchSize) {
+            List<ErrorCodeContext> chunk = contexts.subList(from, Math.min(contexts.size(), from + batchSize));
+            chunks.add(chunk.size() == 1
+                    ? enhanceErrorCodeAsync(chunk.get(0)).thenApply(e -> {
+                        List<ErrorEnhancement> single = new ArrayList<>();
+                        single.add(e);
+                        return single;
+                    })
+                    : enhanceErrorCodeBatchAsync(chunk));
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> {
+                    List<ErrorEnhancement> all = new ArrayList<>();
+                    chunks.forEach(c -> all.addAll(c.join()));
+                    return all;
+                });
     }
 
-    private String getEndpointSystemPrompt() {
-        return """
-            你是一个 REST API 文档专家。根据提供的 Java 接口代码上下文，生成结构化的业务语义描述。
-            输出必须是合法的 JSON，且只包含以下字段（均为字符串，可为空）：
-            - function: 功能概述（一句话说明接口做什么）
-            - scenario: 业务场景（典型使用场景，如：用户登录、订单创建）
-            - implementationNotes: 实现要点（关键逻辑、校验规则、依赖服务）
-            - cautions: 注意事项（调用方需注意的事项）
-            不要输出任何其他文字，只输出 JSON。
-            """;
+    /**
+     * One LLM call for several error codes: the shared handler source is sent once and the
+     * model answers with a JSON object keyed by code. Codes missing from the answer fall back
+     * to a single-code call.
+     */
+    private CompletableFuture<List<ErrorEnhancement>> enhanceErrorCodeBatchAsync(List<ErrorCodeContext> contexts) {
+        if (!isEnabled()) return CompletableFuture.completedFuture(new ArrayList<>(Collections.nCopies(contexts.size(), null)));
+        String target = String.join(", ", contexts.stream().map(ErrorCodeContext::getCode).toList());
+
+        long t0 = System.currentTimeMillis();
+        List<OpenAiClient.ChatMessage> messages = prompts.errorCodeBatchMessages(contexts);
+        if (progressReporter != null) progressReporter.verboseTiming("构建 prompt", System.currentTimeMillis() - t0);
+
+        int batchMaxTokens = Math.max(config.getMaxTokens(), contexts.size() * BATCH_TOKENS_PER_ERROR_CODE);
+        // An answer that stays unparsable after the retry falls back to single-code calls (empty map)
+        return callParsed("错误码(批量)", target, messages, batchMaxTokens,
+                prompts.errorCodeBatchResponseFormat(), this::parseErrorCodeBatch, Map.<String, ErrorEnhancement>of())
+                .thenCompose(byCode -> {
+                    List<CompletableFuture<ErrorEnhancement>> items = new ArrayList<>();
+                    if (byCode == null) {
+                        // The whole batch failed; do not retry each code against a failing backend
+                        contexts.forEach(c -> items.add(CompletableFuture.completedFuture(null)));
+                    } else {
+                        for (ErrorCodeContext ctx : contexts) {
+                            ErrorEnhancement e = byCode.get(ctx.getCode());
+                            items.add(e != null ? CompletableFuture.completedFuture(e) : enhanceErrorCodeAsync(ctx));
+                        }
+                    }
+                    return CompletableFuture.allOf(items.toArray(new CompletableFuture<?>[0]))
+                            .thenApply(v -> items.stream().map(CompletableFuture::join).toList());
+                });
     }
 
-    private String buildEndpointPrompt(EndpointContext ctx) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("接口信息：\n");
-        sb.append("- URI: ").append(ctx.getHttpMethod()).append(" ").append(ctx.getUri()).append("\n");
-        sb.append("- 方法名: ").append(ctx.getMethodName()).append("\n");
-        if (ctx.getJavadoc() != null && !ctx.getJavadoc().isBlank()) {
-            sb.append("- Javadoc: ").append(ctx.getJavadoc()).append("\n");
-        }
-        if (ctx.getParameterTypes() != null && !ctx.getParameterTypes().isEmpty()) {
-            sb.append("- 参数类型: ").append(String.join(", ", ctx.getParameterTypes())).append("\n");
-        }
-        if (ctx.getReturnType() != null) {
-            sb.append("- 返回类型: ").append(ctx.getReturnType()).append("\n");
-        }
-        int methodBodyMax = config.getMethodBodyMaxChars();
-        if (ctx.getMethodBodySnippet() != null && !ctx.getMethodBodySnippet().isBlank()) {
-            sb.append("- 方法体片段:\n```\n").append(truncate(ctx.getMethodBodySnippet(), methodBodyMax)).append("\n```\n");
-        }
-        int callChainMax = config.getCallChainMaxChars();
-        if (callChainMax > 0 && ctx.getCalledMethodNames() != null && !ctx.getCalledMethodNames().isEmpty()) {
-            sb.append("- 调用的方法: ").append(String.join(", ", ctx.getCalledMethodNames())).append("\n");
-        }
-        if (callChainMax > 0 && ctx.getCallChainSnippet() != null && !ctx.getCallChainSnippet().isBlank()) {
-            sb.append("- 完整调用链代码:\n```\n").append(truncate(ctx.getCallChainSnippet(), callChainMax)).append("\n```\n");
-        }
-        sb.append("\n请生成 JSON 格式的业务语义描述。");
-        return sb.toString();
+    /**
+     * Sends a request and parses the answer. An answer the parser cannot use (null) is counted
+     * and asked once more with a tighter max_tokens and a JSON-only reminder; if that fails too
+     * the future completes with {@code unparsable}. Completes with null when the call itself failed.
+     */
+    private <T> CompletableFuture<T> callParsed(String type, String target, List<OpenAiClient.ChatMessage> messages,
+                                                int maxTokens, JsonObject responseFormat, Function<String, T> parser,
+                                                T unparsable) {
+        return call(type, target, messages, maxTokens, responseFormat)
+                .thenCompose(result -> {
+                    if (result == null) return CompletableFuture.<T>completedFuture(null);
+                    T parsed = parseTimed(parser, result.content);
+                    if (parsed != null) return CompletableFuture.completedFuture(parsed);
+                    reportParseFailure(type, target, true);
+                    int tighter = Math.max(MIN_RETRY_MAX_TOKENS, maxTokens / 2);
+                    return call(type, target, withJsonReminder(messages), tighter, responseFormat)
+                            .thenApply(retry -> {
+                                if (retry == null) return null;
+                                T again = parseTimed(parser, retry.content);
+                                if (again != null) return again;
+                                reportParseFailure(type, target, false);
+                                return unparsable;
+                            });
+                });
     }
 
-    private BusinessSemantic parseBusinessSemantic(String response) {
-        try {
-            String json = extractJson(response);
-            JsonObject obj = JsonParser.parseString(json).getAsJsonObject();
-            BusinessSemantic s = new BusinessSemantic();
-            s.setFunction(getString(obj, "function"));
-            s.setScenario(getString(obj, "scenario"));
-            s.setImplementationNotes(getString(obj, "implementationNotes"));
-            s.setCautions(getString(obj, "cautions"));
-            return s;
-        } catch (Exception e) {
-            return null;
+    private <T> T parseTimed(Function<String, T> parser, String content) {
+        long t0 = System.currentTimeMillis();
+        T parsed = parser.apply(content);
+        if (progressReporter != null) progressReporter.verboseTiming("解析响应", System.currentTimeMillis() - t0);
+        return parsed;
+    }
+
+    private void reportParseFailure(String type, String target, boolean retrying) {
+        if (progressReporter != null) {
+            progressReporter.onLlmParseFailure(type, target, retrying);
+        } else {
+            System.err.println("      [LLM 输出解析失败] " + type + " " + target);
         }
     }
 
-    private String getErrorCodeSystemPrompt() {
-        return """
-            你是一个 REST API 错误处理专家。根据提供的错误码和代码上下文，生成根因描述和处理建议。
-            输出必须是合法的 JSON，且只包含以下字段（均为字符串，可为空）：
-            - rootCause: 根因描述（导致该错误的典型原因，从业务层面说明）
-            - handlingSuggestion: 处理建议（API 调用方应如何应对：重试、参数修正、联系支持等）
-            - prevention: 预防建议（如何避免触发该错误）
-            不要输出任何其他文字，只输出 JSON。
-            """;
+    private static List<OpenAiClient.ChatMessage> withJsonReminder(List<OpenAiClient.ChatMessage> messages) {
+        List<OpenAiClient.ChatMessage> copy = new ArrayList<>(messages);
+        OpenAiClient.ChatMessage last = copy.get(copy.size() - 1);
+        copy.set(copy.size() - 1, new OpenAiClient.ChatMessage(last.role,
+                last.content + "\n\n注意：只输出一个 JSON 对象，不要输出任何其他文字，各字段保持简短。"));
+        return copy;
     }
 
-    private String buildErrorCodePrompt(ErrorCodeContext ctx) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("错误码信息：\n");
-        sb.append("- code: ").append(ctx.getCode()).append("\n");
-        sb.append("- message: ").append(ctx.getMessage()).append("\n");
-        sb.append("- HTTP Status: ").append(ctx.getHttpStatus()).append("\n");
-        sb.append("- 异常类型: ").append(ctx.getExceptionType()).append("\n");
-        if (ctx.getExceptionHandlerSnippet() != null && !ctx.getExceptionHandlerSnippet().isBlank()) {
-            sb.append("- 异常处理逻辑:\n```\n").append(truncate(ctx.getExceptionHandlerSnippet(), 800)).append("\n```\n");
+    /**
+     * Paces, sends and reports one chat request. Completes with null on failure (already reported).
+     */
+    private CompletableFuture<OpenAiClient.ChatResult> call(String type, String target, List<OpenAiClient.ChatMessage> messages,
+                                                            int maxTokens, JsonObject responseFormat) {
+        long t1 = System.currentTimeMillis();
+        long[] sentAt = new long[1];
+        LlmCircuitBreaker.Ticket[] ticket = new LlmCircuitBreaker.Ticket[1];
+        // Past the deadline or budget, or with the breaker open, remaining items are skipped
+        // without waiting for pacing
+        CompletableFuture<Void> slot = budget.isExhausted() || breaker.isOpen()
+                ? CompletableFuture.completedFuture(null) : awaitRequestSlot();
+        return slot
+                .thenCompose(v -> {
+                    if (!budget.tryAcquire()) return CompletableFuture.<OpenAiClient.ChatResult>completedFuture(null);
+                    ticket[0] = breaker.tryAcquire(type + " " + target);
+                    if (ticket[0] == null) {
+                        budget.release(0);
+                        return CompletableFuture.<OpenAiClient.ChatResult>completedFuture(null);
+                    }
+                    sentAt[0] = System.currentTimeMillis();
+                    if (progressReporter != null) progressReporter.verboseTiming("请求前延迟", sentAt[0] - t1);
+                    return client.chatAsync(messages, maxTokens, responseFormat)
+                            .whenComplete((r, t) -> {
+                                budget.release(messages, r);
+                                if (!(unwrap(t) instanceof CancellationException) && breaker.onResult(ticket[0], t == null)) {
+                                    // Calls queued behind the failures would only wait for the same timeouts
+                                    client.cancelQueued();
+                                }
+                            });
+                })
+                .handle((result, error) -> {
+                    long llmDurationMs = System.currentTimeMillis() - (sentAt[0] > 0 ? sentAt[0] : t1);
+                    if (error != null) {
+                        Throwable cause = unwrap(error);
+                        if (cause instanceof CancellationException) {
+                            breaker.recordSkipped(type + " " + target, ticket[0]);
+                            return null;
+                        }
+                        Exception e = cause instanceof Exception ex ? ex : new RuntimeException(cause);
+                        if (progressReporter != null) {
+                            progressReporter.reportLlmFailure(type, target,
+                                    buildLlmUri(), buildInputFromMessages(messages), llmDurationMs, e);
+                        } else {
+                            System.err.println("      [LLM 调用失败] " + type + " " + target
+                                    + ": " + e.getClass().getSimpleName() + ": " + e.getMessage());
+                        }
+                        return null;
+                    }
+                    if (result == null) return null;
+                    if (progressReporter != null) {
+                        progressReporter.verboseTiming("LLM 请求", llmDurationMs);
+                        progressReporter.reportLlmCall(type, target,
+                                result.promptTokens, result.completionTokens, result.cachedTokens);
+                        // The joined prompt is only built for verbose output
+                        if (progressReporter.isVerbose()) {
+                            progressReporter.verboseLlmDetail(
+                                    result.backend != null ? result.backend : buildLlmUri(),
+                                    buildInputFromMessages(messages),
+                                    result.content,
+                                    llmDurationMs,
+                                    result.promptTokens,
+                                    result.completionTokens,
+                                    result.timeToFirstTokenMs);
+                        }
+                    }
+                    return result;
+                });
+    }
+
+    private static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+
+    LlmCircuitBreaker getCircuitBreaker() {
+        return breaker;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return config.isEnabled() && config.hasApiAccess();
+    }
+
+    private BusinessSemantic parseBusinessSemantic(String response) {
+        LlmJsonReader.Result r = readJson(response);
+        if (r == null) return null;
+        BusinessSemantic s = new BusinessSemantic();
+        s.setFunction(r.getString("function"));
+        s.setScenario(r.getString("scenario"));
+        s.setImplementationNotes(r.getString("implementationNotes"));
+        s.setCautions(r.getString("cautions"));
+        if (s.getFunction() == null && s.getScenario() == null && s.getImplementationNotes() == null && s.getCautions() == null) {
+            return null;
         }
-        if (ctx.getThrowLocationSnippet() != null && !ctx.getThrowLocationSnippet().isBlank()) {
-            sb.append("- 抛出位置上下文:\n```\n").append(truncate(ctx.getThrowLocationSnippet(), 800)).append("\n```\n");
+        Map<String, Object> names = r.getObject("entityNames");
+        if (names != null) {
+            Map<String, String> entityNames = new LinkedHashMap<>();
+            names.forEach((k, v) -> {
+                if (v instanceof String str) entityNames.put(k, str);
+            });
+            s.setEntityNames(entityNames);
         }
-        sb.append("\n请生成 JSON 格式的根因描述和处理建议。");
-        return sb.toString();
+        return s;
     }
 
-    private void parseAndApplyErrorCodeEnhancement(String response, ErrorCode errorCode) {
-        try {
-            String json = extractJson(response);
-            JsonObject obj = JsonParser.parseString(json).getAsJsonObject();
-            errorCode.setRootCause(getString(obj, "rootCause"));
-            errorCode.setHandlingSuggestion(getString(obj, "handlingSuggestion"));
-            errorCode.setPrevention(getString(obj, "prevention"));
-        } catch (Exception ignored) {
+    /** Null when nothing usable was answered, so that the call is retried */
+    private Map<String, ErrorEnhancement> parseErrorCodeBatch(String response) {
+        LlmJsonReader.Result r = readJson(response);
+        if (r == null) return null;
+        Map<String, ErrorEnhancement> byCode = new LinkedHashMap<>();
+        for (String code : r.values().keySet()) {
+            Map<String, Object> obj = r.getObject(code);
+            ErrorEnhancement e = obj != null ? toErrorEnhancement(obj) : null;
+            if (e != null) byCode.put(code, e);
         }
+        return byCode.isEmpty() ? null : byCode;
     }
 
-    private String getString(JsonObject obj, String key) {
-        if (!obj.has(key)) return null;
-        var el = obj.get(key);
-        return el == null || el.isJsonNull() ? null : el.getAsString();
+    private ErrorEnhancement parseErrorCodeEnhancement(String response) {
+        LlmJsonReader.Result r = readJson(response);
+        return r != null ? toErrorEnhancement(r.values()) : null;
     }
 
-    private String extractJson(String text) {
-        text = text.trim();
-        int start = text.indexOf('{');
-        int end = text.lastIndexOf('}');
-        if (start >= 0 && end > start) {
-            return text.substring(start, end + 1);
-        }
-        return text;
+    private ErrorEnhancement toErrorEnhancement(Map<String, Object> obj) {
+        String rootCause = obj.get("rootCause") instanceof String v ? v : null;
+        String handling = obj.get("handlingSuggestion") instanceof String v ? v : null;
+        String prevention = obj.get("prevention") instanceof String v ? v : null;
+        if (rootCause == null && handling == null && prevention == null) return null;
+        return new ErrorEnhancement(rootCause, handling, prevention);
     }
 
-    private String truncate(String s, int maxLen) {
-        if (s == null) return "";
-        return s.length() <= maxLen ? s : s.substring(0, maxLen) + "...";
+    private LlmJsonReader.Result readJson(String response) {
+        LlmJsonReader.Result r = LlmJsonReader.read(response);
+        if (r != null && r.repaired() && progressReporter != null) progressReporter.onLlmJsonRepaired();
+        return r;
     }
 
     private String buildLlmUri() {
@@ -290,15 +368,20 @@ public class OpenAiLlmEnhancer implements LlmEnhancer {
         return sb.toString().trim();
     }
 
-    private void delayBeforeLlmRequest() {
+    /**
+     * Reserves the next dispatch slot: the first request waits llmDelayMs as before, later ones
+     * are spaced llmDelayMs apart. Completes on a timer instead of sleeping.
+     */
+    private CompletableFuture<Void> awaitRequestSlot() {
         int ms = config.getLlmDelayMs();
-        if (ms > 0) {
-            try {
-                Thread.sleep(ms);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new RuntimeException("Interrupted while waiting before LLM request", e);
-            }
+        if (ms <= 0) return CompletableFuture.completedFuture(null);
+        long waitMs;
+        synchronized (pacingLock) {
+            long now = System.currentTimeMillis();
+            long slot = Math.max(now + ms, lastRequestSlotMs + ms);
+            lastRequestSlotMs = slot;
+            waitMs = slot - now;
         }
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(waitMs, TimeUnit.MILLISECONDS));
     }
 }
@@ -0,0 +1,129 @@
+package io.github.code2spec.llm;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import okio.BufferedSource;
+
+import java.io.IOException;
+
+/**
+ * Reads a streamed (server-sent events) OpenAI-compatible chat completion.
+ *
+ * <p>Content deltas are accumulated as they arrive. Since every prompt asks for a single
+ * JSON object, content after the first complete top-level object is ignored and only a few
+ * more events are read, to pick up the usage chunk the server sends last
+ * ({@code stream_options.include_usage}); the caller then closes the response, which cancels
+ * whatever the model is still generating. Usage stays 0 when it is not among those events.
+ */
+public class SseChatReader {
+    private static final String DATA_PREFIX = "data:";
+    private static final String DONE = "[DONE]";
+    /** Events still read after the JSON object is complete, looking for usage */
+    private static final int MAX_TRAILING_EVENTS = 4;
+
+    private final StringBuilder content = new StringBuilder();
+    private int promptTokens;
+    private int cachedTokens;
+    private int completionTokens;
+    private long firstTokenAtMs = -1;
+
+    // Brace tracking for early stop, fed only with content characters
+    private int depth;
+    private boolean started;
+    private boolean inString;
+    private boolean escaped;
+    private boolean jsonComplete;
+
+    /**
+     * Reads events until [DONE], end of stream, or shortly after a complete JSON object.
+     *
+     * @param startMs wall-clock time the request was sent, for time-to-first-token
+     */
+    public OpenAiClient.ChatResult read(BufferedSource source, long startMs) throws IOException {
+        String line;
+        int trailingEvents = 0;
+        while ((line = source.readUtf8Line()) != null) {
+            if (!line.startsWith(DATA_PREFIX)) continue;
+            String data = line.substring(DATA_PREFIX.length()).trim();
+            if (data.isEmpty()) continue;
+            if (DONE.equals(data)) break;
+            if (jsonComplete && ++trailingEvents > MAX_TRAILING_EVENTS) break;
+            onEvent(data);
+            if (jsonComplete && promptTokens > 0) break;
+        }
+        long ttft = firstTokenAtMs >= 0 ? firstTokenAtMs - startMs : -1;
+        return new OpenAiClient.ChatResult(content.toString(), promptTokens, completionTokens, cachedTokens, ttft, null);
+    }
+
+    /**
+     * Whether the content holds a complete JSON object (anything after it was dropped).
+     */
+    public boolean isJsonComplete() {
+        return jsonComplete;
+    }
+
+    private void onEvent(String data) {
+        JsonObject chunk;
+        try {
+            chunk = JsonParser.parseString(data).getAsJsonObject();
+        } catch (Exception e) {
+            return;
+        }
+        if (chunk.has("usage") && chunk.get("usage").isJsonObject()) {
+            JsonObject usage = chunk.getAsJsonObject("usage");
+            if (usage.has("prompt_tokens")) promptTokens = usage.get("prompt_tokens").getAsInt();
+            if (usage.has("completion_tokens")) completionTokens = usage.get("completion_tokens").getAsInt();
+            cachedTokens = OpenAiClient.cachedTokens(usage);
+        }
+        JsonArray choices = chunk.has("choices") && chunk.get("choices").isJsonArray() ? chunk.getAsJsonArray("choices") : null;
+        if (choices == null || choices.isEmpty()) return;
+        JsonObject choice = choices.get(0).getAsJsonObject();
+        if (!choice.has("delta") || !choice.get("delta").isJsonObject()) return;
+        JsonElement deltaContent = choice.getAsJsonObject("delta").get("content");
+        if (deltaContent == null || deltaContent.isJsonNull()) return;
+        String delta = deltaContent.getAsString();
+        if (delta.isEmpty()) return;
+        if (firstTokenAtMs < 0) firstTokenAtMs = System.currentTimeMillis();
+        append(delta);
+    }
+
+    private void append(String delta) {
+        if (jsonComplete) return;
+        for (int i = 0; i < delta.length() && !jsonComplete; i++) {
+            char c = delta.charAt(i);
+            content.append(c);
+            track(c);
+        }
+    }
+
+    private void track(char c) {
+        if (inString) {
+            if (escaped) {
+                escaped = false;
+            } else if (c == '\\') {
+                escaped = true;
+            } else if (c == '"') {
+                inString = false;
+            }
+            return;
+        }
+        if (!started) {
+            if (c == '{') {
+                started = true;
+                depth = 1;
+            }
+            return;
+        }
+        switch (c) {
+            case '"' -> inString = true;
+            case '{', '[' -> depth++;
+            case '}', ']' -> {
+                depth--;
+                if (depth == 0) jsonComplete = true;
+            }
+            default -> { }
+        }
+    }
+}
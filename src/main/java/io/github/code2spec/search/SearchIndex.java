@@ -0,0 +1,172 @@
+package io.github.code2spec.search;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Memory-mapped BM25 index over RAG documents, written next to them as {@code search.idx}.
+ *
+ * <p>Layout (big-endian): a header (magic {@code "C2SB"}, version, document and term counts,
+ * average document length, section offsets); a document table of 28-byte entries (length in
+ * terms, then offset and length of id, type and title); a term table of 20-byte entries sorted by
+ * the term's UTF-8 bytes (term offset and length, document frequency, postings offset and
+ * length); the strings; and the postings as varint doc id gaps and term frequencies. A query
+ * binary-searches the term table and reads only the postings of its own terms.
+ */
+public final class SearchIndex {
+    public static final String FILE_NAME = "search.idx";
+
+    static final int MAGIC = 0x43325342;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 36;
+    static final int DOC_ENTRY_SIZE = 28;
+    static final int TERM_ENTRY_SIZE = 20;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    private final MappedByteBuffer buf;
+    private final int docCount;
+    private final int termCount;
+    private final float avgDocLength;
+    private final int docTableOffset;
+    private final int termTableOffset;
+    private final int stringsOffset;
+    private final int postingsOffset;
+
+    /**
+     * @param score BM25 score, higher is better
+     */
+    public record Hit(String id, String type, String title, double score) {
+    }
+
+    private SearchIndex(MappedByteBuffer buf) {
+        this.buf = buf;
+        this.docCount = buf.getInt(8);
+        this.termCount = buf.getInt(12);
+        this.avgDocLength = buf.getFloat(16);
+        this.docTableOffset = buf.getInt(20);
+        this.termTableOffset = buf.getInt(24);
+        this.stringsOffset = buf.getInt(28);
+        this.postingsOffset = buf.getInt(32);
+    }
+
+    public static SearchIndex open(Path file) throws IOException {
+        MappedByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("文件超过 2 GB，无法映射: " + file);
+            }
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buf.capacity() < HEADER_SIZE || buf.getInt(0) != MAGIC) {
+            throw new IOException("不是有效的检索索引文件: " + file);
+        }
+        if (buf.getInt(4) != VERSION) {
+            throw new IOException("不支持的检索索引版本: " + buf.getInt(4));
+        }
+        return new SearchIndex(buf);
+    }
+
+    public int size() {
+        return docCount;
+    }
+
+    /**
+     * Returns up to {@code k} documents ranked by BM25; documents sharing no term with the query are not returned.
+     */
+    public List<Hit> search(String query, int k) {
+        Map<String, Integer> queryTerms = new HashMap<>();
+        for (String t : SearchTokenizer.tokenize(query)) queryTerms.merge(t, 1, Integer::sum);
+
+        double[] scores = new double[docCount];
+        boolean[] matched = new boolean[docCount];
+        for (Map.Entry<String, Integer> q : queryTerms.entrySet()) {
+            int term = findTerm(q.getKey().getBytes(StandardCharsets.UTF_8));
+            if (term < 0) continue;
+            int entry = termTableOffset + term * TERM_ENTRY_SIZE;
+            int df = buf.getInt(entry + 8);
+            double idf = Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+            int pos = postingsOffset + buf.getInt(entry + 12);
+            int end = pos + buf.getInt(entry + 16);
+            int doc = 0;
+            while (pos < end) {
+                int[] gap = readVarInt(pos);
+                int[] tf = readVarInt(gap[1]);
+                pos = tf[1];
+                doc += gap[0];
+                double norm = K1 * (1 - B + B * docLength(doc) / Math.max(avgDocLength, 1f));
+                scores[doc] += q.getValue() * idf * tf[0] * (K1 + 1) / (tf[0] + norm);
+                matched[doc] = true;
+            }
+        }
+
+        // Min-heap of the best k; on equal scores the earlier document ranks higher
+        PriorityQueue<Integer> top = new PriorityQueue<>((a, b) -> scores[a] != scores[b]
+                ? Double.compare(scores[a], scores[b]) : Integer.compare(b, a));
+        for (int d = 0; d < docCount; d++) {
+            if (!matched[d]) continue;
+            top.add(d);
+            if (top.size() > k) top.poll();
+        }
+        List<Hit> hits = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            int d = top.poll();
+            int entry = docTableOffset + d * DOC_ENTRY_SIZE;
+            hits.add(new Hit(string(entry + 4), string(entry + 12), string(entry + 20), scores[d]));
+        }
+        Collections.reverse(hits);
+        return hits;
+    }
+
+    private int findTerm(byte[] key) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Arrays.compareUnsigned(bytes(termTableOffset + mid * TERM_ENTRY_SIZE), key);
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    private int docLength(int doc) {
+        return buf.getInt(docTableOffset + doc * DOC_ENTRY_SIZE);
+    }
+
+    /** Bytes of the string whose offset and length are stored at {@code pos} */
+    private byte[] bytes(int pos) {
+        byte[] b = new byte[buf.getInt(pos + 4)];
+        buf.get(stringsOffset + buf.getInt(pos), b);
+        return b;
+    }
+
+    private String string(int pos) {
+        return new String(bytes(pos), StandardCharsets.UTF_8);
+    }
+
+    /** Value and the position after it */
+    private int[] readVarInt(int pos) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get(pos++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return new int[]{value, pos};
+    }
+}
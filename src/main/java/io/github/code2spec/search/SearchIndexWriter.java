@@ -0,0 +1,139 @@
+package io.github.code2spec.search;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the on-disk BM25 index read by {@link SearchIndex}: documents are added with their
+ * text, tokenized by {@link SearchTokenizer}, and serialized with {@link #toBytes()}.
+ */
+public class SearchIndexWriter {
+    private final Map<String, Doc> docs = new LinkedHashMap<>();
+
+    private record Doc(String id, String type, String title, List<String> terms) {
+    }
+
+    /**
+     * Adds a document; a later document with the same id replaces the earlier one.
+     */
+    public void add(String id, String type, String title, String text) {
+        docs.put(id, new Doc(id, type, title, SearchTokenizer.tokenize(text)));
+    }
+
+    public int size() {
+        return docs.size();
+    }
+
+    /**
+     * Serializes the index; see {@link SearchIndex} for the layout.
+     */
+    public byte[] toBytes() {
+        List<Doc> docList = new ArrayList<>(docs.values());
+        int docCount = docList.size();
+        Map<String, List<int[]>> postings = new HashMap<>();
+        long totalLength = 0;
+        for (int d = 0; d < docCount; d++) {
+            List<String> terms = docList.get(d).terms();
+            totalLength += terms.size();
+            Map<String, Integer> tf = new HashMap<>();
+            for (String t : terms) tf.merge(t, 1, Integer::sum);
+            for (Map.Entry<String, Integer> e : tf.entrySet()) {
+                postings.computeIfAbsent(e.getKey(), k -> new ArrayList<>()).add(new int[]{d, e.getValue()});
+            }
+        }
+        byte[][] termBytes = postings.keySet().stream()
+                .map(t -> t.getBytes(StandardCharsets.UTF_8))
+                .sorted(Arrays::compareUnsigned)
+                .toArray(byte[][]::new);
+        int termCount = termBytes.length;
+
+        Strings strings = new Strings();
+        int[][] docStrings = new int[docCount][];
+        for (int d = 0; d < docCount; d++) {
+            Doc doc = docList.get(d);
+            docStrings[d] = new int[]{strings.add(doc.id()), strings.length, strings.add(doc.type()), strings.length,
+                    strings.add(doc.title()), strings.length};
+        }
+        int[] termOffsets = new int[termCount];
+        for (int t = 0; t < termCount; t++) termOffsets[t] = strings.add(termBytes[t]);
+
+        // Postings: doc id gaps and term frequencies as varints, doc ids ascending
+        VarIntBuffer postingBytes = new VarIntBuffer();
+        int[] postingOffsets = new int[termCount];
+        int[] postingLengths = new int[termCount];
+        int[] dfs = new int[termCount];
+        for (int t = 0; t < termCount; t++) {
+            List<int[]> list = postings.get(new String(termBytes[t], StandardCharsets.UTF_8));
+            postingOffsets[t] = postingBytes.length;
+            int prev = 0;
+            for (int[] p : list) {
+                postingBytes.write(p[0] - prev);
+                postingBytes.write(p[1]);
+                prev = p[0];
+            }
+            postingLengths[t] = postingBytes.length - postingOffsets[t];
+            dfs[t] = list.size();
+        }
+
+        int docTableOffset = SearchIndex.HEADER_SIZE;
+        int termTableOffset = docTableOffset + docCount * SearchIndex.DOC_ENTRY_SIZE;
+        int stringsOffset = termTableOffset + termCount * SearchIndex.TERM_ENTRY_SIZE;
+        int postingsOffset = stringsOffset + strings.length;
+        ByteBuffer buf = ByteBuffer.allocate(postingsOffset + postingBytes.length);
+        buf.putInt(SearchIndex.MAGIC).putInt(SearchIndex.VERSION).putInt(docCount).putInt(termCount)
+                .putFloat(docCount > 0 ? (float) totalLength / docCount : 0)
+                .putInt(docTableOffset).putInt(termTableOffset).putInt(stringsOffset).putInt(postingsOffset);
+        for (int d = 0; d < docCount; d++) {
+            int[] s = docStrings[d];
+            buf.putInt(docList.get(d).terms().size())
+                    .putInt(s[0]).putInt(s[1] - s[0])
+                    .putInt(s[2]).putInt(s[3] - s[2])
+                    .putInt(s[4]).putInt(s[5] - s[4]);
+        }
+        for (int t = 0; t < termCount; t++) {
+            buf.putInt(termOffsets[t]).putInt(termBytes[t].length).putInt(dfs[t])
+                    .putInt(postingOffsets[t]).putInt(postingLengths[t]);
+        }
+        buf.put(strings.bytes, 0, strings.length);
+        buf.put(postingBytes.bytes, 0, postingBytes.length);
+        return buf.array();
+    }
+
+    /** Concatenated UTF-8 strings; {@code add} returns the start offset */
+    private static class Strings {
+        byte[] bytes = new byte[4096];
+        int length;
+
+        int add(String s) {
+            return add(s != null ? s.getBytes(StandardCharsets.UTF_8) : new byte[0]);
+        }
+
+        int add(byte[] b) {
+            if (length + b.length > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + b.length));
+            System.arraycopy(b, 0, bytes, length, b.length);
+            int start = length;
+            length += b.length;
+            return start;
+        }
+    }
+
+    private static class VarIntBuffer {
+        byte[] bytes = new byte[4096];
+        int length;
+
+        void write(int value) {
+            if (length + 5 > bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.code2spec.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Splits text into search terms for the BM25 index; documents and queries use the same rules.
+ *
+ * <p>Identifiers are split at camelCase, acronym and letter/digit boundaries and also kept whole
+ * ({@code getUserById} gives {@code get, user, by, id, getuserbyid}); everything is lower-cased.
+ * Chinese (and other CJK) runs, which have no spaces, give every single character and every
+ * overlapping bigram, so one-character queries still match while bigrams carry most of the weight.
+ */
+public final class SearchTokenizer {
+
+    private SearchTokenizer() {
+    }
+
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) return terms;
+        int i = 0;
+        int n = text.length();
+        while (i < n) {
+            int c = text.codePointAt(i);
+            if (isCjk(c)) {
+                int start = i;
+                while (i < n && isCjk(text.codePointAt(i))) i += Character.charCount(text.codePointAt(i));
+                addCjk(text.substring(start, i), terms);
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < n && Character.isLetterOrDigit(text.codePointAt(i)) && !isCjk(text.codePointAt(i))) {
+                    i += Character.charCount(text.codePointAt(i));
+                }
+                addWord(text.substring(start, i), terms);
+            } else {
+                i += Character.charCount(c);
+            }
+        }
+        return terms;
+    }
+
+    private static boolean isCjk(int c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA || script == Character.UnicodeScript.HANGUL;
+    }
+
+    private static void addCjk(String run, List<String> terms) {
+        int[] cps = run.codePoints().toArray();
+        for (int j = 0; j < cps.length; j++) {
+            terms.add(new String(cps, j, 1));
+            if (j + 1 < cps.length) terms.add(new String(cps, j, 2));
+        }
+    }
+
+    private static void addWord(String word, List<String> terms) {
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        for (int j = 1; j < word.length(); j++) {
+            char prev = word.charAt(j - 1);
+            char cur = word.charAt(j);
+            boolean boundary = (Character.isLowerCase(prev) && Character.isUpperCase(cur))
+                    || (Character.isDigit(prev) != Character.isDigit(cur))
+                    // "HTTPServer": the last capital of an acronym starts the next part
+                    || (Character.isUpperCase(prev) && Character.isUpperCase(cur)
+                        && j + 1 < word.length() && Character.isLowerCase(word.charAt(j + 1)));
+            if (boundary) {
+                parts.add(word.substring(start, j));
+                start = j;
+            }
+        }
+        parts.add(word.substring(start));
+        for (String part : parts) {
+            if (part.length() > 1) terms.add(part.toLowerCase(Locale.ROOT));
+        }
+        if (parts.size() > 1) terms.add(word.toLowerCase(Locale.ROOT));
+    }
+}
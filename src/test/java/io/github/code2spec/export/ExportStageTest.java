@@ -0,0 +1,115 @@
+package io.github.code2spec.export;
+
+import io.github.code2spec.core.model.Endpoint;
+import io.github.code2spec.core.model.SpecResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportStageTest {
+
+    @Test
+    void discoversBuiltInExportersAndFiltersByFormat() {
+        assertEquals(List.of("openapi", "markdown", "rag"),
+                ExportStage.discover(new ExportConfig()).stream().map(SpecExporter::name).toList());
+        ExportConfig config = new ExportConfig();
+        config.setFormats(List.of("rag", "openapi"));
+        assertEquals(List.of("openapi", "rag"), ExportStage.discover(config).stream().map(SpecExporter::name).toList());
+        config.setFormats(List.of("pdf"));
+        assertThrows(IllegalArgumentException.class, () -> ExportStage.discover(config));
+    }
+
+    @Test
+    void runsExportersConcurrentlyAndReportsFailureAfterAllFinish(@TempDir Path dir) {
+        SpecResult result = new SpecResult();
+        Endpoint ep = new Endpoint();
+        ep.setHttpMethod("GET");
+        ep.setUri("/ping");
+        ep.setOperationId("ping");
+        result.getEndpoints().add(ep);
+        ExportContext ctx = new ExportContext(result);
+        assertThrows(UnsupportedOperationException.class, () -> ctx.getResult().getEndpoints().add(new Endpoint()));
+
+        // Both exporters must be running at the same time to pass the latch
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        SpecExporter failing = exporter("failing", c -> {
+            bothStarted.countDown();
+            await(bothStarted);
+            throw new IOException("disk full");
+        });
+        SpecExporter slow = exporter("slow", c -> {
+            bothStarted.countDown();
+            await(bothStarted);
+            Files.writeString(dir.resolve("slow.txt"), "done");
+        });
+        IOException e = assertThrows(IOException.class,
+                () -> new ExportStage(List.of(failing, slow, new MarkdownExporter())).run(ctx, new ExportConfig(), dir));
+        assertEquals("disk full", e.getMessage());
+        assertTrue(Files.exists(dir.resolve("slow.txt")));
+        assertTrue(Files.exists(dir.resolve("api-docs.md")));
+    }
+
+    @Test
+    void exportersDoNotSeeEachOthersChangesToTheModel(@TempDir Path dir) throws IOException {
+        SpecResult result = new SpecResult();
+        Endpoint ep = new Endpoint();
+        ep.setHttpMethod("GET");
+        ep.setUri("/ping");
+        ep.setSummary("ping");
+        result.getEndpoints().add(ep);
+        ExportContext ctx = new ExportContext(result);
+        String fingerprint = ctx.fingerprint(ep);
+
+        CountDownLatch changed = new CountDownLatch(1);
+        String[] seen = new String[2];
+        SpecExporter writer = exporter("writer", c -> {
+            c.getResult().getEndpoints().get(0).setSummary("changed");
+            changed.countDown();
+        });
+        SpecExporter reader = exporter("reader", c -> {
+            await(changed);
+            Endpoint copy = c.getResult().getEndpoints().get(0);
+            seen[0] = copy.getSummary();
+            seen[1] = c.fingerprint(copy);
+        });
+        new ExportStage(List.of(writer, reader)).run(ctx, new ExportConfig(), dir);
+        assertEquals("ping", seen[0]);
+        assertEquals(fingerprint, seen[1]);
+        assertEquals("ping", ep.getSummary());
+    }
+
+    private interface Body {
+        void run(ExportContext ctx) throws IOException;
+    }
+
+    private static SpecExporter exporter(String name, Body body) {
+        return new SpecExporter() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public String write(ExportContext ctx, ExportConfig config, Path outputDir) throws IOException {
+                body.run(ctx);
+                return name;
+            }
+        };
+    }
+
+    private static void await(CountDownLatch latch) throws IOException {
+        try {
+            if (!latch.await(5, TimeUnit.SECONDS)) throw new IOException("exporters did not run concurrently");
+        } catch (InterruptedException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package io.github.code2spec.export;
+
+import io.github.code2spec.core.model.Endpoint;
+import io.github.code2spec.core.model.ErrorCode;
+import io.github.code2spec.core.model.SchemaDefinition;
+import io.github.code2spec.core.model.SchemaField;
+import io.github.code2spec.core.model.SpecResult;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.PathItem;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenApiExporterTest {
+
+    @Test
+    void sharesBodySchemasAndErrorResponsesThroughComponents() throws Exception {
+        SpecResult result = new SpecResult();
+        result.getEndpoints().add(endpoint("POST", "/orders", "createOrder", schema("OrderRequest", "productId")));
+        result.getEndpoints().add(endpoint("PUT", "/orders", "replaceOrder", schema("OrderRequest", "productId")));
+        // Same name, different fields: must not be merged
+        result.getEndpoints().add(endpoint("POST", "/carts", "createCart", schema("OrderRequest", "cartId")));
+        ErrorCode notFound = new ErrorCode();
+        notFound.setCode("ORDER_NOT_FOUND");
+        notFound.setMessage("订单不存在");
+        notFound.setHttpStatus(404);
+        result.getErrorCodes().add(notFound);
+
+        StringWriter json = new StringWriter();
+        new OpenApiExporter().export(new ExportContext(result), json);
+        String text = json.toString();
+        assertEquals(1, count(text, "\"description\" : \"订单不存在\""), "error response written once");
+        assertEquals(2, count(text, "\"$ref\" : \"#/components/schemas/OrderRequest\""));
+        assertEquals(1, count(text, "\"$ref\" : \"#/components/schemas/OrderRequest_2\""));
+
+        OpenAPI openApi = new OpenApiExporter().export(result);
+        assertEquals(2, openApi.getComponents().getSchemas().size());
+        assertEquals("订单不存在", openApi.getComponents().getResponses().get("Error404").getDescription());
+        PathItem orders = openApi.getPaths().get("/orders");
+        assertEquals("createOrder", orders.getPost().getOperationId());
+        assertEquals("replaceOrder", orders.getPut().getOperationId());
+        assertEquals("#/components/responses/Error404", orders.getPost().getResponses().get("404").get$ref());
+    }
+
+    private static int count(String text, String needle) {
+        return text.split(Pattern.quote(needle), -1).length - 1;
+    }
+
+    private static SchemaDefinition schema(String name, String field) {
+        SchemaDefinition def = new SchemaDefinition(name);
+        SchemaField f = new SchemaField();
+        f.setName(field);
+        f.setType("string");
+        f.setRequired(true);
+        def.getFields().add(f);
+        return def;
+    }
+
+    private static Endpoint endpoint(String method, String uri, String operationId, SchemaDefinition body) {
+        Endpoint ep = new Endpoint();
+        ep.setHttpMethod(method);
+        ep.setUri(uri);
+        ep.setOperationId(operationId);
+        ep.setRequestBodyType(body.getSchemaName());
+        ep.setRequestBodySchema(body);
+        return ep;
+    }
+}
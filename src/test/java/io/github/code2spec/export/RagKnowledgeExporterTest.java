@@ -0,0 +1,156 @@
+package io.github.code2spec.export;
+
+import io.github.code2spec.core.model.Endpoint;
+import io.github.code2spec.core.model.SpecResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RagKnowledgeExporterTest {
+
+    @Test
+    void rewritesOnlyChangedDocumentsAndRemovesStaleOnes(@TempDir Path dir) throws Exception {
+        SpecResult result = new SpecResult();
+        result.getEndpoints().add(endpoint("getUser", "/users/{id}", "查询用户"));
+        result.getEndpoints().add(endpoint("getOrder", "/orders/{id}", "查询订单"));
+        RagKnowledgeExporter exporter = new RagKnowledgeExporter();
+
+        RagManifest first = exporter.export(result, dir);
+        assertEquals(4, first.count(RagManifest.Status.ADDED));
+        Path userDoc = dir.resolve("getUser_GET.json");
+        FileTime written = FileTime.fromMillis(1000);
+        Files.setLastModifiedTime(userDoc, written);
+
+        result.getEndpoints().get(1).setSummary("查询订单详情");
+        result.getEndpoints().add(endpoint("listItems", "/items", "商品列表"));
+        RagManifest second = exporter.export(result, dir);
+        assertEquals(written, Files.getLastModifiedTime(userDoc), "unchanged document must not be rewritten");
+        assertEquals(RagManifest.Status.UNCHANGED, status(second, "getUser_GET.json"));
+        assertEquals(RagManifest.Status.CHANGED, status(second, "getOrder_GET.json"));
+        assertEquals(RagManifest.Status.ADDED, status(second, "listItems_GET.json"));
+        assertEquals(RagManifest.Status.CHANGED, status(second, "_index.json"));
+
+        result.getEndpoints().remove(0);
+        RagManifest third = exporter.export(result, dir);
+        assertEquals(List.of("getUser_GET.json"), third.removed());
+        assertFalse(Files.exists(userDoc));
+        String manifest = Files.readString(dir.resolve(RagManifest.FILE_NAME));
+        assertTrue(manifest.contains("\"removed\": [\n    \"getUser_GET.json\""), manifest);
+        try (var files = Files.list(dir)) {
+            assertTrue(files.noneMatch(f -> f.getFileName().toString().endsWith(".tmp")));
+        }
+    }
+
+    @Test
+    void packedGzipOutputIsReadableByIdAndAsOneStream(@TempDir Path dir) throws Exception {
+        SpecResult result = new SpecResult();
+        for (int i = 0; i < 50; i++) {
+            result.getEndpoints().add(endpoint("op" + i, "/items/" + i, "接口 " + i));
+        }
+        ExportConfig config = new ExportConfig();
+        config.setRagPacked(true);
+        config.setRagGzip(true);
+        RagManifest manifest = new RagKnowledgeExporter(config).export(result, dir);
+        assertEquals(52, manifest.count(RagManifest.Status.ADDED));
+
+        String doc;
+        try (PackedRagReader reader = PackedRagReader.open(dir)) {
+            assertEquals(52, reader.size());
+            doc = reader.read("op37_GET");
+            assertTrue(doc.startsWith("{\"id\":\"op37_GET\""), doc);
+            assertTrue(doc.contains("接口 37"), doc);
+            assertTrue(reader.read("_index").contains("endpoint_index"));
+            assertNull(reader.read("missing"));
+        }
+
+        // Concatenated gzip members decompress as one NDJSON stream, the trailer line last
+        try (var in = new GZIPInputStream(Files.newInputStream(dir.resolve("knowledge.ndjson.gz")))) {
+            String[] lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+            assertEquals(53, lines.length);
+            assertEquals(doc, lines[37]);
+            assertTrue(lines[52].startsWith("{\"data_sha256\":\""), lines[52]);
+        }
+
+        result.getEndpoints().get(3).setSummary("改过的摘要");
+        result.getEndpoints().remove(10);
+        RagManifest second = new RagKnowledgeExporter(config).export(result, dir);
+        assertEquals(2, second.count(RagManifest.Status.CHANGED), "op3 and _index changed");
+        assertEquals(List.of("op10_GET"), second.removed());
+        try (PackedRagReader reader = PackedRagReader.open(dir)) {
+            assertNull(reader.read("op10_GET"));
+        }
+    }
+
+    @Test
+    void packedIndexFromAnotherExportIsRejected(@TempDir Path dir) throws Exception {
+        SpecResult result = new SpecResult();
+        result.getEndpoints().add(endpoint("getUser", "/users/{id}", "查询用户"));
+        ExportConfig config = new ExportConfig();
+        config.setRagPacked(true);
+        new RagKnowledgeExporter(config).export(result, dir);
+        byte[] oldIndex = Files.readAllBytes(dir.resolve("knowledge.idx"));
+
+        // Same length, different content: only the hash tells the data files apart
+        result.getEndpoints().get(0).setSummary("查询客户");
+        new RagKnowledgeExporter(config).export(result, dir);
+        try (RagDocuments docs = RagDocuments.open(dir)) {
+            assertTrue(docs.read("getUser_GET").contains("查询客户"));
+        }
+
+        // A crash after the data file was replaced but before the index was
+        Files.write(dir.resolve("knowledge.idx"), oldIndex);
+        IOException e = assertThrows(IOException.class, () -> PackedRagReader.open(dir));
+        assertTrue(e.getMessage().startsWith("RAG 索引与数据文件不匹配"), e.getMessage());
+
+        // The next export renders everything again instead of carrying records over
+        result.getEndpoints().get(0).setSummary("查询会员");
+        new RagKnowledgeExporter(config).export(result, dir);
+        try (PackedRagReader reader = PackedRagReader.open(dir)) {
+            assertTrue(reader.read("getUser_GET").contains("查询会员"));
+        }
+    }
+
+    @Test
+    void editedRecordsAreNotCarriedOver(@TempDir Path dir) throws Exception {
+        SpecResult result = new SpecResult();
+        result.getEndpoints().add(endpoint("getUser", "/users/{id}", "查询用户"));
+        result.getEndpoints().add(endpoint("getOrder", "/orders/{id}", "查询订单"));
+        ExportConfig config = new ExportConfig();
+        config.setRagPacked(true);
+        new RagKnowledgeExporter(config).export(result, dir);
+        Path data = dir.resolve("knowledge.ndjson");
+        Files.writeString(data, Files.readString(data).replace("查询用户", "手工修改"));
+
+        // The trailer still matches, so reads by id work; only the export hashes the records
+        try (PackedRagReader reader = PackedRagReader.open(dir)) {
+            assertTrue(reader.read("getUser_GET").contains("手工修改"));
+        }
+        result.getEndpoints().get(1).setSummary("查询订单详情");
+        new RagKnowledgeExporter(config).export(result, dir);
+        try (PackedRagReader reader = PackedRagReader.open(dir)) {
+            assertTrue(reader.read("getUser_GET").contains("查询用户"));
+        }
+    }
+
+    private static RagManifest.Status status(RagManifest manifest, String file) {
+        return manifest.documents().stream().filter(d -> d.file().equals(file)).findFirst().orElseThrow().status();
+    }
+
+    private static Endpoint endpoint(String operationId, String uri, String summary) {
+        Endpoint ep = new Endpoint();
+        ep.setOperationId(operationId);
+        ep.setHttpMethod("GET");
+        ep.setUri(uri);
+        ep.setSummary(summary);
+        return ep;
+    }
+}
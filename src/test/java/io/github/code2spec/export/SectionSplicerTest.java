@@ -0,0 +1,163 @@
+package io.github.code2spec.export;
+
+import io.github.code2spec.core.model.Endpoint;
+import io.github.code2spec.core.model.ErrorCode;
+import io.github.code2spec.core.model.ErrorCodeRef;
+import io.github.code2spec.core.model.SchemaDefinition;
+import io.github.code2spec.core.model.SchemaField;
+import io.github.code2spec.core.model.SpecResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SectionSplicerTest {
+
+    @Test
+    void reusesUnchangedSectionsAndMatchesFullExport(@TempDir Path dir) throws IOException {
+        Path incremental = dir.resolve("incremental");
+        Path full = dir.resolve("full");
+        SpecResult result = sampleResult();
+        ExportConfig config = new ExportConfig();
+        assertEquals(incremental.resolve("api-docs.md").toString(), writeAll(result, config, incremental));
+        assertTrue(writeAll(result, config, incremental).endsWith(" (未变)"));
+
+        result.getEndpoints().get(1).setSummary("更新订单");
+        result.getErrorCodes().get(1).setMessage("库存不足，请稍后重试");
+        // 5 endpoint sections, 2 error code sections: the changed endpoint, the changed code and
+        // the endpoint referencing it are rendered again
+        assertEquals(incremental.resolve("api-docs.md") + " (章节: 复用 4，重新生成 3)", writeAll(result, config, incremental));
+
+        ExportConfig fullConfig = new ExportConfig();
+        fullConfig.setIncremental(false);
+        writeAll(result, fullConfig, full);
+        for (String file : List.of("api-docs.md", "openapi.json", "rag/updateOrder_PUT.json", "rag/_index.json")) {
+            assertEquals(Files.readString(full.resolve(file)), Files.readString(incremental.resolve(file)), file);
+        }
+    }
+
+    @Test
+    void rendersEverythingWhenTheDocumentWasEdited(@TempDir Path dir) throws IOException {
+        SpecResult result = sampleResult();
+        ExportConfig config = new ExportConfig();
+        writeAll(result, config, dir);
+        Path markdown = dir.resolve("api-docs.md");
+        String original = Files.readString(markdown);
+        Files.writeString(markdown, original.replace("查询订单", "手工修改"));
+
+        result.getEndpoints().get(1).setSummary("更新订单");
+        // The edited copy is not spliced from, so no hand-made change survives
+        assertEquals(markdown.toString(), new MarkdownExporter().write(new ExportContext(result), config, dir));
+        assertFalse(Files.readString(markdown).contains("手工修改"));
+    }
+
+    @Test
+    void packedRagCarriesUnchangedRecordsOver(@TempDir Path dir) throws IOException {
+        SpecResult result = sampleResult();
+        ExportConfig config = new ExportConfig();
+        config.setRagPacked(true);
+        config.setRagGzip(true);
+        new RagKnowledgeExporter(config).export(new ExportContext(result), dir);
+
+        result.getEndpoints().get(1).setSummary("更新订单");
+        RagManifest manifest = new RagKnowledgeExporter(config).export(new ExportContext(result), dir);
+        // The endpoint's own document and the endpoint index
+        assertEquals(2, manifest.count(RagManifest.Status.CHANGED));
+        try (PackedRagReader reader = PackedRagReader.open(dir)) {
+            assertTrue(reader.read("updateOrder_PUT").contains("更新订单"));
+            assertTrue(reader.read("getOrder_GET").contains("查询订单"));
+        }
+    }
+
+    @Test
+    void splicesGzipOpenApiThroughATemporaryCopy(@TempDir Path dir) throws IOException {
+        Path incremental = dir.resolve("incremental");
+        Path full = dir.resolve("full");
+        Files.createDirectories(incremental);
+        Files.createDirectories(full);
+        SpecResult result = sampleResult();
+        ExportConfig config = new ExportConfig();
+        config.setCompression(ExportConfig.Compression.GZIP);
+        new OpenApiExporter().write(new ExportContext(result), config, incremental);
+
+        result.getEndpoints().get(2).setSummary("下单");
+        Path tmp = Path.of(System.getProperty("java.io.tmpdir"));
+        int before = spliceTempFiles(tmp);
+        // Paths /orders/{id} and /users/{id} are copied, /orders is rendered again
+        assertEquals(incremental.resolve("openapi.json.gz") + " (章节: 复用 2，重新生成 1)",
+                new OpenApiExporter().write(new ExportContext(result), config, incremental));
+        assertEquals(before, spliceTempFiles(tmp));
+
+        ExportConfig fullConfig = new ExportConfig();
+        fullConfig.setCompression(ExportConfig.Compression.GZIP);
+        fullConfig.setIncremental(false);
+        new OpenApiExporter().write(new ExportContext(result), fullConfig, full);
+        assertArrayEquals(gunzip(full.resolve("openapi.json.gz")), gunzip(incremental.resolve("openapi.json.gz")));
+    }
+
+    /** Writes OpenAPI, RAG and Markdown; returns the Markdown summary */
+    private static String writeAll(SpecResult result, ExportConfig config, Path dir) throws IOException {
+        Files.createDirectories(dir);
+        ExportContext ctx = new ExportContext(result);
+        new OpenApiExporter().write(ctx, config, dir);
+        new RagKnowledgeExporter(config).write(ctx, config, dir);
+        return new MarkdownExporter().write(ctx, config, dir);
+    }
+
+    private static int spliceTempFiles(Path tmp) throws IOException {
+        try (Stream<Path> files = Files.list(tmp)) {
+            return (int) files.filter(f -> f.getFileName().toString().endsWith(".splice")).count();
+        }
+    }
+
+    private static byte[] gunzip(Path file) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static SpecResult sampleResult() {
+        SpecResult result = new SpecResult();
+        result.getEndpoints().add(endpoint("GET", "/orders/{id}", "getOrder", "查询订单", "ORDER_NOT_FOUND"));
+        result.getEndpoints().add(endpoint("PUT", "/orders/{id}", "updateOrder", "修改订单", "ORDER_NOT_FOUND"));
+        result.getEndpoints().add(endpoint("POST", "/orders", "createOrder", "创建订单", "STOCK_SHORTAGE"));
+        result.getEndpoints().add(endpoint("GET", "/users/{id}", "getUser", "查询用户", "ORDER_NOT_FOUND"));
+        result.getEndpoints().add(endpoint("DELETE", "/users/{id}", "deleteUser", "删除用户", "ORDER_NOT_FOUND"));
+        result.getErrorCodes().add(errorCode("ORDER_NOT_FOUND", 404, "订单不存在"));
+        result.getErrorCodes().add(errorCode("STOCK_SHORTAGE", 409, "库存不足"));
+        return result;
+    }
+
+    private static Endpoint endpoint(String method, String uri, String operationId, String summary, String errorCode) {
+        Endpoint ep = new Endpoint();
+        ep.setHttpMethod(method);
+        ep.setUri(uri);
+        ep.setOperationId(operationId);
+        ep.setSummary(summary);
+        SchemaDefinition body = new SchemaDefinition("OrderDto");
+        SchemaField status = new SchemaField();
+        status.setName("status");
+        status.setType("String");
+        body.getFields().add(status);
+        ep.setResponseType("OrderDto");
+        ep.setResponseBodySchema(body);
+        ep.getErrorCodes().add(new ErrorCodeRef(errorCode, null));
+        return ep;
+    }
+
+    private static ErrorCode errorCode(String code, int status, String message) {
+        ErrorCode ec = new ErrorCode();
+        ec.setCode(code);
+        ec.setHttpStatus(status);
+        ec.setMessage(message);
+        return ec;
+    }
+}
@@ -0,0 +1,97 @@
+package io.github.code2spec.export;
+
+import io.github.code2spec.core.model.Endpoint;
+import io.github.code2spec.core.model.SpecResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedOutputTest {
+
+    @Test
+    void shardNamesFollowControllerTagOrUriPrefix() {
+        ExportConfig config = new ExportConfig();
+        config.setShardBy(ExportConfig.ShardBy.CONTROLLER);
+        Endpoint fromYaml = endpoint("GET", "/api/v1/orders/{id}", null);
+        fromYaml.setTags(List.of("订单 管理"));
+        assertEquals("OrderController", ShardedOutput.shardName(endpoint("GET", "/x", "OrderController"), config));
+        assertEquals("订单_管理", ShardedOutput.shardName(fromYaml, config));
+        assertEquals(ShardedOutput.DEFAULT_SHARD, ShardedOutput.shardName(endpoint("GET", "/x", null), config));
+
+        config.setShardBy(ExportConfig.ShardBy.PREFIX);
+        assertEquals("api-v1", ShardedOutput.shardName(fromYaml, config));
+        assertEquals("api", ShardedOutput.uriPrefix("/api/{version}/orders", 3));
+        assertEquals("root", ShardedOutput.uriPrefix("/", 2));
+    }
+
+    @Test
+    void rewritesOnlyChangedShardsAndDropsStaleOnes(@TempDir Path dir) throws IOException {
+        ExportConfig config = new ExportConfig();
+        config.setShardBy(ExportConfig.ShardBy.CONTROLLER);
+        Endpoint order = endpoint("GET", "/orders", "OrderController");
+        Endpoint user = endpoint("GET", "/users", "UserController");
+        SpecResult result = new SpecResult();
+        result.getEndpoints().addAll(List.of(order, user));
+
+        assertEquals(dir.resolve("openapi") + "/ (2 个分片，更新 2，未变 0)",
+                new OpenApiExporter().write(new ExportContext(result), config, dir));
+        new MarkdownExporter().write(new ExportContext(result), config, dir);
+        assertTrue(Files.readString(dir.resolve("api-docs.md")).contains("[OrderController](api-docs/OrderController.md)"));
+        Path userShard = dir.resolve("openapi/UserController.json");
+        FileTime userWritten = FileTime.fromMillis(0);
+        Files.setLastModifiedTime(userShard, userWritten);
+
+        order.setSummary("查询订单");
+        assertEquals(dir.resolve("openapi") + "/ (2 个分片，更新 1，未变 1)",
+                new OpenApiExporter().write(new ExportContext(result), config, dir));
+        assertEquals(userWritten, Files.getLastModifiedTime(userShard));
+        assertTrue(Files.readString(dir.resolve("openapi/OrderController.json")).contains("查询订单"));
+
+        result.getEndpoints().remove(user);
+        new OpenApiExporter().write(new ExportContext(result), config, dir);
+        assertFalse(Files.exists(userShard));
+        assertTrue(Files.readString(dir.resolve("openapi/_index.json")).contains("\"OrderController.json\""));
+
+        // Back to single files: the shard directories go away
+        ExportConfig single = new ExportConfig();
+        new OpenApiExporter().write(new ExportContext(result), single, dir);
+        new MarkdownExporter().write(new ExportContext(result), single, dir);
+        assertFalse(Files.exists(dir.resolve("openapi")));
+        assertFalse(Files.exists(dir.resolve("api-docs")));
+        assertTrue(Files.exists(dir.resolve("openapi.json")));
+    }
+
+    @Test
+    void equallyNamedControllersGetSeparateShards(@TempDir Path dir) throws IOException {
+        ExportConfig config = new ExportConfig();
+        config.setShardBy(ExportConfig.ShardBy.CONTROLLER);
+        Endpoint v1 = endpoint("GET", "/v1/users", "com.example.api.v1.UserController");
+        Endpoint v2 = endpoint("GET", "/v2/users", "com.example.api.v2.UserController");
+        Endpoint order = endpoint("GET", "/orders", "com.example.api.OrderController");
+        SpecResult result = new SpecResult();
+        result.getEndpoints().addAll(List.of(v1, v2, order));
+
+        assertEquals(List.of("OrderController", "UserController-v1", "UserController-v2"),
+                List.copyOf(ShardedOutput.group(result.getEndpoints(), config).keySet()));
+        new OpenApiExporter().write(new ExportContext(result), config, dir);
+        assertTrue(Files.readString(dir.resolve("openapi/UserController-v1.json")).contains("/v1/users"));
+        assertFalse(Files.readString(dir.resolve("openapi/UserController-v1.json")).contains("/v2/users"));
+        assertTrue(Files.readString(dir.resolve("openapi/UserController-v2.json")).contains("/v2/users"));
+    }
+
+    private static Endpoint endpoint(String method, String uri, String sourceClass) {
+        Endpoint ep = new Endpoint();
+        ep.setHttpMethod(method);
+        ep.setUri(uri);
+        ep.setOperationId(method.toLowerCase() + uri.replace("/", "_"));
+        ep.setSourceClass(sourceClass);
+        return ep;
+    }
+}
@@ -0,0 +1,89 @@
+package io.github.code2spec.export;
+
+import io.github.code2spec.core.model.BusinessSemantic;
+import io.github.code2spec.core.model.Endpoint;
+import io.github.code2spec.core.model.ErrorCode;
+import io.github.code2spec.core.model.ErrorCodeRef;
+import io.github.code2spec.core.model.SchemaDefinition;
+import io.github.code2spec.core.model.SchemaField;
+import io.github.code2spec.core.model.SpecResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SmileSpecExporterTest {
+
+    @Test
+    void snapshotRoundTripsToIdenticalDocuments(@TempDir Path dir) throws IOException {
+        SpecResult result = sampleResult();
+        ExportConfig gzip = new ExportConfig();
+        gzip.setCompression(ExportConfig.Compression.GZIP);
+        new SmileSpecExporter().write(new ExportContext(result), gzip, dir);
+        assertFalse(Files.exists(dir.resolve(SmileSpecExporter.FILE_NAME)));
+
+        SpecResult loaded = SmileSpecExporter.read(dir.resolve(SmileSpecExporter.GZIP_FILE_NAME));
+        assertEquals(markdown(result), markdown(loaded));
+        assertEquals("OrderController", loaded.getEndpoints().get(0).getSourceClass());
+
+        new SmileSpecExporter().write(new ExportContext(loaded), new ExportConfig(), dir);
+        assertFalse(Files.exists(dir.resolve(SmileSpecExporter.GZIP_FILE_NAME)));
+        assertEquals(markdown(result), markdown(SmileSpecExporter.read(dir.resolve(SmileSpecExporter.FILE_NAME))));
+    }
+
+    @Test
+    void specIsOnlyWrittenWhenRequested() {
+        assertFalse(ExportStage.discover(new ExportConfig()).stream().anyMatch(e -> e.name().equals("spec")));
+        ExportConfig config = new ExportConfig();
+        config.setFormats(List.of("spec"));
+        assertEquals("spec", ExportStage.discover(config).get(0).name());
+    }
+
+    private static String markdown(SpecResult result) throws IOException {
+        StringWriter out = new StringWriter();
+        new MarkdownExporter().export(new ExportContext(result), out);
+        return out.toString();
+    }
+
+    private static SpecResult sampleResult() {
+        Endpoint ep = new Endpoint();
+        ep.setHttpMethod("GET");
+        ep.setUri("/orders/{id}");
+        ep.setOperationId("getOrder");
+        ep.setSummary("查询订单");
+        ep.setSourceClass("OrderController");
+        io.github.code2spec.core.model.Parameter id = new io.github.code2spec.core.model.Parameter();
+        id.setName("id");
+        id.setIn("path");
+        id.setType("Long");
+        id.setRequired(true);
+        id.setMinimum(1);
+        ep.getParameters().add(id);
+        SchemaDefinition order = new SchemaDefinition("OrderDto");
+        SchemaField status = new SchemaField();
+        status.setName("status");
+        status.setType("String");
+        order.getFields().add(status);
+        ep.setResponseType("OrderDto");
+        ep.setResponseBodySchema(order);
+        BusinessSemantic bs = new BusinessSemantic();
+        bs.setFunction("按 ID 查询订单");
+        ep.setBusinessSemantic(bs);
+        ep.getErrorCodes().add(new ErrorCodeRef("ORDER_NOT_FOUND", "订单不存在"));
+
+        ErrorCode notFound = new ErrorCode();
+        notFound.setCode("ORDER_NOT_FOUND");
+        notFound.setHttpStatus(404);
+        notFound.setMessage("订单不存在");
+        SpecResult result = new SpecResult();
+        result.getEndpoints().add(ep);
+        result.getErrorCodes().add(notFound);
+        return result;
+    }
+}
@@ -0,0 +1,54 @@
+package io.github.code2spec.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BackendPoolTest {
+
+    private static LlmBackendConfig backend(String url, int weight) {
+        LlmBackendConfig c = new LlmBackendConfig(url, "k", "m");
+        c.setWeight(weight);
+        return c;
+    }
+
+    @Test
+    void spreadsByWeightedOutstandingRequests() {
+        BackendPool pool = new BackendPool(List.of(backend("http://a", 2), backend("http://b", 1)));
+        int a = 0, b = 0;
+        for (int i = 0; i < 6; i++) {
+            BackendPool.Backend picked = pool.acquire(Set.of());
+            if (picked.getConfig().getApiBaseUrl().equals("http://a")) a++; else b++;
+        }
+        assertEquals(4, a);
+        assertEquals(2, b);
+    }
+
+    @Test
+    void ejectsAfterConsecutiveFailuresAndFailsOver() {
+        BackendPool pool = new BackendPool(List.of(backend("http://a", 10), backend("http://b", 1)));
+        for (int i = 0; i < BackendPool.EJECT_AFTER_FAILURES; i++) {
+            BackendPool.Backend picked = pool.acquire(Set.of());
+            assertEquals("http://a", picked.getConfig().getApiBaseUrl());
+            pool.onFailure(picked);
+        }
+        BackendPool.Backend next = pool.acquire(Set.of());
+        assertEquals("http://b", next.getConfig().getApiBaseUrl(), "ejected backend must leave rotation");
+        pool.onSuccess(next, 10, 1, 1);
+        assertFalse(pool.hasAlternative(next));
+    }
+
+    @Test
+    void parsesBackendSpec() {
+        LlmBackendConfig c = LlmBackendConfig.parse("url=http://localhost:11434/v1,model=llama3,weight=3,rpm=30", "default");
+        assertEquals("http://localhost:11434/v1", c.getApiBaseUrl());
+        assertEquals("llama3", c.getModel());
+        assertEquals(3, c.getWeight());
+        assertEquals(30, c.getMaxRequestsPerMinute());
+        assertEquals("llama3@localhost:11434", c.label());
+        assertThrows(IllegalArgumentException.class, () -> LlmBackendConfig.parse("model=x", "default"));
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.code2spec.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DryRunLlmEnhancerTest {
+
+    @Test
+    void countsRequestsAsTheRealEnhancerWouldBatchThem() {
+        LlmConfig config = new LlmConfig();
+        config.setErrorCodeBatchSize(4);
+        config.setLlmDelayMs(0);
+        config.setConcurrency(2);
+        DryRunLlmEnhancer dryRun = new DryRunLlmEnhancer(config);
+
+        List<ErrorCodeContext> contexts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            ErrorCodeContext ctx = new ErrorCodeContext();
+            ctx.setCode("E" + i);
+            ctx.setMessage("错误 " + i);
+            contexts.add(ctx);
+        }
+        List<?> results = dryRun.enhanceErrorCodesAsync(contexts).join();
+
+        assertEquals(5, results.size());
+        assertTrue(results.stream().allMatch(r -> r == null));
+        List<DryRunLlmEnhancer.Request> requests = dryRun.getRequests();
+        assertEquals(List.of("错误码(批量)", "错误码"), requests.stream().map(DryRunLlmEnhancer.Request::type).toList());
+        assertTrue(requests.get(0).inputTokens() > requests.get(1).inputTokens());
+        assertEquals(DryRunLlmEnhancer.ASSUMED_LATENCY_MS, dryRun.projectedWallTimeMs(2));
+    }
+
+    @Test
+    void estimatesCjkPerCharacterAndAsciiPerFourCharacters() {
+        assertEquals(4 + 2, TokenEstimator.estimate("查询用户return;"));
+    }
+}
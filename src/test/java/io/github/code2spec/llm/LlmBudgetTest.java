@@ -0,0 +1,64 @@
+package io.github.code2spec.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LlmBudgetTest {
+
+    private static final List<OpenAiClient.ChatMessage> MESSAGES = List.of(
+            new OpenAiClient.ChatMessage("user", "接口信息：\n- URI: GET /orders/{id}"));
+
+    @Test
+    void stopsOnceTheTokenBudgetIsUsed() {
+        LlmBudget budget = new LlmBudget(0, 1000);
+        assertTrue(budget.tryAcquire());
+        budget.release(MESSAGES, new OpenAiClient.ChatResult("{}", 600, 300, 0, -1, null));
+        assertTrue(budget.tryAcquire());
+        budget.release(MESSAGES, new OpenAiClient.ChatResult("{}", 100, 50, 0, -1, null));
+
+        assertFalse(budget.tryAcquire());
+        assertTrue(budget.isExhausted());
+        assertTrue(budget.summaryLines().contains("token 预算已用完，跳过 1 项 LLM 增强（可加 --resume 续跑补全）"));
+    }
+
+    @Test
+    void estimatesTokensWhenTheServerReportsNoUsage() {
+        String content = "{\"function\":\"" + "查询订单详情".repeat(20) + "\"}";
+        int estimate = TokenEstimator.estimate(MESSAGES) + TokenEstimator.estimate(content);
+        LlmBudget budget = new LlmBudget(0, estimate * 3L);
+        int calls = 0;
+        while (budget.tryAcquire()) {
+            budget.release(MESSAGES, new OpenAiClient.ChatResult(content, 0, 0, 0, -1, null));
+            calls++;
+        }
+
+        assertEquals(3, calls);
+        assertTrue(budget.summaryLines().contains("Token 预算: 已用 " + estimate * 3L + " / " + estimate * 3L));
+    }
+
+    @Test
+    void failedCallsDoNotCountAgainstTheBudget() {
+        LlmBudget budget = new LlmBudget(0, 10);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(budget.tryAcquire());
+            budget.release(MESSAGES, null);
+        }
+        assertFalse(budget.isExhausted());
+    }
+
+    @Test
+    void stopsAtTheDeadline() throws InterruptedException {
+        LlmBudget budget = new LlmBudget(1, 0);
+        assertTrue(budget.tryAcquire());
+        budget.release(MESSAGES, null);
+        Thread.sleep(1100);
+
+        assertFalse(budget.tryAcquire());
+        assertFalse(budget.tryAcquire());
+        assertTrue(budget.isExhausted());
+        assertTrue(budget.summaryLines().contains("已到达截止时间，跳过 2 项 LLM 增强（可加 --resume 续跑补全）"));
+    }
+}
@@ -0,0 +1,79 @@
+package io.github.code2spec.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.ServerSocket;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LlmCircuitBreakerTest {
+
+    @Test
+    void opensAfterConsecutiveFailuresAndSkipsTheRest() throws Exception {
+        int deadPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            deadPort = socket.getLocalPort();
+        }
+        LlmConfig config = new LlmConfig();
+        config.setApiBaseUrl("http://127.0.0.1:" + deadPort + "/v1");
+        config.setApiKey("test");
+        config.setLlmDelayMs(0);
+        config.setCircuitBreakerThreshold(2);
+        OpenAiLlmEnhancer enhancer = new OpenAiLlmEnhancer(config);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            EndpointContext ctx = new EndpointContext();
+            ctx.setHttpMethod("GET");
+            ctx.setUri("/api/items/" + i);
+            assertNull(enhancer.enhanceEndpoint(ctx));
+        }
+
+        assertTrue(System.currentTimeMillis() - start < 10_000);
+        LlmCircuitBreaker breaker = enhancer.getCircuitBreaker();
+        assertTrue(breaker.isOpen());
+        assertEquals(8, breaker.getSkippedCount());
+    }
+
+    @Test
+    void onlyTheProbeClosesTheBreaker() {
+        // No cooldown: a probe may go out right after opening
+        LlmCircuitBreaker breaker = new LlmCircuitBreaker(2, 0);
+        LlmCircuitBreaker.Ticket first = breaker.tryAcquire("a");
+        LlmCircuitBreaker.Ticket second = breaker.tryAcquire("b");
+        LlmCircuitBreaker.Ticket lateSuccess = breaker.tryAcquire("c");
+        LlmCircuitBreaker.Ticket lateFailure = breaker.tryAcquire("d");
+        assertFalse(breaker.onResult(first, false));
+        assertTrue(breaker.onResult(second, false));
+
+        LlmCircuitBreaker.Ticket probe = breaker.tryAcquire("e");
+        assertEquals(LlmCircuitBreaker.Ticket.PROBE, probe);
+        // Requests accepted before the breaker opened answer while the probe is out
+        breaker.onResult(lateSuccess, true);
+        assertFalse(breaker.onResult(lateFailure, false));
+        assertTrue(breaker.isOpen());
+        assertNull(breaker.tryAcquire("f"));
+        assertEquals(List.of("熔断 1 次，恢复 0 次，结束时仍处于熔断"), breaker.summaryLines().subList(0, 1));
+
+        breaker.onResult(probe, true);
+        assertFalse(breaker.isOpen());
+        assertEquals(LlmCircuitBreaker.Ticket.REGULAR, breaker.tryAcquire("g"));
+        assertEquals("熔断 1 次，恢复 1 次", breaker.summaryLines().get(0));
+    }
+
+    @Test
+    void failedProbeReopensTheBreaker() {
+        LlmCircuitBreaker breaker = new LlmCircuitBreaker(1, 0);
+        assertTrue(breaker.onResult(breaker.tryAcquire("a"), false));
+        LlmCircuitBreaker.Ticket probe = breaker.tryAcquire("b");
+
+        assertTrue(breaker.onResult(probe, false));
+        assertEquals("熔断 2 次，恢复 0 次，结束时仍处于熔断", breaker.summaryLines().get(0));
+        // A dropped probe frees the slot for the next one
+        LlmCircuitBreaker.Ticket next = breaker.tryAcquire("c");
+        assertEquals(LlmCircuitBreaker.Ticket.PROBE, next);
+        breaker.recordSkipped("c", next);
+        assertEquals(LlmCircuitBreaker.Ticket.PROBE, breaker.tryAcquire("d"));
+    }
+}
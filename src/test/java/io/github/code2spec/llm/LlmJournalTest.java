@@ -0,0 +1,97 @@
+package io.github.code2spec.llm;
+
+import io.github.code2spec.core.model.BusinessSemantic;
+import io.github.code2spec.core.model.ErrorCode;
+import io.github.code2spec.core.model.ErrorEnhancement;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LlmJournalTest {
+
+    @Test
+    void resumeReplaysEntriesWithMatchingPromptHash(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve(".llm-journal.jsonl");
+        BusinessSemantic semantic = new BusinessSemantic();
+        semantic.setFunction("创建订单");
+        try (LlmJournal journal = LlmJournal.open(file, false)) {
+            journal.recordEndpoint("POST /orders#create", "h1", semantic);
+            journal.recordErrorCode("NotFound", "h2", new ErrorEnhancement("rc", "hs", "pv"));
+        }
+        // Simulate a run killed in the middle of writing a line
+        Files.writeString(file, "{\"kind\":\"endpoint\",\"key\":\"GET", StandardOpenOption.APPEND);
+
+        try (LlmJournal journal = LlmJournal.open(file, true)) {
+            assertEquals(2, journal.size());
+            assertEquals("创建订单", journal.findEndpoint("POST /orders#create", "h1").getFunction());
+            assertNull(journal.findEndpoint("POST /orders#create", "changed-prompt"));
+            assertEquals("hs", journal.findErrorCode("NotFound", "h2").getHandlingSuggestion());
+        }
+    }
+
+    @Test
+    void freshRunTruncatesJournal(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve(".llm-journal.jsonl");
+        try (LlmJournal journal = LlmJournal.open(file, false)) {
+            journal.recordErrorCode("NotFound", "h2", new ErrorEnhancement("rc", "hs", "pv"));
+        }
+        try (LlmJournal journal = LlmJournal.open(file, false)) {
+            assertEquals(0, journal.size());
+            assertNull(journal.findErrorCode("NotFound", "h2"));
+        }
+    }
+
+    @Test
+    void changingAPoolModelInvalidatesEntries(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve(".llm-journal.jsonl");
+        EndpointContext ctx = new EndpointContext();
+        ctx.setHttpMethod("GET");
+        ctx.setUri("/orders");
+        ctx.setMethodName("list");
+        AtomicInteger calls = new AtomicInteger();
+        LlmEnhancer delegate = new LlmEnhancer() {
+            @Override
+            public BusinessSemantic enhanceEndpoint(EndpointContext c) {
+                calls.incrementAndGet();
+                BusinessSemantic semantic = new BusinessSemantic();
+                semantic.setFunction("查询订单");
+                return semantic;
+            }
+
+            @Override
+            public void enhanceErrorCode(ErrorCode errorCode, ErrorCodeContext c) {
+            }
+
+            @Override
+            public boolean isEnabled() {
+                return true;
+            }
+        };
+
+        try (LlmJournal journal = LlmJournal.open(file, false)) {
+            new JournalingLlmEnhancer(delegate, journal, pool("m1", "m2"), null).enhanceEndpoint(ctx);
+        }
+        // Same models in another order replay; a backend switched to another model does not
+        try (LlmJournal journal = LlmJournal.open(file, true)) {
+            new JournalingLlmEnhancer(delegate, journal, pool("m2", "m1"), null).enhanceEndpoint(ctx);
+            assertEquals(1, calls.get());
+            assertEquals("查询订单", new JournalingLlmEnhancer(delegate, journal, pool("m1", "m3"), null)
+                    .enhanceEndpoint(ctx).getFunction());
+            assertEquals(2, calls.get());
+        }
+    }
+
+    private static LlmConfig pool(String... models) {
+        LlmConfig config = new LlmConfig();
+        config.setBackends(List.of(models).stream()
+                .map(m -> new LlmBackendConfig("http://localhost/v1", "k", m)).toList());
+        return config;
+    }
+}
@@ -0,0 +1,31 @@
+package io.github.code2spec.llm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LlmJsonReaderTest {
+
+    @Test
+    void readsObjectInsideCodeFenceAndIgnoresTrailingText() {
+        LlmJsonReader.Result r = LlmJsonReader.read(
+                "好的：\n```json\n{\"function\": \"查询用户\", \"entityNames\": {\"User\": \"用户\"}, \"tags\": [\"a\", 1]}\n```\n以上。");
+
+        assertNotNull(r);
+        assertFalse(r.repaired());
+        assertEquals("查询用户", r.getString("function"));
+        assertEquals("用户", r.getObject("entityNames").get("User"));
+        assertEquals("a; 1", r.getString("tags"));
+    }
+
+    @Test
+    void repairsTruncatedOutput() {
+        LlmJsonReader.Result r = LlmJsonReader.read("{\"function\": \"查询用户\", \"scenario\": \"管理后台按 ID 查");
+
+        assertNotNull(r);
+        assertTrue(r.repaired());
+        assertEquals("查询用户", r.getString("function"));
+        assertEquals("管理后台按 ID 查", r.getString("scenario"));
+        assertNull(LlmJsonReader.read("抱歉，我无法回答。"));
+    }
+}
@@ -0,0 +1,80 @@
+package io.github.code2spec.llm;
+
+import io.github.code2spec.core.model.BusinessSemantic;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Drives {@link OpenAiLlmEnhancer} against {@link MockOpenAiServer} at several concurrency levels
+ * and prints throughput and per-call latency percentiles. Disabled by default; run with:
+ *
+ * <pre>mvn test -Dtest=LlmLoadBenchmark -Dllm.bench=true [-Dllm.bench.calls=200] [-Dllm.bench.concurrency=1,4,16]
+ *     [-Dllm.bench.median-ms=200] [-Dllm.bench.rate-limit=0.05] [-Dllm.bench.stream=true]</pre>
+ */
+@EnabledIfSystemProperty(named = "llm.bench", matches = "true")
+class LlmLoadBenchmark {
+
+    @Test
+    void run() throws Exception {
+        int calls = Integer.getInteger("llm.bench.calls", 200);
+        long medianMs = Long.getLong("llm.bench.median-ms", 200);
+        double rateLimit = Double.parseDouble(System.getProperty("llm.bench.rate-limit", "0"));
+        boolean stream = Boolean.getBoolean("llm.bench.stream");
+        int[] levels = Arrays.stream(System.getProperty("llm.bench.concurrency", "1,4,16").split(","))
+                .mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+
+        System.out.printf("calls=%d median=%d ms rate-limit=%.2f stream=%s%n", calls, medianMs, rateLimit, stream);
+        System.out.printf("%11s %10s %10s %8s %8s %8s %6s%n", "concurrency", "elapsed", "calls/s", "p50", "p99", "max", "429");
+        for (int concurrency : levels) {
+            try (MockOpenAiServer server = new MockOpenAiServer()
+                    .latency(MockOpenAiServer.logNormal(medianMs, 0.5, 42))
+                    .rateLimit(rateLimit, 0)) {
+                LlmConfig config = new LlmConfig();
+                config.setApiBaseUrl(server.baseUrl());
+                config.setApiKey("bench");
+                config.setLlmDelayMs(0);
+                config.setConcurrency(concurrency);
+                config.setStream(stream);
+                OpenAiLlmEnhancer enhancer = new OpenAiLlmEnhancer(config);
+
+                long[] latencies = new long[calls];
+                List<CompletableFuture<BusinessSemantic>> futures = new ArrayList<>();
+                long start = System.nanoTime();
+                for (int i = 0; i < calls; i++) {
+                    int n = i;
+                    long submitted = System.nanoTime();
+                    futures.add(enhancer.enhanceEndpointAsync(context(i))
+                            .whenComplete((r, t) -> latencies[n] = (System.nanoTime() - submitted) / 1_000_000));
+                }
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+                long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+
+                Arrays.sort(latencies);
+                System.out.printf("%11d %8d ms %10.1f %5d ms %5d ms %5d ms %6d%n", concurrency, elapsedMs,
+                        calls * 1000.0 / Math.max(1, elapsedMs), percentile(latencies, 50), percentile(latencies, 99),
+                        latencies[calls - 1], server.rateLimitedCount());
+            }
+        }
+    }
+
+    private static EndpointContext context(int i) {
+        EndpointContext ctx = new EndpointContext();
+        ctx.setHttpMethod("GET");
+        ctx.setUri("/api/items/" + i);
+        ctx.setMethodName("getItem" + i);
+        ctx.setReturnType("Item");
+        ctx.setParameterTypes(List.of("Long"));
+        ctx.setMethodBodySnippet("{ return itemService.findById(id); }");
+        return ctx;
+    }
+
+    private static long percentile(long[] sorted, int p) {
+        int idx = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, idx)];
+    }
+}
@@ -0,0 +1,232 @@
+package io.github.code2spec.llm;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * In-process OpenAI-compatible {@code /chat/completions} endpoint for tests and benchmarks.
+ *
+ * <p>Answers endpoint, error code and batched error code prompts with well-formed JSON, reports
+ * token usage (about 4 characters per token), supports {@code stream: true} (SSE with a final
+ * usage chunk), accepts gzip-encoded request bodies (or rejects them with 415), and can inject
+ * latency and 429 responses with {@code Retry-After}.
+ */
+public class MockOpenAiServer implements AutoCloseable {
+    private static final Pattern BATCH_CODE = Pattern.compile("\\d+\\. code: (\\S+)");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "mock-openai");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Gson gson = new Gson();
+    private volatile LongSupplier latencyMs = () -> 0;
+    private volatile double rateLimitRate;
+    private volatile int retryAfterSeconds = 1;
+    private final AtomicInteger rateLimitFirst = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger rateLimited = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger gzipRequests = new AtomicInteger();
+    private volatile boolean rejectGzip;
+
+    public MockOpenAiServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/chat/completions", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /** Base URL to use as {@code apiBaseUrl} */
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    public MockOpenAiServer latency(LongSupplier latencyMs) {
+        this.latencyMs = latencyMs;
+        return this;
+    }
+
+    /** Share of requests (0-1) answered with 429 and the given {@code Retry-After} */
+    public MockOpenAiServer rateLimit(double rate, int retryAfterSeconds) {
+        this.rateLimitRate = rate;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /** Answer gzip-encoded request bodies with 415, like servers without request decompression */
+    public MockOpenAiServer rejectGzip() {
+        this.rejectGzip = true;
+        return this;
+    }
+
+    /** Answers exactly the next {@code count} requests with 429 and the given {@code Retry-After} */
+    public MockOpenAiServer rateLimitFirst(int count, int retryAfterSeconds) {
+        this.rateLimitFirst.set(count);
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    public static LongSupplier fixed(long ms) {
+        return () -> ms;
+    }
+
+    public static LongSupplier uniform(long minMs, long maxMs) {
+        return () -> ThreadLocalRandom.current().nextLong(minMs, maxMs + 1);
+    }
+
+    /**
+     * Heavy-tailed latency: log-normal around {@code medianMs}; sigma 0.5 gives p99 of about 3x the median.
+     */
+    public static LongSupplier logNormal(long medianMs, double sigma, long seed) {
+        Random random = new Random(seed);
+        return () -> {
+            synchronized (random) {
+                return (long) (medianMs * Math.exp(sigma * random.nextGaussian()));
+            }
+        };
+    }
+
+    public int requestCount() { return requests.get(); }
+    public int rateLimitedCount() { return rateLimited.get(); }
+    public int maxConcurrentRequests() { return maxInFlight.get(); }
+    public int gzipRequestCount() { return gzipRequests.get(); }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        int now = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(now, Math::max);
+        try (exchange) {
+            InputStream in = exchange.getRequestBody();
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                if (rejectGzip) {
+                    in.readAllBytes();
+                    exchange.sendResponseHeaders(415, -1);
+                    return;
+                }
+                gzipRequests.incrementAndGet();
+                in = new GZIPInputStream(in);
+            }
+            JsonObject request = JsonParser.parseString(
+                    new String(in.readAllBytes(), StandardCharsets.UTF_8)).getAsJsonObject();
+            if (rateLimitFirst.getAndUpdate(n -> Math.max(0, n - 1)) > 0
+                    || (rateLimitRate > 0 && ThreadLocalRandom.current().nextDouble() < rateLimitRate)) {
+                rateLimited.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(retryAfterSeconds));
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            long delay = latencyMs.getAsLong();
+            if (delay > 0) Thread.sleep(delay);
+
+            JsonArray messages = request.getAsJsonArray("messages");
+            String prompt = messages.get(messages.size() - 1).getAsJsonObject().get("content").getAsString();
+            String content = answer(prompt);
+            int promptTokens = Math.max(1, messages.toString().length() / 4);
+            int completionTokens = Math.max(1, content.length() / 4);
+            if (request.has("stream") && request.get("stream").getAsBoolean()) {
+                stream(exchange, content, promptTokens, completionTokens);
+            } else {
+                JsonObject body = new JsonObject();
+                JsonArray choices = new JsonArray();
+                JsonObject choice = new JsonObject();
+                JsonObject message = new JsonObject();
+                message.addProperty("role", "assistant");
+                message.addProperty("content", content);
+                choice.add("message", message);
+                choices.add(choice);
+                body.add("choices", choices);
+                body.add("usage", usage(promptTokens, completionTokens));
+                send(exchange, 200, "application/json", gson.toJson(body));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private String answer(String prompt) {
+        if (prompt.contains("错误码列表")) {
+            Map<String, Map<String, String>> byCode = new LinkedHashMap<>();
+            Matcher m = BATCH_CODE.matcher(prompt);
+            while (m.find()) {
+                byCode.put(m.group(1), Map.of("rootCause", "root cause of " + m.group(1),
+                        "handlingSuggestion", "retry later", "prevention", "validate input"));
+            }
+            return gson.toJson(byCode);
+        }
+        if (prompt.contains("错误码信息")) {
+            return gson.toJson(Map.of("rootCause", "root cause", "handlingSuggestion", "retry later",
+                    "prevention", "validate input"));
+        }
+        return gson.toJson(Map.of("function", "mock function", "scenario", "mock scenario",
+                "implementationNotes", "mock notes", "cautions", "mock cautions"));
+    }
+
+    private void stream(HttpExchange exchange, String content, int promptTokens, int completionTokens) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream out = exchange.getResponseBody();
+        for (int i = 0; i < content.length(); i += 16) {
+            JsonObject delta = new JsonObject();
+            delta.addProperty("content", content.substring(i, Math.min(content.length(), i + 16)));
+            JsonObject choice = new JsonObject();
+            choice.add("delta", delta);
+            JsonArray choices = new JsonArray();
+            choices.add(choice);
+            JsonObject chunk = new JsonObject();
+            chunk.add("choices", choices);
+            out.write(("data: " + gson.toJson(chunk) + "\n\n").getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+        JsonObject last = new JsonObject();
+        last.add("choices", new JsonArray());
+        last.add("usage", usage(promptTokens, completionTokens));
+        out.write(("data: " + gson.toJson(last) + "\n\ndata: [DONE]\n\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JsonObject usage(int promptTokens, int completionTokens) {
+        JsonObject usage = new JsonObject();
+        usage.addProperty("prompt_tokens", promptTokens);
+        usage.addProperty("completion_tokens", completionTokens);
+        usage.addProperty("total_tokens", promptTokens + completionTokens);
+        return usage;
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,66 @@
+package io.github.code2spec.llm;
+
+import io.github.code2spec.core.model.BusinessSemantic;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearDuplicateDetectorTest {
+
+    private static EndpointContext ctx(String entity, String method, String uri, String name, String body) {
+        EndpointContext c = new EndpointContext();
+        c.setEntityName(entity);
+        c.setHttpMethod(method);
+        c.setUri(uri);
+        c.setMethodName(name);
+        c.setReturnType(entity);
+        c.setParameterTypes(List.of("Long"));
+        c.setMethodBodySnippet(body);
+        return c;
+    }
+
+    @Test
+    void clustersEndpointsThatDifferOnlyInEntity() {
+        List<EndpointContext> contexts = List.of(
+                ctx("User", "GET", "/api/users/{id}", "getUser",
+                        "{ User user = userService.findById(id); if (user == null) throw new NotFoundException(\"user\"); return user; }"),
+                ctx("Order", "GET", "/api/orders/{id}", "getOrder",
+                        "{ Order order = orderService.findById(id); if (order == null) throw new NotFoundException(\"order\"); return order; }"),
+                ctx("User", "DELETE", "/api/users/{id}", "deleteUser",
+                        "{ userService.deleteById(id); return null; }"));
+
+        List<List<Integer>> clusters = new NearDuplicateDetector(NearDuplicateDetector.DEFAULT_THRESHOLD).cluster(contexts);
+
+        assertEquals(List.of(List.of(0, 1), List.of(2)), clusters);
+    }
+
+    @Test
+    void instantiatesTemplateForEachEntity() {
+        BusinessSemantic template = new BusinessSemantic();
+        template.setFunction("按 ID 查询{{entity}}详情");
+        template.setScenario("查看用户资料");
+        template.setEntityNames(Map.of("User", "用户", "Order", "订单"));
+
+        BusinessSemantic order = NearDuplicateDetector.instantiate(template, "User", "Order");
+
+        assertEquals("按 ID 查询订单详情", order.getFunction());
+        assertEquals("查看订单资料", order.getScenario());
+        assertNull(order.getEntityNames());
+    }
+
+    @Test
+    void replacesEntityOnlyAtIdentifierBoundaries() {
+        BusinessSemantic template = new BusinessSemantic();
+        template.setFunction("Loads the order via getOrder and orderService, then can reorder it");
+        template.setCautions("Tag lookups happen at the storage stage");
+
+        BusinessSemantic tag = NearDuplicateDetector.instantiate(template, "Order", "Tag");
+        BusinessSemantic order = NearDuplicateDetector.instantiate(template, "Tag", "Order");
+
+        assertEquals("Loads the tag via getTag and tagService, then can reorder it", tag.getFunction());
+        assertEquals("Order lookups happen at the storage stage", order.getCautions());
+    }
+}
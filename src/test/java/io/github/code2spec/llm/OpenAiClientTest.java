@@ -0,0 +1,138 @@
+package io.github.code2spec.llm;
+
+import com.google.gson.stream.JsonReader;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpenAiClientTest {
+
+    private static LlmConfig config(MockOpenAiServer server) {
+        LlmConfig config = new LlmConfig();
+        config.setApiBaseUrl(server.baseUrl());
+        config.setApiKey("test");
+        config.setLlmDelayMs(0);
+        return config;
+    }
+
+    private static final List<OpenAiClient.ChatMessage> MESSAGES = List.of(
+            new OpenAiClient.ChatMessage("user", "接口信息：\n- URI: GET /ping"));
+
+    @Test
+    void retriesAfterServerRetryAfterInsteadOfDefaultWait() throws Exception {
+        // Two 429s: below the pool's ejection threshold, so only Retry-After decides the wait
+        try (MockOpenAiServer server = new MockOpenAiServer().rateLimitFirst(2, 0)) {
+            LlmConfig config = config(server);
+            config.setLlmRetryWaitMs(60_000);
+            OpenAiClient client = new OpenAiClient(config);
+
+            long start = System.currentTimeMillis();
+            OpenAiClient.ChatResult result = client.chatAsync(MESSAGES).get();
+
+            assertTrue(result.content.contains("mock function"));
+            assertEquals(2, server.rateLimitedCount());
+            assertTrue(System.currentTimeMillis() - start < 10_000, "Retry-After: 0 should be honoured");
+        }
+    }
+
+    @Test
+    void streamsContentAndUsage() throws Exception {
+        try (MockOpenAiServer server = new MockOpenAiServer().latency(MockOpenAiServer.fixed(20))) {
+            LlmConfig config = config(server);
+            config.setStream(true);
+            OpenAiClient.ChatResult result = new OpenAiClient(config).chat(MESSAGES);
+
+            assertTrue(result.content.startsWith("{") && result.content.endsWith("}"));
+            assertTrue(result.promptTokens > 0);
+            assertTrue(result.completionTokens > 0);
+            assertTrue(result.timeToFirstTokenMs >= 0);
+        }
+    }
+
+    @Test
+    void readsCompletionFromStreamSkippingUnknownFields() throws Exception {
+        String body = "{\"id\":\"x\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\",\"content\":\"{\\\"a\\\":1}\","
+                + "\"tool_calls\":[]},\"logprobs\":null}],\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":5,"
+                + "\"prompt_tokens_details\":{\"cached_tokens\":8}},\"system_fingerprint\":null}";
+        OpenAiClient.ChatResult result = OpenAiClient.readCompletion(new JsonReader(new StringReader(body)));
+
+        assertEquals("{\"a\":1}", result.content);
+        assertEquals(12, result.promptTokens);
+        assertEquals(5, result.completionTokens);
+        assertEquals(8, result.cachedTokens);
+    }
+
+    @Test
+    void gzipsLargeBodiesAndFallsBackWhenRejected() throws Exception {
+        List<OpenAiClient.ChatMessage> large = List.of(
+                new OpenAiClient.ChatMessage("user", "被调用方法代码:\n" + "return repository.findById(id);\n".repeat(100)));
+        try (MockOpenAiServer server = new MockOpenAiServer()) {
+            LlmConfig config = config(server);
+            config.setGzipRequests(true);
+            OpenAiClient client = new OpenAiClient(config);
+            client.chat(large);
+            client.chat(large);
+
+            assertEquals(2, server.gzipRequestCount());
+            assertEquals(2, client.getConnectionMetrics().getCalls());
+            assertEquals(1, client.getConnectionMetrics().getConnected(), "second call should reuse the connection");
+            assertEquals(0.5, client.getConnectionMetrics().reuseRate());
+        }
+        try (MockOpenAiServer server = new MockOpenAiServer().rejectGzip()) {
+            LlmConfig config = config(server);
+            config.setGzipRequests(true);
+            OpenAiClient.ChatResult result = new OpenAiClient(config).chat(large);
+
+            assertTrue(result.content.contains("mock function"));
+            assertEquals(2, server.requestCount());
+        }
+    }
+
+    @Test
+    void hedgesSlowCallWithinCapAndCancelsTheLoser() throws Exception {
+        AtomicInteger slowNext = new AtomicInteger();
+        try (MockOpenAiServer server = new MockOpenAiServer()
+                .latency(() -> slowNext.getAndUpdate(n -> Math.max(0, n - 1)) > 0 ? 1500 : 5)) {
+            LlmConfig config = config(server);
+            config.setHedgePercent(5);
+            config.setConcurrency(2);
+            OpenAiClient client = new OpenAiClient(config);
+            // Enough fast samples for a p90 hedge delay
+            for (int i = 0; i < 20; i++) {
+                client.chat(MESSAGES);
+            }
+
+            slowNext.set(1);
+            long start = System.currentTimeMillis();
+            OpenAiClient.ChatResult result = client.chatAsync(MESSAGES).get();
+            long elapsed = System.currentTimeMillis() - start;
+
+            assertTrue(result.content.contains("mock function"));
+            assertTrue(elapsed < 1000, "the hedge should answer before the slow primary, took " + elapsed + " ms");
+            assertEquals(1, client.getHedgeCount());
+            assertEquals(22, server.requestCount());
+            // The slow primary is cancelled instead of running until the server answers
+            long deadline = System.currentTimeMillis() + 500;
+            while (client.runningCalls() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, client.runningCalls());
+            // Counted after the caller's future completed, before the primary was cancelled
+            assertEquals(1, client.getHedgeWins());
+
+            // A second hedge would be 2 of 22 requests, above the 5% cap: the slow call runs alone
+            slowNext.set(1);
+            start = System.currentTimeMillis();
+            client.chatAsync(MESSAGES).get();
+            elapsed = System.currentTimeMillis() - start;
+
+            assertTrue(elapsed >= 1500, "no hedge above the cap, took " + elapsed + " ms");
+            assertEquals(1, client.getHedgeCount());
+            assertEquals(23, server.requestCount());
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package io.github.code2spec.llm;
+
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SseChatReaderTest {
+
+    private static String chunk(String content) {
+        return "data: {\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content + "\"}}]}\n\n";
+    }
+
+    @Test
+    void accumulatesDeltasAndReadsUsage() throws Exception {
+        Buffer source = new Buffer()
+                .writeUtf8(": keep-alive\n\n")
+                .writeUtf8(chunk("Sure: "))
+                .writeUtf8("data: {\"choices\":[],\"usage\":{\"prompt_tokens\":12,\"completion_tokens\":3}}\n\n")
+                .writeUtf8("data: [DONE]\n\n");
+
+        SseChatReader reader = new SseChatReader();
+        OpenAiClient.ChatResult result = reader.read(source, System.currentTimeMillis());
+
+        assertEquals("Sure: ", result.content);
+        assertEquals(12, result.promptTokens);
+        assertEquals(3, result.completionTokens);
+        assertTrue(result.timeToFirstTokenMs >= 0);
+        assertFalse(reader.isJsonComplete());
+    }
+
+    @Test
+    void stopsOnceJsonObjectIsComplete() throws Exception {
+        Buffer source = new Buffer()
+                .writeUtf8(chunk("{\\\"function\\\": \\\"a } in"))
+                .writeUtf8(chunk(" string\\\", \\\"x\\\": {}}"))
+                .writeUtf8(chunk(" trailing text that should be dropped"))
+                .writeUtf8("data: {\"choices\":[],\"usage\":{\"prompt_tokens\":7,\"completion_tokens\":9}}\n\n")
+                .writeUtf8(chunk("never read"))
+                .writeUtf8("data: [DONE]\n\n");
+
+        SseChatReader reader = new SseChatReader();
+        OpenAiClient.ChatResult result = reader.read(source, System.currentTimeMillis());
+
+        assertTrue(reader.isJsonComplete());
+        assertEquals("{\"function\": \"a } in string\", \"x\": {}}", result.content);
+        assertEquals(7, result.promptTokens);
+        assertEquals(9, result.completionTokens);
+        assertFalse(source.exhausted(), "events after usage should be left unread");
+    }
+}
@@ -1,10 +1,18 @@
 package io.github.code2spec.parser;
 
+import io.github.code2spec.core.model.ErrorCode;
 import io.github.code2spec.core.model.SpecResult;
+import io.github.code2spec.llm.LlmConfig;
+import io.github.code2spec.llm.MockOpenAiServer;
 import io.github.code2spec.llm.NoOpLlmEnhancer;
+import io.github.code2spec.llm.OpenAiLlmEnhancer;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -49,4 +57,49 @@ class JavaRestParserTest {
         assertTrue(result.getErrorCodes().stream().anyMatch(ec -> "CommonException".equals(ec.getCode())),
                 "Should have CommonException, not 'class }'");
     }
+
+    @Test
+    void batchesErrorCodesPerFullyQualifiedHandlerClass(@TempDir Path dir) throws Exception {
+        writeHandler(dir, "com.example.order", "GlobalExceptionHandler",
+                "OrderNotFoundException", "OrderClosedException", "StockShortageException");
+        writeHandler(dir, "com.example.user", "GlobalExceptionHandler", "UserNotFoundException");
+        // Not in a class: enhanced on its own
+        Files.writeString(dir.resolve("Handlers.java"), """
+                enum Handlers {
+                    ;
+                    @ExceptionHandler(TimeoutException.class)
+                    void handle() { }
+                }
+                """);
+
+        try (MockOpenAiServer server = new MockOpenAiServer()) {
+            LlmConfig config = new LlmConfig();
+            config.setApiBaseUrl(server.baseUrl());
+            config.setApiKey("test");
+            config.setLlmDelayMs(0);
+            config.setErrorCodeBatchSize(2);
+            SpecResult result = new JavaRestParser(new OpenAiLlmEnhancer(config)).parse(dir);
+
+            // order: one batch of 2 and a single call; user and the enum handler: single calls
+            assertEquals(4, server.requestCount());
+            Map<String, String> rootCauses = result.getErrorCodes().stream()
+                    .collect(Collectors.toMap(ErrorCode::getCode, ErrorCode::getRootCause));
+            assertEquals("root cause of OrderNotFoundException", rootCauses.get("OrderNotFoundException"));
+            assertEquals("root cause of OrderClosedException", rootCauses.get("OrderClosedException"));
+            for (String single : new String[]{"StockShortageException", "UserNotFoundException", "TimeoutException"}) {
+                assertEquals("root cause", rootCauses.get(single), single);
+            }
+        }
+    }
+
+    private static void writeHandler(Path dir, String pkg, String className, String... exceptions) throws Exception {
+        StringBuilder src = new StringBuilder("package " + pkg + ";\n\n@RestControllerAdvice\npublic class " + className + " {\n");
+        for (String exception : exceptions) {
+            src.append("    @ExceptionHandler(").append(exception).append(".class)\n")
+                    .append("    public void handle").append(exception).append("() { }\n");
+        }
+        Path file = dir.resolve(pkg.replace('.', '/')).resolve(className + ".java");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, src.append("}\n").toString());
+    }
 }
@@ -0,0 +1,46 @@
+package io.github.code2spec.search;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SearchIndexTest {
+
+    @Test
+    void tokenizesCamelCaseAndChinese() {
+        assertEquals(List.of("get", "user", "by", "id", "getuserbyid"), SearchTokenizer.tokenize("getUserById"));
+        assertEquals(List.of("http", "server", "httpserver"), SearchTokenizer.tokenize("HTTPServer"));
+        assertEquals(List.of("查", "查询", "询", "询订", "订", "订单", "单", "api", "v1"),
+                SearchTokenizer.tokenize("查询订单 /api/v1"));
+    }
+
+    @Test
+    void ranksByBm25FromMappedFile(@TempDir Path dir) throws Exception {
+        SearchIndexWriter writer = new SearchIndexWriter();
+        writer.add("getOrder_GET", "endpoint", "GET /orders/{id}", "getOrderById 根据ID查询订单");
+        writer.add("createOrder_POST", "endpoint", "POST /orders", "createOrder 创建订单 库存不足时失败");
+        writer.add("getUser_GET", "endpoint", "GET /users/{id}", "getUserById 查询用户");
+        writer.add("error:OUT_OF_STOCK", "error_code", "OUT_OF_STOCK (HTTP 409)", "OUT_OF_STOCK 库存不足");
+        Path file = dir.resolve(SearchIndex.FILE_NAME);
+        Files.write(file, writer.toBytes());
+
+        SearchIndex index = SearchIndex.open(file);
+        assertEquals(4, index.size());
+        List<SearchIndex.Hit> hits = index.search("查询订单", 10);
+        assertEquals("getOrder_GET", hits.get(0).id());
+        assertTrue(hits.get(0).score() > hits.get(1).score());
+
+        hits = index.search("库存", 1);
+        assertEquals(1, hits.size());
+        assertEquals("error:OUT_OF_STOCK", hits.get(0).id(), "shorter document ranks higher for the same term");
+        assertEquals("error_code", hits.get(0).type());
+
+        assertEquals("getUser_GET", index.search("user", 5).get(0).id());
+        assertTrue(index.search("nothing-here", 5).isEmpty());
+    }
+}